@@ -0,0 +1,237 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.benchmarks;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import org.adblockplus.libadblockplus.AppInfo;
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.JsEngine;
+import org.adblockplus.libadblockplus.JsValue;
+import org.adblockplus.libadblockplus.Subscription;
+import org.adblockplus.libadblockplus.WebRequest;
+import org.adblockplus.libadblockplus.android.AndroidWebRequestResourceWrapper;
+import org.adblockplus.libadblockplus.android.LatencyHistogram;
+import org.adblockplus.libadblockplus.android.OfflineWebRequest;
+import org.adblockplus.libadblockplus.benchmarks.test.R;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Base class for the benchmarks: filter engine with fixed easylist snapshot (no network access),
+ * fixed requests corpus and machine-readable (JSON) results
+ */
+public abstract class BaseBenchmark extends InstrumentationTestCase
+{
+  private static final String TAG = BaseBenchmark.class.getSimpleName();
+
+  public static final String RESULTS_DIRECTORY = "benchmarks";
+
+  protected static final int WARMUP_ITERATIONS = 5;
+  protected static final int ITERATIONS = 50;
+
+  private static final int READY_TIMEOUT_MS = 60 * 1000;
+  private static final int READY_POLL_INTERVAL_MS = 10;
+
+  protected File basePath;
+  protected Corpus corpus;
+  private JSONObject results;
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    super.setUp();
+
+    basePath = new File(getContext().getCacheDir(), getClass().getSimpleName());
+    deleteRecursively(basePath);
+    basePath.mkdirs();
+
+    InputStream corpusStream = getInstrumentation().getContext().getResources().openRawResource(R.raw.corpus);
+    corpus = Corpus.read(corpusStream);
+
+    results = new JSONObject();
+    results.put("benchmark", getClass().getSimpleName());
+    results.put("commit", BuildConfig.GIT_COMMIT);
+    results.put("device", Build.MANUFACTURER + " " + Build.MODEL);
+    results.put("sdk", Build.VERSION.SDK_INT);
+    results.put("timestamp", System.currentTimeMillis());
+    results.put("results", new JSONObject());
+  }
+
+  @Override
+  protected void tearDown() throws Exception
+  {
+    writeResults();
+    deleteRecursively(basePath);
+
+    super.tearDown();
+  }
+
+  protected Context getContext()
+  {
+    return getInstrumentation().getTargetContext();
+  }
+
+  protected JsEngine createJsEngine()
+  {
+    Map<String, Integer> preloadMap = new HashMap<String, Integer>();
+    preloadMap.put(AndroidWebRequestResourceWrapper.EASYLIST, R.raw.easylist);
+
+    return createJsEngine(basePath, new AndroidWebRequestResourceWrapper(
+      getInstrumentation().getContext(), new OfflineWebRequest(), preloadMap,
+      new AndroidWebRequestResourceWrapper.InMemoryStorage()));
+  }
+
+  /**
+   * Create js engine with the given file system and web request
+   * @param path file system directory
+   * @param webRequest web request (expected to have no network access)
+   * @return js engine
+   */
+  protected static JsEngine createJsEngine(File path, WebRequest webRequest)
+  {
+    JsEngine jsEngine = new JsEngine(AppInfo.builder().build());
+    jsEngine.setDefaultFileSystem(path.getAbsolutePath());
+    jsEngine.setWebRequest(webRequest);
+    return jsEngine;
+  }
+
+  /**
+   * Create filter engine and wait for easylist snapshot to be loaded
+   * @param jsEngine js engine
+   * @return filter engine
+   */
+  protected FilterEngine createFilterEngine(JsEngine jsEngine)
+  {
+    long started = SystemClock.elapsedRealtime();
+    FilterEngine filterEngine = new FilterEngine(jsEngine);
+    waitForSubscription(filterEngine, AndroidWebRequestResourceWrapper.EASYLIST, started);
+    return filterEngine;
+  }
+
+  /**
+   * Add the subscription (if not yet added) and wait for it to be downloaded
+   * @param filterEngine filter engine
+   * @param url subscription url
+   * @param started time (`SystemClock.elapsedRealtime()`) to count the timeout from
+   */
+  protected static void waitForSubscription(FilterEngine filterEngine, String url, long started)
+  {
+    Subscription subscription = filterEngine.getSubscription(url);
+    try
+    {
+      if (!subscription.isListed())
+      {
+        subscription.addToList();
+      }
+      if (!isDownloaded(subscription))
+      {
+        subscription.updateFilters();
+      }
+      while (!isDownloaded(subscription))
+      {
+        assertTrue(SystemClock.elapsedRealtime() - started < READY_TIMEOUT_MS);
+        SystemClock.sleep(READY_POLL_INTERVAL_MS);
+      }
+    }
+    finally
+    {
+      subscription.dispose();
+    }
+  }
+
+  private static boolean isDownloaded(Subscription subscription)
+  {
+    JsValue status = subscription.getProperty("downloadStatus");
+    try
+    {
+      return !subscription.isUpdating() && "synchronize_ok".equals(status.toString());
+    }
+    finally
+    {
+      status.dispose();
+    }
+  }
+
+  /**
+   * Add the measurement to the results
+   * @param name measurement name
+   * @param histogram latencies in nanoseconds
+   * @param totalNanos total time of all the operations (for throughput)
+   */
+  protected void report(String name, LatencyHistogram histogram, long totalNanos) throws JSONException
+  {
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    double throughput = (totalNanos > 0 ? snapshot.getCount() * 1e9 / totalNanos : 0);
+
+    JSONObject result = new JSONObject();
+    result.put("count", snapshot.getCount());
+    result.put("throughputPerSecond", throughput);
+    result.put("meanNanos", snapshot.getMean());
+    result.put("p50Nanos", snapshot.getValueAtPercentile(50));
+    result.put("p99Nanos", snapshot.getValueAtPercentile(99));
+    result.put("maxNanos", snapshot.getMax());
+    results.getJSONObject("results").put(name, result);
+
+    Log.i(TAG, name + ": " + snapshot.getCount() + " ops, " + (long) throughput + " ops/s, " +
+      "p50 " + snapshot.getValueAtPercentile(50) / 1000 + "us, " +
+      "p99 " + snapshot.getValueAtPercentile(99) / 1000 + "us");
+  }
+
+  private void writeResults() throws IOException, JSONException
+  {
+    File directory = new File(getContext().getExternalFilesDir(null), RESULTS_DIRECTORY);
+    directory.mkdirs();
+    File file = new File(directory, getClass().getSimpleName() + "-" + getName() + ".json");
+
+    FileOutputStream outputStream = new FileOutputStream(file);
+    try
+    {
+      outputStream.write(results.toString(2).getBytes("UTF-8"));
+    }
+    finally
+    {
+      outputStream.close();
+    }
+    Log.i(TAG, "Results are written to " + file.getAbsolutePath());
+  }
+
+  protected static void deleteRecursively(File file)
+  {
+    File[] children = file.listFiles();
+    if (children != null)
+    {
+      for (File child : children)
+      {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.benchmarks;
+
+import org.adblockplus.libadblockplus.FilterEngine.ContentType;
+import org.adblockplus.libadblockplus.android.ReferrerChainTracker;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Fixed corpus of page subresource requests.
+ * Line format: `contentType<TAB>url<TAB>referrer`, lines starting with '#' are comments,
+ * `DOCUMENT` lines are top level documents (used for element hiding)
+ */
+public class Corpus
+{
+  private static final String COMMENT = "#";
+  private static final String SEPARATOR = "\t";
+
+  public static final class Request
+  {
+    private final ContentType contentType;
+    private final String url;
+    private final String[] documentUrls;
+
+    private Request(final ContentType contentType, final String url, final String[] documentUrls)
+    {
+      this.contentType = contentType;
+      this.url = url;
+      this.documentUrls = documentUrls;
+    }
+
+    public ContentType getContentType()
+    {
+      return contentType;
+    }
+
+    public String getUrl()
+    {
+      return url;
+    }
+
+    /**
+     * @return referrers chain from the request frame to the top level document
+     */
+    public String[] getDocumentUrls()
+    {
+      return documentUrls;
+    }
+  }
+
+  private final List<Request> requests;
+  private final List<String> documents;
+
+  private Corpus(final List<Request> requests, final List<String> documents)
+  {
+    this.requests = Collections.unmodifiableList(requests);
+    this.documents = Collections.unmodifiableList(documents);
+  }
+
+  public static Corpus read(final InputStream inputStream) throws IOException
+  {
+    final List<String[]> lines = new ArrayList<String[]>();
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+    try
+    {
+      String line;
+      while ((line = reader.readLine()) != null)
+      {
+        if (line.isEmpty() || line.startsWith(COMMENT))
+        {
+          continue;
+        }
+        lines.add(line.split(SEPARATOR, -1));
+      }
+    }
+    finally
+    {
+      reader.close();
+    }
+
+    // frames are requested with referrers too, so the chains are reconstructed as in AdblockWebView
+    final ReferrerChainTracker tracker = new ReferrerChainTracker(lines.size() + 1);
+    final Set<String> documents = new LinkedHashSet<String>();
+    for (final String[] fields : lines)
+    {
+      if (fields.length > 2 && !fields[2].isEmpty())
+      {
+        tracker.put(fields[1], fields[2]);
+      }
+    }
+
+    final List<Request> requests = new ArrayList<Request>(lines.size());
+    for (final String[] fields : lines)
+    {
+      final ContentType contentType = ContentType.valueOf(fields[0]);
+      if (contentType == ContentType.DOCUMENT)
+      {
+        documents.add(fields[1]);
+        continue;
+      }
+      final String referrer = (fields.length > 2 && !fields[2].isEmpty() ? fields[2] : null);
+      requests.add(new Request(contentType, fields[1], tracker.getChain(referrer)));
+    }
+    return new Corpus(requests, new ArrayList<String>(documents));
+  }
+
+  public List<Request> getRequests()
+  {
+    return requests;
+  }
+
+  /**
+   * @return top level document urls
+   */
+  public List<String> getDocuments()
+  {
+    return documents;
+  }
+}
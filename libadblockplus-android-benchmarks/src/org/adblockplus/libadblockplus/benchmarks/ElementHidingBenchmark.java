@@ -0,0 +1,113 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.benchmarks;
+
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.JsEngine;
+import org.adblockplus.libadblockplus.android.LatencyHistogram;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ElementHidingBenchmark extends BaseBenchmark
+{
+  private JsEngine jsEngine;
+  private FilterEngine filterEngine;
+  private List<String> domains;
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    super.setUp();
+
+    jsEngine = createJsEngine();
+    filterEngine = createFilterEngine(jsEngine);
+
+    domains = new ArrayList<String>();
+    for (String document : corpus.getDocuments())
+    {
+      domains.add(filterEngine.getHostFromURL(document));
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception
+  {
+    filterEngine.dispose();
+    jsEngine.dispose();
+
+    super.tearDown();
+  }
+
+  @Test
+  public void testElementHidingSelectors() throws Exception
+  {
+    LatencyHistogram histogram = new LatencyHistogram();
+    long totalNanos = 0;
+
+    for (int i = 0; i < WARMUP_ITERATIONS + ITERATIONS; i++)
+    {
+      boolean warmup = (i < WARMUP_ITERATIONS);
+      for (String domain : domains)
+      {
+        long started = System.nanoTime();
+        filterEngine.getElementHidingSelectors(domain);
+        long elapsed = System.nanoTime() - started;
+
+        if (!warmup)
+        {
+          histogram.record(elapsed);
+          totalNanos += elapsed;
+        }
+      }
+    }
+
+    report("elementHidingSelectors", histogram, totalNanos);
+  }
+
+  @Test
+  public void testElementHidingSelectorsDelta() throws Exception
+  {
+    LatencyHistogram histogram = new LatencyHistogram();
+    long totalNanos = 0;
+
+    for (int i = 0; i < WARMUP_ITERATIONS + ITERATIONS; i++)
+    {
+      boolean warmup = (i < WARMUP_ITERATIONS);
+      for (String domain : domains)
+      {
+        long started = System.nanoTime();
+        if (filterEngine.getElementHidingSelectorsDelta(domain) == null)
+        {
+          filterEngine.getElementHidingSelectors(domain);
+        }
+        long elapsed = System.nanoTime() - started;
+
+        if (!warmup)
+        {
+          histogram.record(elapsed);
+          totalNanos += elapsed;
+        }
+      }
+    }
+
+    report("elementHidingSelectorsDelta", histogram, totalNanos);
+  }
+}
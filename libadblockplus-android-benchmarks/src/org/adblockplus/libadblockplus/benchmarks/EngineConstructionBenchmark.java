@@ -0,0 +1,68 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.benchmarks;
+
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.JsEngine;
+import org.adblockplus.libadblockplus.android.LatencyHistogram;
+
+import org.junit.Test;
+
+public class EngineConstructionBenchmark extends BaseBenchmark
+{
+  private static final int CONSTRUCTION_ITERATIONS = 5;
+
+  private long construct() throws Exception
+  {
+    long started = System.nanoTime();
+    JsEngine jsEngine = createJsEngine();
+    FilterEngine filterEngine = createFilterEngine(jsEngine);
+    long elapsed = System.nanoTime() - started;
+
+    filterEngine.dispose();
+    jsEngine.dispose();
+    return elapsed;
+  }
+
+  @Test
+  public void testConstruction() throws Exception
+  {
+    LatencyHistogram firstRunHistogram = new LatencyHistogram();
+    LatencyHistogram histogram = new LatencyHistogram();
+    long firstRunTotalNanos = 0;
+    long totalNanos = 0;
+
+    for (int i = 0; i < CONSTRUCTION_ITERATIONS; i++)
+    {
+      // first run: easylist snapshot is parsed from resources
+      deleteRecursively(basePath);
+      basePath.mkdirs();
+      long elapsed = construct();
+      firstRunHistogram.record(elapsed);
+      firstRunTotalNanos += elapsed;
+
+      // next run: filters are loaded from the stored patterns file
+      elapsed = construct();
+      histogram.record(elapsed);
+      totalNanos += elapsed;
+    }
+
+    report("constructionFirstRun", firstRunHistogram, firstRunTotalNanos);
+    report("construction", histogram, totalNanos);
+  }
+}
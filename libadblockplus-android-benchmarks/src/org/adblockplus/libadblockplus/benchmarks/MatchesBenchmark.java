@@ -0,0 +1,139 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.benchmarks;
+
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.JsEngine;
+import org.adblockplus.libadblockplus.MatchVerdict;
+import org.adblockplus.libadblockplus.NativeMatcher;
+import org.adblockplus.libadblockplus.android.AdblockEngine;
+import org.adblockplus.libadblockplus.android.LatencyHistogram;
+
+import org.junit.Test;
+
+public class MatchesBenchmark extends BaseBenchmark
+{
+  private interface Matcher
+  {
+    int matchVerdict(Corpus.Request request);
+  }
+
+  private JsEngine jsEngine;
+  private FilterEngine filterEngine;
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    super.setUp();
+
+    jsEngine = createJsEngine();
+    filterEngine = createFilterEngine(jsEngine);
+  }
+
+  @Override
+  protected void tearDown() throws Exception
+  {
+    filterEngine.dispose();
+    jsEngine.dispose();
+
+    super.tearDown();
+  }
+
+  private final Matcher jsMatcher = new Matcher()
+  {
+    @Override
+    public int matchVerdict(Corpus.Request request)
+    {
+      return filterEngine.matchVerdict(request.getUrl(), request.getContentType(), request.getDocumentUrls());
+    }
+  };
+
+  private void measureMatches(String name, Matcher matcher) throws Exception
+  {
+    LatencyHistogram histogram = new LatencyHistogram();
+    long totalNanos = 0;
+
+    for (int i = 0; i < WARMUP_ITERATIONS + ITERATIONS; i++)
+    {
+      boolean warmup = (i < WARMUP_ITERATIONS);
+      for (Corpus.Request request : corpus.getRequests())
+      {
+        long started = System.nanoTime();
+        matcher.matchVerdict(request);
+        long elapsed = System.nanoTime() - started;
+
+        if (!warmup)
+        {
+          histogram.record(elapsed);
+          totalNanos += elapsed;
+        }
+      }
+    }
+
+    report(name, histogram, totalNanos);
+  }
+
+  @Test
+  public void testMatches() throws Exception
+  {
+    filterEngine.setMatchesCacheCapacity(0);
+    measureMatches("matches", jsMatcher);
+  }
+
+  @Test
+  public void testMatchesCached() throws Exception
+  {
+    filterEngine.setMatchesCacheCapacity(AdblockEngine.DEFAULT_MATCHES_CACHE_CAPACITY);
+    measureMatches("matchesCached", jsMatcher);
+  }
+
+  @Test
+  public void testNativeMatcher() throws Exception
+  {
+    filterEngine.setMatchesCacheCapacity(0);
+    final NativeMatcher nativeMatcher = NativeMatcher.fromJsEngine(jsEngine);
+    try
+    {
+      assertTrue(nativeMatcher.getFilterCount() > 0);
+
+      // conformance with JS matcher on the corpus
+      for (Corpus.Request request : corpus.getRequests())
+      {
+        int expected = MatchVerdict.getVerdict(jsMatcher.matchVerdict(request));
+        int actual = MatchVerdict.getVerdict(nativeMatcher.matchVerdict(
+          request.getUrl(), request.getContentType(), request.getDocumentUrls()));
+        assertEquals(request.getContentType() + " " + request.getUrl() + " matched "
+          + nativeMatcher.getMatchingFilter(request.getUrl(), request.getContentType(), request.getDocumentUrls()),
+          expected, actual);
+      }
+
+      measureMatches("matchesNative", new Matcher()
+      {
+        @Override
+        public int matchVerdict(Corpus.Request request)
+        {
+          return nativeMatcher.matchVerdict(request.getUrl(), request.getContentType(), request.getDocumentUrls());
+        }
+      });
+    }
+    finally
+    {
+      nativeMatcher.dispose();
+    }
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.benchmarks;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.JsEngine;
+import org.adblockplus.libadblockplus.ServerResponse;
+import org.adblockplus.libadblockplus.android.AndroidWebRequestResourceWrapper;
+import org.adblockplus.libadblockplus.android.LatencyHistogram;
+import org.adblockplus.libadblockplus.android.OfflineWebRequest;
+import org.adblockplus.libadblockplus.benchmarks.test.R;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares reading preloaded subscriptions as String (legacy) and as memory-mapped buffer
+ */
+public class PreloadedSubscriptionBenchmark extends BaseBenchmark
+{
+  private static final int READ_ITERATIONS = 10;
+  private static final int READINESS_ITERATIONS = 3;
+
+  private class Wrapper extends AndroidWebRequestResourceWrapper
+  {
+    private final boolean legacy;
+
+    public Wrapper(boolean legacy)
+    {
+      super(getInstrumentation().getContext(), new OfflineWebRequest(),
+        buildPreloadMap(), new AndroidWebRequestResourceWrapper.InMemoryStorage());
+      this.legacy = legacy;
+    }
+
+    public ByteBuffer readBuffer(int resourceId) throws IOException
+    {
+      return readResourceBuffer(resourceId);
+    }
+
+    @Override
+    protected ServerResponse buildResourceContentResponse(int resourceId)
+    {
+      if (!legacy)
+      {
+        return super.buildResourceContentResponse(resourceId);
+      }
+
+      ServerResponse response = new ServerResponse();
+      try
+      {
+        response.setResponse(readLegacyContent(getInstrumentation().getContext(), resourceId));
+        response.setResponseStatus(200);
+        response.setStatus(ServerResponse.NsStatus.OK);
+      }
+      catch (IOException e)
+      {
+        response.setStatus(ServerResponse.NsStatus.ERROR_FAILURE);
+      }
+      return response;
+    }
+  }
+
+  private static Map<String, Integer> buildPreloadMap()
+  {
+    Map<String, Integer> map = new HashMap<String, Integer>();
+    map.put(AndroidWebRequestResourceWrapper.EASYLIST, R.raw.easylist);
+    map.put(AndroidWebRequestResourceWrapper.ACCEPTABLE_ADS, R.raw.exceptionrules);
+    return map;
+  }
+
+  /**
+   * Legacy way of reading the resource: Java String with the lines joined with "\r\n"
+   */
+  private static String readLegacyContent(Context context, int resourceId) throws IOException
+  {
+    InputStream is = context.getResources().openRawResource(resourceId);
+    try
+    {
+      BufferedReader br = new BufferedReader(new InputStreamReader(is));
+      StringBuilder sb = new StringBuilder();
+      String line;
+      boolean firstLine = true;
+      while ((line = br.readLine()) != null)
+      {
+        if (firstLine)
+        {
+          firstLine = false;
+        }
+        else
+        {
+          sb.append("\r\n");
+        }
+        sb.append(line);
+      }
+      return sb.toString();
+    }
+    finally
+    {
+      is.close();
+    }
+  }
+
+  @Test
+  public void testReadResource() throws Exception
+  {
+    Context context = getInstrumentation().getContext();
+    Wrapper wrapper = new Wrapper(false);
+    LatencyHistogram legacyHistogram = new LatencyHistogram();
+    LatencyHistogram bufferHistogram = new LatencyHistogram();
+    long legacyTotalNanos = 0;
+    long bufferTotalNanos = 0;
+    String content = null;
+    ByteBuffer buffer = null;
+
+    try
+    {
+      for (int i = 0; i < READ_ITERATIONS; i++)
+      {
+        long started = System.nanoTime();
+        content = readLegacyContent(context, R.raw.easylist);
+        long elapsed = System.nanoTime() - started;
+        legacyHistogram.record(elapsed);
+        legacyTotalNanos += elapsed;
+
+        started = System.nanoTime();
+        buffer = wrapper.readBuffer(R.raw.easylist);
+        elapsed = System.nanoTime() - started;
+        bufferHistogram.record(elapsed);
+        bufferTotalNanos += elapsed;
+      }
+    }
+    finally
+    {
+      wrapper.dispose();
+    }
+
+    report("readString", legacyHistogram, legacyTotalNanos);
+    report("readBuffer", bufferHistogram, bufferTotalNanos);
+
+    // legacy implementation re-joins the lines with "\r\n"
+    String bufferContent = Charset.forName("UTF-8").decode(buffer).toString();
+    assertEquals(content.replace("\r\n", "\n").trim(), bufferContent.replace("\r\n", "\n").trim());
+  }
+
+  /**
+   * Measure the time from filter engine creation till easylist is loaded from resources
+   * @param legacy read the resource as String (legacy) or as buffer
+   * @param fingerprint filters fingerprint of the ready filter engine (output, single element)
+   * @return elapsed time in nanoseconds
+   */
+  private long measureReadiness(boolean legacy, long[] fingerprint)
+  {
+    File path = new File(basePath, legacy ? "legacy" : "buffer");
+    deleteRecursively(path);
+    path.mkdirs();
+
+    JsEngine jsEngine = createJsEngine(path, new Wrapper(legacy));
+    try
+    {
+      long started = SystemClock.elapsedRealtime();
+      long startedNanos = System.nanoTime();
+      FilterEngine filterEngine = new FilterEngine(jsEngine);
+      try
+      {
+        waitForSubscription(filterEngine, AndroidWebRequestResourceWrapper.EASYLIST, started);
+        long elapsed = System.nanoTime() - startedNanos;
+        fingerprint[0] = filterEngine.getFiltersFingerprint();
+        return elapsed;
+      }
+      finally
+      {
+        filterEngine.dispose();
+      }
+    }
+    finally
+    {
+      jsEngine.dispose();
+      deleteRecursively(path);
+    }
+  }
+
+  @Test
+  public void testFirstRunReadiness() throws Exception
+  {
+    LatencyHistogram legacyHistogram = new LatencyHistogram();
+    LatencyHistogram bufferHistogram = new LatencyHistogram();
+    long legacyTotalNanos = 0;
+    long bufferTotalNanos = 0;
+    long[] legacyFingerprint = new long[1];
+    long[] bufferFingerprint = new long[1];
+
+    for (int i = 0; i < READINESS_ITERATIONS; i++)
+    {
+      long elapsed = measureReadiness(true, legacyFingerprint);
+      legacyHistogram.record(elapsed);
+      legacyTotalNanos += elapsed;
+
+      elapsed = measureReadiness(false, bufferFingerprint);
+      bufferHistogram.record(elapsed);
+      bufferTotalNanos += elapsed;
+
+      // both ways of reading must result in the same filters
+      assertEquals(legacyFingerprint[0], bufferFingerprint[0]);
+    }
+
+    report("firstRunReadinessString", legacyHistogram, legacyTotalNanos);
+    report("firstRunReadinessBuffer", bufferHistogram, bufferTotalNanos);
+  }
+}
@@ -29,6 +29,11 @@ import org.adblockplus.libadblockplus.android.Utils;
 
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -59,6 +64,9 @@ public class AdblockHelper
   private AdblockEngine engine;
   private AdblockSettingsStorage storage;
   private CountDownLatch engineCreated;
+  private long disposeDelayMillis;
+  private ScheduledExecutorService disposeExecutor;
+  private ScheduledFuture<?> pendingDispose;
 
   private IsAllowedConnectionCallback isAllowedConnectionCallback;
 
@@ -133,6 +141,18 @@ public class AdblockHelper
     return this;
   }
 
+  /**
+   * Keep the engine for some time after the last client is released.
+   * Creating the engine is expensive (JS engine startup and filters loading),
+   * so if the engine is retained again in this period it's reused.
+   * @param delayMillis delay in milliseconds (0 to dispose immediately, default)
+   */
+  public AdblockHelper setDisposeDelay(long delayMillis)
+  {
+    this.disposeDelayMillis = delayMillis;
+    return this;
+  }
+
   private void createAdblock()
   {
     ConnectivityManager connectivityManager =
@@ -250,6 +270,21 @@ public class AdblockHelper
   {
     if (referenceCounter.getAndIncrement() == 0)
     {
+      if (pendingDispose != null)
+      {
+        // the engine is not disposed yet
+        Log.d(TAG, "Reusing adblock engine");
+        pendingDispose.cancel(false);
+        pendingDispose = null;
+
+        if (asynchronous && engineCreated == null)
+        {
+          // the engine was created synchronously, so it's ready already (see `waitForReady()`)
+          engineCreated = new CountDownLatch(0);
+        }
+        return;
+      }
+
       if (!asynchronous)
       {
         createAdblock();
@@ -281,20 +316,77 @@ public class AdblockHelper
   {
     if (referenceCounter.decrementAndGet() == 0)
     {
-      if (engineCreated != null)
+      if (disposeDelayMillis > 0)
       {
-        // retained asynchronously
-        waitForReady();
-        disposeAdblock();
-
-        // to unlock waiting client in waitForReady()
-        engineCreated.countDown();
-        engineCreated = null;
+        scheduleDispose();
       }
       else
       {
-        disposeAdblock();
+        dispose();
       }
     }
   }
+
+  private final class DisposeTask implements Runnable
+  {
+    private ScheduledFuture<?> future;
+
+    @Override
+    public void run()
+    {
+      synchronized (AdblockHelper.this)
+      {
+        // retained again meanwhile (and maybe released with another dispose scheduled)
+        if (pendingDispose != future || referenceCounter.get() > 0)
+        {
+          return;
+        }
+
+        pendingDispose = null;
+        dispose();
+      }
+    }
+  }
+
+  private void scheduleDispose()
+  {
+    if (disposeExecutor == null)
+    {
+      disposeExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+      {
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+          Thread thread = new Thread(runnable, "AdblockHelperDispose");
+          // pending dispose should not keep the app process alive
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+
+    Log.d(TAG, "Disposing adblock engine in " + disposeDelayMillis + " ms");
+    // the task is run holding the lock, so `future` is set before it's checked
+    DisposeTask task = new DisposeTask();
+    pendingDispose = disposeExecutor.schedule(task, disposeDelayMillis, TimeUnit.MILLISECONDS);
+    task.future = pendingDispose;
+  }
+
+  private void dispose()
+  {
+    if (engineCreated != null)
+    {
+      // retained asynchronously
+      waitForReady();
+      disposeAdblock();
+
+      // to unlock waiting client in waitForReady()
+      engineCreated.countDown();
+      engineCreated = null;
+    }
+    else
+    {
+      disposeAdblock();
+    }
+  }
 }
@@ -71,6 +71,27 @@ public class ConsoleJsObjectTest extends BaseJsTest
     assertEquals(":1", mockLogSystem.getLastSource());
   }
 
+  @Test
+  public void testMinLogLevel()
+  {
+    assertEquals(LogSystem.LogLevel.TRACE, mockLogSystem.getMinLogLevel());
+    mockLogSystem.setMinLogLevel(LogSystem.LogLevel.WARN);
+    assertEquals(LogSystem.LogLevel.WARN, mockLogSystem.getMinLogLevel());
+    assertFalse(mockLogSystem.isLoggable(LogSystem.LogLevel.INFO));
+    assertTrue(mockLogSystem.isLoggable(LogSystem.LogLevel.ERROR));
+
+    jsEngine.evaluate("console.info('foo')");
+    assertNull(mockLogSystem.getLastLogLevel());
+
+    jsEngine.evaluate("console.warn('bar')");
+    assertEquals(LogSystem.LogLevel.WARN, mockLogSystem.getLastLogLevel());
+    assertEquals("bar", mockLogSystem.getLastMessage());
+
+    mockLogSystem.setMinLogLevel(LogSystem.LogLevel.TRACE);
+    jsEngine.evaluate("console.info('foo')");
+    assertEquals(LogSystem.LogLevel.INFO, mockLogSystem.getLastLogLevel());
+  }
+
   @Test
   public void testConsoleErrorCall()
   {
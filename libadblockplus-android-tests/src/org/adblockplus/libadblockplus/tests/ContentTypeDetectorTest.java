@@ -0,0 +1,191 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import android.util.Log;
+
+import org.adblockplus.libadblockplus.FilterEngine.ContentType;
+import org.adblockplus.libadblockplus.android.ContentTypeDetector;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+public class ContentTypeDetectorTest extends BaseJsTest
+{
+  private static final String TAG = ContentTypeDetectorTest.class.getSimpleName();
+
+  private static final int BENCHMARK_WARMUP_ITERATIONS = 1000;
+  private static final int BENCHMARK_ITERATIONS = 10000;
+
+  // legacy AdblockWebView implementation as a reference
+  private static final Pattern RE_JS = Pattern.compile("\\.js$", Pattern.CASE_INSENSITIVE);
+  private static final Pattern RE_CSS = Pattern.compile("\\.css$", Pattern.CASE_INSENSITIVE);
+  private static final Pattern RE_IMAGE = Pattern.compile("\\.(?:gif|png|jpe?g|bmp|ico)$", Pattern.CASE_INSENSITIVE);
+  private static final Pattern RE_FONT = Pattern.compile("\\.(?:ttf|woff)$", Pattern.CASE_INSENSITIVE);
+  private static final Pattern RE_HTML = Pattern.compile("\\.html?$", Pattern.CASE_INSENSITIVE);
+
+  private static final String[] CORPUS = new String[]
+  {
+    "http://example.com",
+    "http://example.com/",
+    "http://example.com/script.js",
+    "http://example.com/SCRIPT.JS",
+    "https://cdn.example.com/static/js/app.min.js",
+    "http://example.com/style.css",
+    "http://example.com/Style.Css",
+    "http://example.com/img/banner.gif",
+    "http://example.com/img/banner.png",
+    "http://example.com/img/banner.jpg",
+    "http://example.com/img/banner.jpeg",
+    "http://example.com/img/banner.JPEG",
+    "http://example.com/img/banner.bmp",
+    "http://example.com/favicon.ico",
+    "http://example.com/fonts/font.ttf",
+    "http://example.com/fonts/font.woff",
+    "http://example.com/fonts/font.woff2",
+    "http://example.com/frame.htm",
+    "http://example.com/frame.html",
+    "http://example.com/frame.xhtml",
+    "http://example.com/page.php",
+    "http://example.com/json",
+    "http://example.com/js",
+    "http://example.com/.js",
+    "http://example.com/file.jsx",
+    "http://example.com/file.ajs",
+    "http://example.com/image.jpgg",
+    "http://example.com/image.pjpeg",
+    "http://example.com/archive.tar.gz",
+    "http://example.com/ads/",
+    "data:image/png;base64,iVBORw0KGgo",
+  };
+
+  private static ContentType detectLegacy(String url)
+  {
+    if (RE_JS.matcher(url).find())
+    {
+      return ContentType.SCRIPT;
+    }
+    else if (RE_CSS.matcher(url).find())
+    {
+      return ContentType.STYLESHEET;
+    }
+    else if (RE_IMAGE.matcher(url).find())
+    {
+      return ContentType.IMAGE;
+    }
+    else if (RE_FONT.matcher(url).find())
+    {
+      return ContentType.FONT;
+    }
+    else if (RE_HTML.matcher(url).find())
+    {
+      return ContentType.SUBDOCUMENT;
+    }
+    else
+    {
+      return ContentType.OTHER;
+    }
+  }
+
+  @Test
+  public void testCorpus()
+  {
+    for (String url : CORPUS)
+    {
+      assertEquals(url, detectLegacy(url), ContentTypeDetector.detect(url, null));
+    }
+  }
+
+  @Test
+  public void testQueryAndFragment()
+  {
+    assertEquals(ContentType.SCRIPT, ContentTypeDetector.detect("http://example.com/a.js?v=1", null));
+    assertEquals(ContentType.SCRIPT, ContentTypeDetector.detect("http://example.com/a.js#top", null));
+    assertEquals(ContentType.IMAGE, ContentTypeDetector.detect("http://example.com/a.png?w=100&h=.css", null));
+    assertEquals(ContentType.OTHER, ContentTypeDetector.detect("http://example.com/a.php?file=a.js", null));
+  }
+
+  @Test
+  public void testAcceptHeader()
+  {
+    final String url = "http://example.com/resource?id=1";
+    assertEquals(ContentType.OTHER, ContentTypeDetector.detect(url, null));
+    assertEquals(ContentType.OTHER, ContentTypeDetector.detect(url, "*/*"));
+    assertEquals(ContentType.STYLESHEET, ContentTypeDetector.detect(url, "text/css,*/*;q=0.1"));
+    assertEquals(ContentType.IMAGE, ContentTypeDetector.detect(url, "image/webp,image/*,*/*;q=0.8"));
+    assertEquals(ContentType.SUBDOCUMENT, ContentTypeDetector.detect(url,
+      "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8"));
+
+    // URL extension has priority
+    assertEquals(ContentType.SCRIPT, ContentTypeDetector.detect("http://example.com/a.js", "image/webp"));
+  }
+
+  private static int runLegacy()
+  {
+    int result = 0;
+    for (String url : CORPUS)
+    {
+      result += detectLegacy(url).ordinal();
+    }
+    return result;
+  }
+
+  private static int runDetector()
+  {
+    int result = 0;
+    for (String url : CORPUS)
+    {
+      result += ContentTypeDetector.detect(url, null).ordinal();
+    }
+    return result;
+  }
+
+  @Test
+  public void testBenchmark()
+  {
+    // results are accumulated to prevent the calls from being optimized away
+    int legacyResult = 0;
+    int detectorResult = 0;
+    for (int i = 0; i < BENCHMARK_WARMUP_ITERATIONS; i++)
+    {
+      legacyResult += runLegacy();
+      detectorResult += runDetector();
+    }
+
+    long started = System.nanoTime();
+    for (int i = 0; i < BENCHMARK_ITERATIONS; i++)
+    {
+      legacyResult += runLegacy();
+    }
+    long legacyNanos = System.nanoTime() - started;
+
+    started = System.nanoTime();
+    for (int i = 0; i < BENCHMARK_ITERATIONS; i++)
+    {
+      detectorResult += runDetector();
+    }
+    long detectorNanos = System.nanoTime() - started;
+
+    final int calls = BENCHMARK_ITERATIONS * CORPUS.length;
+    Log.i(TAG, "Content type detection: regex " + legacyNanos / calls + "ns/url, " +
+      "detector " + detectorNanos / calls + "ns/url");
+
+    assertEquals(legacyResult, detectorResult);
+  }
+}
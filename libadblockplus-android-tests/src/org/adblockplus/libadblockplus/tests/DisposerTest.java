@@ -0,0 +1,132 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import org.adblockplus.libadblockplus.Disposable;
+import org.adblockplus.libadblockplus.Disposer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DisposerTest extends BaseJsTest
+{
+  private static final int THREADS_COUNT = 4;
+  private static final int VALUES_PER_THREAD = 100;
+
+  // the global live count is decremented by the cleaner thread for unrelated garbage any time,
+  // so the tests check the disposers they create
+  private static final class CountingDisposable implements Disposable
+  {
+    private final AtomicInteger disposedCount;
+
+    private CountingDisposable(final AtomicInteger disposedCount)
+    {
+      this.disposedCount = disposedCount;
+    }
+
+    @Override
+    public void dispose()
+    {
+      disposedCount.incrementAndGet();
+    }
+  }
+
+  private static final class Referent implements Disposable
+  {
+    @Override
+    public void dispose()
+    {
+      //
+    }
+  }
+
+  @Test
+  public void testDispose()
+  {
+    AtomicInteger disposedCount = new AtomicInteger();
+    Referent referent = new Referent();
+    Disposer disposer = new Disposer(referent, new CountingDisposable(disposedCount));
+    assertFalse(disposer.isDisposed());
+
+    disposer.dispose();
+    assertTrue(disposer.isDisposed());
+    assertEquals(1, disposedCount.get());
+
+    // disposing twice should not dispose the handle again
+    disposer.dispose();
+    assertEquals(1, disposedCount.get());
+  }
+
+  @Test
+  public void testParallelCreateAndDispose() throws InterruptedException
+  {
+    final AtomicInteger disposedCount = new AtomicInteger();
+    final List<Referent> referents = new ArrayList<Referent>();
+    final List<Disposer> disposers = new ArrayList<Disposer>();
+    final CountDownLatch finished = new CountDownLatch(THREADS_COUNT);
+
+    for (int i = 0; i < THREADS_COUNT; i++)
+    {
+      new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          try
+          {
+            List<Referent> threadReferents = new ArrayList<Referent>(VALUES_PER_THREAD);
+            List<Disposer> threadDisposers = new ArrayList<Disposer>(VALUES_PER_THREAD);
+            for (int j = 0; j < VALUES_PER_THREAD; j++)
+            {
+              Referent referent = new Referent();
+              threadReferents.add(referent);
+              threadDisposers.add(new Disposer(referent, new CountingDisposable(disposedCount)));
+            }
+
+            for (Disposer eachDisposer : threadDisposers)
+            {
+              eachDisposer.dispose();
+            }
+
+            synchronized (disposers)
+            {
+              referents.addAll(threadReferents);
+              disposers.addAll(threadDisposers);
+            }
+          }
+          finally
+          {
+            finished.countDown();
+          }
+        }
+      }).start();
+    }
+
+    finished.await();
+    assertEquals(THREADS_COUNT * VALUES_PER_THREAD, disposers.size());
+    assertEquals(THREADS_COUNT * VALUES_PER_THREAD, disposedCount.get());
+    for (Disposer eachDisposer : disposers)
+    {
+      assertTrue(eachDisposer.isDisposed());
+    }
+  }
+}
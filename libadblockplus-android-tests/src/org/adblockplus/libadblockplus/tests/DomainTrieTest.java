@@ -0,0 +1,89 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import org.adblockplus.libadblockplus.android.DomainTrie;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DomainTrieTest extends BaseJsTest
+{
+  @Test
+  public void testEmpty()
+  {
+    assertFalse(DomainTrie.build(null).matches("example.com"));
+    assertFalse(DomainTrie.build(new ArrayList<String>()).matches("example.com"));
+    assertEquals(0, DomainTrie.EMPTY.size());
+  }
+
+  @Test
+  public void testExact()
+  {
+    DomainTrie trie = DomainTrie.build(Arrays.asList("example.com", "Partner.ORG"));
+    assertEquals(2, trie.size());
+
+    assertTrue(trie.matches("example.com"));
+    assertTrue(trie.matches("partner.org"));
+    assertFalse(trie.matches("www.example.com"));
+    assertFalse(trie.matches("com"));
+    assertFalse(trie.matches("example.org"));
+    assertFalse(trie.matches("badexample.com"));
+    assertFalse(trie.matches(""));
+    assertFalse(trie.matches(null));
+  }
+
+  @Test
+  public void testSubdomains()
+  {
+    DomainTrie trie = DomainTrie.build(Arrays.asList("*.example.com", "www.partner.org"));
+
+    assertTrue(trie.matches("www.example.com"));
+    assertTrue(trie.matches("a.b.example.com"));
+    assertFalse(trie.matches("example.com"));
+    assertFalse(trie.matches("badexample.com"));
+
+    assertTrue(trie.matches("www.partner.org"));
+    assertFalse(trie.matches("partner.org"));
+    assertFalse(trie.matches("a.www.partner.org"));
+
+    trie = DomainTrie.build(Arrays.asList("example.com", "*.example.com"));
+    assertTrue(trie.matches("example.com"));
+    assertTrue(trie.matches("www.example.com"));
+  }
+
+  @Test
+  public void testMany()
+  {
+    List<String> domains = new ArrayList<String>();
+    for (int i = 0; i < 10000; i++)
+    {
+      domains.add("partner" + i + ".com");
+    }
+    DomainTrie trie = DomainTrie.build(domains);
+
+    for (int i = 0; i < 10000; i++)
+    {
+      assertTrue(trie.matches("partner" + i + ".com"));
+    }
+    assertFalse(trie.matches("partner10000.com"));
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import org.adblockplus.libadblockplus.android.ElementHidingStylesheetCache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ElementHidingStylesheetCacheTest extends FilterEngineGenericTest
+{
+  private ElementHidingStylesheetCache cache;
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    super.setUp();
+
+    cache = new ElementHidingStylesheetCache(filterEngine, 2);
+  }
+
+  @Test
+  public void testBuildStylesheet()
+  {
+    assertEquals("", ElementHidingStylesheetCache.buildStylesheet(new ArrayList<String>()));
+    assertEquals(".ad, #banner { display: none !important; }\n",
+      ElementHidingStylesheetCache.buildStylesheet(Arrays.asList(".ad", "#banner")));
+
+    List<String> selectors = new ArrayList<String>();
+    for (int i = 0; i <= ElementHidingStylesheetCache.SELECTOR_GROUP_SIZE; i++)
+    {
+      selectors.add(".ad" + i);
+    }
+    String stylesheet = ElementHidingStylesheetCache.buildStylesheet(selectors);
+    assertEquals(2, stylesheet.split("\n").length);
+    assertTrue(stylesheet.endsWith(
+      "\n.ad" + ElementHidingStylesheetCache.SELECTOR_GROUP_SIZE + " { display: none !important; }\n"));
+  }
+
+  @Test
+  public void testCache()
+  {
+    filterEngine.getFilter("example.org##.ad").addToList();
+
+    assertEquals(".ad { display: none !important; }\n", cache.get("example.org"));
+    assertEquals(1, cache.getMisses());
+
+    assertEquals(".ad { display: none !important; }\n", cache.get("example.org"));
+    assertEquals(1, cache.getHits());
+
+    // invalidated on filter change
+    filterEngine.getFilter("example.org##.banner").addToList();
+    String stylesheet = cache.get("example.org");
+    assertTrue(stylesheet.contains(".ad"));
+    assertTrue(stylesheet.contains(".banner"));
+    assertEquals(2, cache.getMisses());
+
+    assertEquals("", cache.get("example.com"));
+  }
+
+  @Test
+  public void testGenericSplit()
+  {
+    filterEngine.getFilter("##.generic").addToList();
+    filterEngine.getFilter("example.org##.ad").addToList();
+    filterEngine.getFilter("~example.net##.excluded").addToList();
+
+    List<String> generic = filterEngine.getGenericElementHidingSelectors();
+    assertEquals(2, generic.size());
+    assertTrue(generic.contains(".generic"));
+    assertTrue(generic.contains(".excluded"));
+
+    assertEquals(Arrays.asList(".ad"), filterEngine.getElementHidingSelectorsDelta("example.org"));
+    assertEquals(0, filterEngine.getElementHidingSelectorsDelta("example.com").size());
+    // generic selector is excluded for the domain
+    assertNull(filterEngine.getElementHidingSelectorsDelta("example.net"));
+
+    ElementHidingStylesheetCache.DomainStylesheet domainStylesheet =
+      cache.getDomainStylesheet("example.org");
+    assertFalse(domainStylesheet.includesGeneric());
+    assertEquals(".ad { display: none !important; }\n", domainStylesheet.getStylesheet());
+    assertEquals(cache.getGeneric() + domainStylesheet.getStylesheet(), cache.get("example.org"));
+    assertEquals(cache.getGeneric(), cache.get("example.com"));
+
+    domainStylesheet = cache.getDomainStylesheet("example.net");
+    assertTrue(domainStylesheet.includesGeneric());
+    assertEquals(".generic { display: none !important; }\n", domainStylesheet.getStylesheet());
+
+    // generic stylesheet is rebuilt on filter change
+    filterEngine.getFilter("##.generic2").addToList();
+    assertTrue(cache.getGeneric().contains(".generic2"));
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import org.adblockplus.libadblockplus.FilterEngine.ContentType;
+import org.adblockplus.libadblockplus.MatchVerdict;
+import org.adblockplus.libadblockplus.android.EngineMetrics;
+import org.adblockplus.libadblockplus.android.LatencyHistogram;
+
+import org.junit.Test;
+
+public class EngineMetricsTest extends BaseJsTest
+{
+  @Test
+  public void testHistogram()
+  {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.snapshot().getCount());
+    assertEquals(0, histogram.snapshot().getValueAtPercentile(50));
+
+    for (int i = 1; i <= 1000; i++)
+    {
+      histogram.record(i * 1000);
+    }
+
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(1000, snapshot.getCount());
+    assertEquals(1000000, snapshot.getMax());
+    assertEquals(500500.0, snapshot.getMean(), 0.1);
+
+    // relative error is below 1 / SUB_BUCKETS
+    final double error = 1.0 / LatencyHistogram.SUB_BUCKETS;
+    assertEquals(500000, snapshot.getValueAtPercentile(50), 500000 * error);
+    assertEquals(990000, snapshot.getValueAtPercentile(99), 990000 * error);
+    assertEquals(1000000, snapshot.getValueAtPercentile(100));
+
+    histogram.reset();
+    assertEquals(0, histogram.snapshot().getCount());
+  }
+
+  @Test
+  public void testSmallValues()
+  {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-1);
+    histogram.record(3);
+    histogram.record(Long.MAX_VALUE);
+
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(0, snapshot.getValueAtPercentile(1));
+    assertEquals(3, snapshot.getValueAtPercentile(50));
+    assertEquals(Long.MAX_VALUE, snapshot.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void testMetrics()
+  {
+    EngineMetrics metrics = new EngineMetrics();
+    long started = System.nanoTime();
+    metrics.recordCall(EngineMetrics.Call.MATCHES, started, 1);
+    metrics.recordCall(EngineMetrics.Call.MATCHES, started, 1);
+    metrics.recordCall(EngineMetrics.Call.GET_HOST_FROM_URL, started, 0);
+    metrics.recordVerdict(ContentType.SCRIPT, MatchVerdict.BLOCK | MatchVerdict.FLAG_DOMAIN_SPECIFIC);
+    metrics.recordVerdict(ContentType.SCRIPT, MatchVerdict.ALLOW);
+
+    EngineMetrics.Snapshot snapshot = metrics.snapshot();
+    assertEquals(2, snapshot.getCallCount(EngineMetrics.Call.MATCHES));
+    assertEquals(2, snapshot.getJniCalls(EngineMetrics.Call.MATCHES));
+    assertEquals(1, snapshot.getCallCount(EngineMetrics.Call.GET_HOST_FROM_URL));
+    assertEquals(0, snapshot.getJniCalls(EngineMetrics.Call.GET_HOST_FROM_URL));
+    assertEquals(0, snapshot.getCallCount(EngineMetrics.Call.IS_DOCUMENT_WHITELISTED));
+    assertEquals(1, snapshot.getVerdictCount(ContentType.SCRIPT, MatchVerdict.BLOCK));
+    assertEquals(1, snapshot.getVerdictCount(ContentType.SCRIPT, MatchVerdict.ALLOW));
+    assertEquals(0, snapshot.getVerdictCount(ContentType.IMAGE, MatchVerdict.BLOCK));
+
+    metrics.reset();
+    snapshot = metrics.snapshot();
+    assertEquals(0, snapshot.getCallCount(EngineMetrics.Call.MATCHES));
+    assertEquals(0, snapshot.getVerdictCount(ContentType.SCRIPT, MatchVerdict.BLOCK));
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.MatchVerdict;
+import org.adblockplus.libadblockplus.android.ElementHidingStylesheetCache;
+import org.adblockplus.libadblockplus.android.EngineThread;
+import org.adblockplus.libadblockplus.android.FilterEngineDispatcher;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class EngineThreadTest extends FilterEngineGenericTest
+{
+  private static final int THREADS = 4;
+  private static final int TASKS_PER_THREAD = 1000;
+
+  private EngineThread engineThread;
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    super.setUp();
+
+    engineThread = new EngineThread();
+  }
+
+  @Override
+  protected void tearDown() throws Exception
+  {
+    engineThread.shutdown();
+
+    super.tearDown();
+  }
+
+  @Test
+  public void testSingleThread() throws InterruptedException
+  {
+    final AtomicReference<Thread> executingThread = new AtomicReference<Thread>();
+    final AtomicInteger otherThreadCount = new AtomicInteger();
+    final AtomicInteger executed = new AtomicInteger();
+    final CountDownLatch producersLatch = new CountDownLatch(THREADS);
+
+    for (int i = 0; i < THREADS; i++)
+    {
+      new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          for (int j = 0; j < TASKS_PER_THREAD; j++)
+          {
+            engineThread.execute(new Runnable()
+            {
+              @Override
+              public void run()
+              {
+                executingThread.compareAndSet(null, Thread.currentThread());
+                if (executingThread.get() != Thread.currentThread())
+                {
+                  otherThreadCount.incrementAndGet();
+                }
+                executed.incrementAndGet();
+              }
+            });
+          }
+          producersLatch.countDown();
+        }
+      }).start();
+    }
+
+    assertTrue(producersLatch.await(10, TimeUnit.SECONDS));
+
+    // tasks are executed in order, so this one is the last
+    assertEquals(Integer.valueOf(THREADS * TASKS_PER_THREAD), engineThread.call(new Callable<Integer>()
+    {
+      @Override
+      public Integer call()
+      {
+        assertTrue(engineThread.isEngineThread());
+        return executed.get();
+      }
+    }));
+    assertEquals(0, otherThreadCount.get());
+  }
+
+  @Test
+  public void testException()
+  {
+    try
+    {
+      engineThread.call(new Callable<Object>()
+      {
+        @Override
+        public Object call()
+        {
+          throw new IllegalStateException();
+        }
+      });
+      fail();
+    }
+    catch (IllegalStateException e)
+    {
+      // expected
+    }
+
+    // the thread is still working
+    assertEquals(Integer.valueOf(1), engineThread.call(new Callable<Integer>()
+    {
+      @Override
+      public Integer call()
+      {
+        return 1;
+      }
+    }));
+  }
+
+  @Test
+  public void testShutdown()
+  {
+    engineThread.shutdown();
+    assertTrue(engineThread.isShutdown());
+
+    try
+    {
+      engineThread.execute(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+        }
+      });
+      fail();
+    }
+    catch (RejectedExecutionException e)
+    {
+      // expected
+    }
+  }
+
+  @Test
+  public void testDispatcher() throws Exception
+  {
+    filterEngine.getFilter("adbanner.gif").addToList();
+
+    FilterEngineDispatcher dispatcher = new FilterEngineDispatcher(filterEngine, engineThread);
+    assertEquals(MatchVerdict.BLOCK, MatchVerdict.getVerdict(dispatcher.matchVerdict(
+      "http://example.org/adbanner.gif", FilterEngine.ContentType.IMAGE, new String[0])));
+    assertEquals(MatchVerdict.ALLOW, MatchVerdict.getVerdict(dispatcher.matchVerdictAsync(
+      "http://example.org/image.gif", FilterEngine.ContentType.IMAGE, new String[0]).get()));
+
+    final CountDownLatch latch = new CountDownLatch(1);
+    final AtomicInteger verdict = new AtomicInteger(-1);
+    dispatcher.matchVerdictAsync("http://example.org/adbanner.gif", FilterEngine.ContentType.IMAGE,
+      new String[0], new FilterEngineDispatcher.Callback<Integer>()
+      {
+        @Override
+        public void onResult(Integer result)
+        {
+          verdict.set(result);
+          latch.countDown();
+        }
+
+        @Override
+        public void onError(Throwable t)
+        {
+          latch.countDown();
+        }
+      });
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    assertEquals(MatchVerdict.BLOCK, MatchVerdict.getVerdict(verdict.get()));
+
+    assertFalse(dispatcher.isDocumentWhitelisted("http://example.org", new String[0]));
+  }
+
+  @Test
+  public void testCallOnOptionalEngineThread()
+  {
+    Callable<Thread> currentThread = new Callable<Thread>()
+    {
+      @Override
+      public Thread call()
+      {
+        return Thread.currentThread();
+      }
+    };
+    assertEquals(Thread.currentThread(), EngineThread.call(null, currentThread));
+    assertEquals(EngineThread.THREAD_NAME, EngineThread.call(engineThread, currentThread).getName());
+  }
+
+  @Test
+  public void testDispatcherStylesheetCache()
+  {
+    filterEngine.getFilter("##.generic").addToList();
+    filterEngine.getFilter("example.org##.specific").addToList();
+
+    FilterEngineDispatcher dispatcher = new FilterEngineDispatcher(filterEngine, engineThread);
+    ElementHidingStylesheetCache routed = new ElementHidingStylesheetCache(dispatcher, 2);
+    ElementHidingStylesheetCache direct = new ElementHidingStylesheetCache(filterEngine, 2);
+    assertEquals(direct.get("example.org"), routed.get("example.org"));
+    assertEquals(direct.get("example.com"), routed.get("example.com"));
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import android.os.SystemClock;
+
+import org.adblockplus.libadblockplus.AppInfo;
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.MatchVerdict;
+import org.adblockplus.libadblockplus.android.FilterEngineReplicas;
+
+import org.junit.Test;
+
+public class FilterEngineReplicasTest extends FilterEngineGenericTest
+{
+  private static final int REPLICAS = 2;
+  private static final int TIMEOUT_MS = 30 * 1000;
+  private static final int POLL_INTERVAL_MS = 50;
+
+  private static final String BLOCKED_URL = "http://example.org/adbanner.gif";
+
+  private void waitForUpToDate(FilterEngineReplicas replicas)
+  {
+    long started = SystemClock.elapsedRealtime();
+    while (!replicas.isUpToDate())
+    {
+      assertTrue(SystemClock.elapsedRealtime() - started < TIMEOUT_MS);
+      SystemClock.sleep(POLL_INTERVAL_MS);
+    }
+  }
+
+  private int getVerdict(FilterEngineReplicas replicas, String url)
+  {
+    return MatchVerdict.getVerdict(replicas.matchVerdict(url, FilterEngine.ContentType.IMAGE, new String[0]));
+  }
+
+  @Test
+  public void testReplicas()
+  {
+    // replicas are not published until the filters are saved
+    filterEngine.getFilter("adbanner.gif").addToList();
+
+    FilterEngineReplicas replicas = new FilterEngineReplicas(AppInfo.builder().build(),
+      getContext().getFilesDir().getAbsolutePath(), filterEngine, REPLICAS);
+    try
+    {
+      waitForUpToDate(replicas);
+
+      // round-robin over all the replicas
+      for (int i = 0; i < REPLICAS * 2; i++)
+      {
+        assertEquals(MatchVerdict.BLOCK, getVerdict(replicas, BLOCKED_URL));
+        assertEquals(MatchVerdict.ALLOW, getVerdict(replicas, "http://example.org/image.gif"));
+      }
+
+      // the primary engine is used until the replicas are rebuilt
+      filterEngine.getFilter("@@adbanner.gif").addToList();
+      assertFalse(replicas.isUpToDate());
+      assertEquals(MatchVerdict.EXCEPTION, getVerdict(replicas, BLOCKED_URL));
+
+      waitForUpToDate(replicas);
+      assertEquals(MatchVerdict.EXCEPTION, getVerdict(replicas, BLOCKED_URL));
+    }
+    finally
+    {
+      replicas.dispose();
+      filterEngine.getFilter("adbanner.gif").removeFromList();
+      filterEngine.getFilter("@@adbanner.gif").removeFromList();
+    }
+  }
+}
@@ -19,11 +19,13 @@ package org.adblockplus.libadblockplus.tests;
 
 import org.adblockplus.libadblockplus.Filter;
 import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.MatchVerdict;
 import org.adblockplus.libadblockplus.MockFilterChangeCallback;
 import org.adblockplus.libadblockplus.Subscription;
 
 import org.junit.Test;
 
+import java.io.File;
 import java.util.List;
 
 public class FilterEngineTest extends FilterEngineGenericTest
@@ -323,6 +325,101 @@ public class FilterEngineTest extends FilterEngineGenericTest
     assertEquals(Filter.Type.EXCEPTION, match5.getType());
   }
 
+  @Test
+  public void testMatchVerdict()
+  {
+    filterEngine.getFilter("adbanner.gif").addToList();
+    filterEngine.getFilter("@@notbanner.gif").addToList();
+    filterEngine.getFilter("||ads.com^").addToList();
+
+    String[] documentUrls = new String[]
+      {
+        "http://example.org/"
+      };
+
+    int verdict1 = filterEngine.matchVerdict(
+      "http://example.org/foobar.gif", FilterEngine.ContentType.IMAGE, documentUrls);
+    assertEquals(MatchVerdict.ALLOW, MatchVerdict.getVerdict(verdict1));
+
+    int verdict2 = filterEngine.matchVerdict(
+      "http://example.org/adbanner.gif", FilterEngine.ContentType.IMAGE, documentUrls);
+    assertEquals(MatchVerdict.BLOCK, MatchVerdict.getVerdict(verdict2));
+    assertFalse(MatchVerdict.isDomainSpecific(verdict2));
+
+    int verdict3 = filterEngine.matchVerdict(
+      "http://example.org/notbanner.gif", FilterEngine.ContentType.IMAGE, documentUrls);
+    assertEquals(MatchVerdict.EXCEPTION, MatchVerdict.getVerdict(verdict3));
+
+    int verdict4 = filterEngine.matchVerdict(
+      "http://ads.com/script.js", FilterEngine.ContentType.SCRIPT, documentUrls);
+    assertEquals(MatchVerdict.BLOCK, MatchVerdict.getVerdict(verdict4));
+    assertTrue(MatchVerdict.isDomainSpecific(verdict4));
+  }
+
+  @Test
+  public void testMatchesCache()
+  {
+    filterEngine.setMatchesCacheCapacity(10);
+    assertEquals(10, filterEngine.getMatchesCacheCapacity());
+
+    final String url = "http://example.org/adbanner.gif";
+    final String documentUrl = "http://example.org/";
+
+    assertNull(filterEngine.matches(url, FilterEngine.ContentType.IMAGE, documentUrl));
+    assertEquals(0, filterEngine.getMatchesCacheHits());
+    assertEquals(1, filterEngine.getMatchesCacheMisses());
+
+    assertNull(filterEngine.matches(url, FilterEngine.ContentType.IMAGE, documentUrl));
+    assertEquals(1, filterEngine.getMatchesCacheHits());
+
+    // cache is invalidated on filter change
+    filterEngine.getFilter("adbanner.gif").addToList();
+    Filter match1 = filterEngine.matches(url, FilterEngine.ContentType.IMAGE, documentUrl);
+    assertNotNull(match1);
+    assertEquals(Filter.Type.BLOCKING, match1.getType());
+    assertEquals(2, filterEngine.getMatchesCacheMisses());
+
+    Filter match2 = filterEngine.matches(url, FilterEngine.ContentType.IMAGE, documentUrl);
+    assertNotNull(match2);
+    assertEquals(Filter.Type.BLOCKING, match2.getType());
+    assertEquals(2, filterEngine.getMatchesCacheHits());
+
+    filterEngine.getFilter("adbanner.gif").removeFromList();
+    assertNull(filterEngine.matches(url, FilterEngine.ContentType.IMAGE, documentUrl));
+
+    filterEngine.setMatchesCacheCapacity(0);
+  }
+
+  @Test
+  public void testMatchesCacheSnapshot()
+  {
+    filterEngine.setMatchesCacheCapacity(10);
+    filterEngine.getFilter("adbanner.gif").addToList();
+
+    final String url = "http://example.org/adbanner.gif";
+    final String documentUrl = "http://example.org/";
+    final String path = new File(getContext().getCacheDir(), "matches.snapshot").getAbsolutePath();
+
+    assertNotNull(filterEngine.matches(url, FilterEngine.ContentType.IMAGE, documentUrl));
+    assertTrue(filterEngine.saveMatchesCache(path));
+
+    filterEngine.clearMatchesCache();
+    assertTrue(filterEngine.loadMatchesCache(path));
+
+    long hits = filterEngine.getMatchesCacheHits();
+    Filter match = filterEngine.matches(url, FilterEngine.ContentType.IMAGE, documentUrl);
+    assertNotNull(match);
+    assertEquals(Filter.Type.BLOCKING, match.getType());
+    assertEquals(hits + 1, filterEngine.getMatchesCacheHits());
+
+    // stale snapshot is ignored
+    filterEngine.getFilter("notbanner.gif").addToList();
+    assertFalse(filterEngine.loadMatchesCache(path));
+
+    filterEngine.setMatchesCacheCapacity(0);
+    new File(path).delete();
+  }
+
   @Test
   public void testFirstRunFlag()
   {
@@ -484,4 +581,17 @@ public class FilterEngineTest extends FilterEngineGenericTest
       }
     }
   }
+
+  @Test
+  public void testFiltersFingerprint()
+  {
+    long fingerprint = filterEngine.getFiltersFingerprint();
+    assertEquals(fingerprint, filterEngine.getFiltersFingerprint());
+
+    filterEngine.getFilter("adbanner.gif").addToList();
+    assertFalse(fingerprint == filterEngine.getFiltersFingerprint());
+
+    filterEngine.getFilter("adbanner.gif").removeFromList();
+    assertEquals(fingerprint, filterEngine.getFiltersFingerprint());
+  }
 }
@@ -24,6 +24,8 @@ import org.adblockplus.libadblockplus.WebRequest;
 
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.List;
 
@@ -49,10 +51,23 @@ public class MockWebRequestTest extends BaseJsTest
       result.setResponseStatus(123);
       result.setReponseHeaders(Arrays.asList(new HeaderEntry("Foo", "Bar")));
 
-      result.setResponse(
+      String response =
         url + "\n" + 
         headers.get(0).getKey() + "\n" +
-        headers.get(0).getValue());
+        headers.get(0).getValue();
+
+      if (url.endsWith("/buffer"))
+      {
+        byte[] bytes = response.getBytes(Charset.forName("UTF-8"));
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        result.setResponse(buffer);
+      }
+      else
+      {
+        result.setResponse(response);
+      }
       return result;
     }
   }
@@ -146,4 +161,18 @@ public class MockWebRequestTest extends BaseJsTest
       jsEngine.evaluate("JSON.stringify(foo.responseHeaders)").asString());
   }
 
+  @Test
+  public void testSuccessfulByteBufferRequest() throws InterruptedException
+  {
+    jsEngine.evaluate(
+      "_webRequest.GET('http://example.com/buffer', {X: '\u00fc'}, function(result) {foo = result;} )");
+
+    Thread.sleep(200);
+
+    assertEquals(
+      ServerResponse.NsStatus.OK.getStatusCode(),
+      jsEngine.evaluate("foo.status").asLong());
+    assertEquals("http://example.com/buffer\nX\n\u00fc", jsEngine.evaluate("foo.responseText").asString());
+  }
+
 }
@@ -0,0 +1,157 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.adblockplus.libadblockplus.tests;
+
+import org.adblockplus.libadblockplus.FilterEngine.ContentType;
+import org.adblockplus.libadblockplus.MatchVerdict;
+import org.adblockplus.libadblockplus.NativeMatcher;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class NativeMatcherTest extends FilterEngineGenericTest
+{
+  private static final List<String> FILTERS = Arrays.asList(
+    "! comment",
+    "example.com##.ad",
+    "example.com#@#.ad",
+    "invalid$unknown-option",
+    "adbanner.gif",
+    "||ads.example.com^",
+    "@@||ads.example.com/allowed/$image",
+    "|http://start.example.org/a",
+    ".swf|",
+    "/banner/*/img^",
+    "&ad_box_",
+    "||tracker.example.net^$third-party",
+    "||first.example.net^$~third-party",
+    "||cdn.example.net/lib.js$script,domain=example.com|~sub.example.com",
+    "-ad-$~image",
+    "/\\/ad[0-9]+\\.png/",
+    "/CaseSensitive/$match-case",
+    "||media.example.com^$media,font",
+    "@@||whitelisted.example.com^$document",
+    "@@||nohide.example.com^$elemhide",
+    "$websocket,domain=example.com");
+
+  private static final ContentType[] CONTENT_TYPES = {
+    ContentType.IMAGE, ContentType.SCRIPT, ContentType.SUBDOCUMENT, ContentType.MEDIA,
+    ContentType.OTHER };
+
+  private static final String[] URLS = {
+    "http://example.com/adbanner.gif",
+    "http://example.com/adbanner.gif?x=1",
+    "http://ads.example.com/image.png",
+    "https://sub.ads.example.com:8080/image.png",
+    "http://ads.example.com.other.org/image.png",
+    "http://notads.example.com/image.png",
+    "http://ads.example.com/allowed/image.png",
+    "http://start.example.org/abc",
+    "https://start.example.org/abc",
+    "http://example.com/movie.swf",
+    "http://example.com/movie.swf?autoplay",
+    "http://example.com/banner/top/img",
+    "http://example.com/banner/top/img?size=1",
+    "http://example.com/banner/top/imgx",
+    "http://example.com/page?a=1&ad_box_=2",
+    "http://tracker.example.net/pixel",
+    "http://first.example.net/pixel",
+    "http://cdn.example.net/lib.js",
+    "http://example.com/x-ad-y.js",
+    "http://example.com/AD123.png",
+    "http://example.com/CaseSensitive/file",
+    "http://example.com/casesensitive/file",
+    "http://media.example.com/video.mp4",
+    "http://example.com/"
+  };
+
+  private static final String[][] DOCUMENT_URLS = {
+    {},
+    { "http://example.com/" },
+    { "http://sub.example.com/" },
+    { "http://www.tracker.example.net/" },
+    { "http://first.example.net/frame", "http://other.org/" },
+    { "http://whitelisted.example.com/" },
+    { "http://example.com/frame", "http://whitelisted.example.com/" }
+  };
+
+  @Test
+  public void testFilterCount()
+  {
+    NativeMatcher matcher = new NativeMatcher(FILTERS);
+    try
+    {
+      // comments, element hiding and invalid filters are skipped
+      assertEquals(FILTERS.size() - 4, matcher.getFilterCount());
+    }
+    finally
+    {
+      matcher.dispose();
+    }
+  }
+
+  @Test
+  public void testConformance()
+  {
+    for (String filter : FILTERS)
+    {
+      filterEngine.getFilter(filter).addToList();
+    }
+
+    NativeMatcher fromFilters = new NativeMatcher(FILTERS);
+    NativeMatcher fromJsEngine = NativeMatcher.fromJsEngine(jsEngine);
+    try
+    {
+      assertEquals(fromFilters.getFilterCount(), fromJsEngine.getFilterCount());
+
+      for (String[] documentUrls : DOCUMENT_URLS)
+      {
+        for (String url : URLS)
+        {
+          for (ContentType contentType : CONTENT_TYPES)
+          {
+            String message = contentType + " " + url + " " + Arrays.toString(documentUrls);
+            int expected = MatchVerdict.getVerdict(filterEngine.matchVerdict(url, contentType, documentUrls));
+            assertEquals(message, expected,
+              MatchVerdict.getVerdict(fromFilters.matchVerdict(url, contentType, documentUrls)));
+            assertEquals(message, expected,
+              MatchVerdict.getVerdict(fromJsEngine.matchVerdict(url, contentType, documentUrls)));
+          }
+
+          String message = url + " " + Arrays.toString(documentUrls);
+          assertEquals(message,
+            filterEngine.isDocumentWhitelisted(url, documentUrls),
+            fromFilters.isDocumentWhitelisted(url, documentUrls));
+          assertEquals(message,
+            filterEngine.isElemhideWhitelisted(url, documentUrls),
+            fromFilters.isElemhideWhitelisted(url, documentUrls));
+        }
+      }
+    }
+    finally
+    {
+      fromFilters.dispose();
+      fromJsEngine.dispose();
+      for (String filter : FILTERS)
+      {
+        filterEngine.getFilter(filter).removeFromList();
+      }
+    }
+  }
+}
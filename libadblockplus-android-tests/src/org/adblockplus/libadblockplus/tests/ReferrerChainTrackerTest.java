@@ -0,0 +1,84 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import org.adblockplus.libadblockplus.android.ReferrerChainTracker;
+
+import org.junit.Test;
+
+public class ReferrerChainTrackerTest extends BaseJsTest
+{
+  private static final String TOP = "http://example.com/";
+  private static final String FRAME = "http://frame.com/frame.html";
+  private static final String NESTED_FRAME = "http://nested.com/frame.html";
+  private static final String RESOURCE = "http://ads.com/ad.js";
+
+  @Test
+  public void testChain()
+  {
+    ReferrerChainTracker tracker = new ReferrerChainTracker(ReferrerChainTracker.DEFAULT_CAPACITY);
+    assertEquals(0, tracker.getChain(null).length);
+
+    tracker.put(FRAME, TOP);
+    tracker.put(NESTED_FRAME, FRAME);
+    tracker.put(RESOURCE, NESTED_FRAME);
+
+    assertEquals(NESTED_FRAME, tracker.get(RESOURCE));
+
+    String[] chain = tracker.getChain(tracker.get(RESOURCE));
+    assertEquals(3, chain.length);
+    assertEquals(NESTED_FRAME, chain[0]);
+    assertEquals(FRAME, chain[1]);
+    assertEquals(TOP, chain[2]);
+
+    assertEquals(1, tracker.getChain(TOP).length);
+  }
+
+  @Test
+  public void testLoop()
+  {
+    ReferrerChainTracker tracker = new ReferrerChainTracker(ReferrerChainTracker.DEFAULT_CAPACITY);
+    tracker.put(FRAME, NESTED_FRAME);
+    tracker.put(NESTED_FRAME, FRAME);
+
+    assertEquals(2, tracker.getChain(FRAME).length);
+
+    // self-referencing is ignored
+    tracker.put(TOP, TOP);
+    assertNull(tracker.get(TOP));
+  }
+
+  @Test
+  public void testBounded()
+  {
+    final int capacity = 10;
+    ReferrerChainTracker tracker = new ReferrerChainTracker(capacity);
+    for (int i = 0; i < capacity * 3; i++)
+    {
+      tracker.put(RESOURCE + "?" + i, TOP);
+    }
+    assertEquals(capacity, tracker.size());
+
+    // the oldest are evicted
+    assertNull(tracker.get(RESOURCE + "?0"));
+    assertEquals(TOP, tracker.get(RESOURCE + "?" + (capacity * 3 - 1)));
+
+    tracker.clear();
+    assertEquals(0, tracker.size());
+  }
+}
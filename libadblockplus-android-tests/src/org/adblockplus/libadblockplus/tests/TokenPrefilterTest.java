@@ -0,0 +1,216 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.adblockplus.libadblockplus.tests;
+
+import org.adblockplus.libadblockplus.FilterEngine.ContentType;
+import org.adblockplus.libadblockplus.MatchVerdict;
+import org.adblockplus.libadblockplus.android.HostExtractor;
+import org.adblockplus.libadblockplus.android.TokenPrefilter;
+import org.adblockplus.libadblockplus.tests.test.R;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TokenPrefilterTest extends FilterEngineGenericTest
+{
+  private static final String THIRD_PARTY_DOCUMENT_URL = "http://thirdparty.example.org/";
+
+  private static final String[] UNRELATED_URLS = {
+    "http://example.com/",
+    "https://www.wikipedia.org/wiki/Main",
+    "https://example.com/favicon.ico"
+  };
+
+  private HostExtractor hostExtractor;
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    super.setUp();
+    hostExtractor = new HostExtractor(filterEngine, HostExtractor.DEFAULT_CAPACITY);
+  }
+
+  private List<String> readFilters(int resourceId) throws IOException
+  {
+    List<String> filters = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(
+      getInstrumentation().getContext().getResources().openRawResource(resourceId), "UTF-8"));
+    try
+    {
+      String line;
+      while ((line = reader.readLine()) != null)
+      {
+        line = line.trim();
+        if (line.length() > 0 && !line.startsWith("[") && !line.startsWith("!"))
+        {
+          filters.add(line);
+        }
+      }
+    }
+    finally
+    {
+      reader.close();
+    }
+    return filters;
+  }
+
+  // URL which is likely to be matched by the blocking filter or `null`
+  private static String buildMatchingUrl(String filter)
+  {
+    if (filter.startsWith("@@") || filter.contains("#") ||
+        (filter.startsWith("/") && filter.endsWith("/")))
+    {
+      return null;
+    }
+
+    int optionsStart = filter.lastIndexOf('$');
+    String pattern = optionsStart >= 0 ? filter.substring(0, optionsStart) : filter;
+    String prefix = "http://example.com/";
+    if (pattern.startsWith("||"))
+    {
+      pattern = pattern.substring(2);
+      prefix = "http://";
+    }
+    else if (pattern.startsWith("|"))
+    {
+      pattern = pattern.substring(1);
+      prefix = pattern.startsWith("http") ? "" : prefix;
+    }
+    if (pattern.endsWith("|"))
+    {
+      pattern = pattern.substring(0, pattern.length() - 1);
+    }
+    if (pattern.startsWith("/") && prefix.endsWith("/"))
+    {
+      pattern = pattern.substring(1);
+    }
+    return prefix + pattern.replace("*", "x").replace("^", "/").replace("|", "");
+  }
+
+  // document URL on the first included domain of the filter
+  private static String buildDocumentUrl(String filter)
+  {
+    int domainsStart = filter.indexOf("domain=", filter.lastIndexOf('$') + 1);
+    if (domainsStart < 0)
+    {
+      return THIRD_PARTY_DOCUMENT_URL;
+    }
+    String domains = filter.substring(domainsStart + "domain=".length()).split(",")[0];
+    for (String domain : domains.split("\\|"))
+    {
+      if (!domain.startsWith("~"))
+      {
+        return "http://" + domain + "/";
+      }
+    }
+    return THIRD_PARTY_DOCUMENT_URL;
+  }
+
+  @Test
+  public void testEmptyFilters()
+  {
+    TokenPrefilter prefilter = TokenPrefilter.build(filterEngine);
+    assertTrue(prefilter.isEnabled());
+    assertEquals(0, prefilter.getTokenCount());
+    assertEquals(filterEngine.getFilterChangeGeneration(), prefilter.getGeneration());
+    assertFalse(prefilter.mayMatch(UNRELATED_URLS[0], new String[0], hostExtractor));
+  }
+
+  @Test
+  public void testNotIndexableFilter()
+  {
+    // no keyword, literal substring or included domain
+    filterEngine.getFilter("*$image").addToList();
+
+    TokenPrefilter prefilter = TokenPrefilter.build(filterEngine);
+    assertFalse(prefilter.isEnabled());
+    for (String url : UNRELATED_URLS)
+    {
+      assertTrue(prefilter.mayMatch(url, new String[0], hostExtractor));
+    }
+  }
+
+  @Test
+  public void testDomainFilter()
+  {
+    filterEngine.getFilter("/[a-z]+/$script,domain=example.net").addToList();
+
+    TokenPrefilter prefilter = TokenPrefilter.build(filterEngine);
+    assertTrue(prefilter.isEnabled());
+    String[] documentUrls = { "http://www.example.net/page", THIRD_PARTY_DOCUMENT_URL };
+    assertTrue(prefilter.mayMatch(UNRELATED_URLS[0], documentUrls, hostExtractor));
+    assertFalse(prefilter.mayMatch(UNRELATED_URLS[0],
+      new String[] { THIRD_PARTY_DOCUMENT_URL }, hostExtractor));
+  }
+
+  @Test
+  public void testNoFalseNegatives() throws IOException
+  {
+    List<String> filters = readFilters(R.raw.easylist);
+    filters.addAll(readFilters(R.raw.exceptionrules));
+    for (String filter : filters)
+    {
+      filterEngine.getFilter(filter).addToList();
+    }
+
+    TokenPrefilter prefilter = TokenPrefilter.build(filterEngine);
+    assertTrue(prefilter.isEnabled());
+    assertTrue(prefilter.getTokenCount() > 0);
+
+    int blocked = 0;
+    for (String filter : filters)
+    {
+      String url = buildMatchingUrl(filter);
+      if (url == null)
+      {
+        continue;
+      }
+
+      String[][] documentUrlsList = {
+        { buildDocumentUrl(filter) },
+        { url }
+      };
+      for (String[] documentUrls : documentUrlsList)
+      {
+        for (ContentType contentType : ContentType.values())
+        {
+          int verdict = MatchVerdict.getVerdict(filterEngine.matchVerdict(url, contentType, documentUrls));
+          if (verdict == MatchVerdict.BLOCK)
+          {
+            blocked++;
+            assertTrue(filter + ": " + contentType + " " + url + " " + Arrays.toString(documentUrls),
+              prefilter.mayMatch(url, documentUrls, hostExtractor));
+          }
+        }
+      }
+    }
+
+    // make sure the synthesized requests are mostly blocked, otherwise the check is meaningless
+    assertTrue(blocked > filters.size() / 2);
+
+    for (String url : UNRELATED_URLS)
+    {
+      assertFalse(url, prefilter.mayMatch(url, new String[] { THIRD_PARTY_DOCUMENT_URL }, hostExtractor));
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import org.adblockplus.libadblockplus.android.ValidatorCache;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Properties;
+
+public class ValidatorCacheTest extends BaseJsTest
+{
+  private static final String KEY = "https://easylist-downloads.adblockplus.org/easylist.txt";
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private File directory;
+  private ValidatorCache cache;
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    super.setUp();
+
+    directory = new File(getContext().getCacheDir(), "validators");
+    cache = new ValidatorCache(directory);
+    cache.remove(KEY);
+  }
+
+  private static ByteBuffer toBuffer(String str)
+  {
+    byte[] bytes = str.getBytes(UTF8);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+    buffer.put(bytes);
+    buffer.flip();
+    return buffer;
+  }
+
+  @Test
+  public void testPutAndGet()
+  {
+    assertNull(cache.get(KEY));
+
+    ByteBuffer body = toBuffer("[Adblock Plus 2.0]\nadbanner.gif\n");
+    cache.put(KEY, new ValidatorCache.Validators("\"abc\"", "Mon, 01 May 2017 10:00:00 GMT"), body);
+    // buffer is not consumed
+    assertEquals(0, body.position());
+
+    ValidatorCache.Validators validators = cache.get(KEY);
+    assertNotNull(validators);
+    assertEquals("\"abc\"", validators.getETag());
+    assertEquals("Mon, 01 May 2017 10:00:00 GMT", validators.getLastModified());
+
+    ByteBuffer cachedBody = cache.getBody(KEY);
+    assertNotNull(cachedBody);
+    assertEquals("[Adblock Plus 2.0]\nadbanner.gif\n", UTF8.decode(cachedBody).toString());
+
+    cache.remove(KEY);
+    assertNull(cache.get(KEY));
+  }
+
+  @Test
+  public void testEmptyValidators()
+  {
+    cache.put(KEY, new ValidatorCache.Validators("\"abc\"", null), toBuffer("body"));
+    assertNotNull(cache.get(KEY));
+
+    // no validators in the new response
+    cache.put(KEY, new ValidatorCache.Validators(null, null), toBuffer("new body"));
+    assertNull(cache.get(KEY));
+  }
+
+  @Test
+  public void testCorruptedMeta() throws IOException
+  {
+    cache.put(KEY, new ValidatorCache.Validators("\"abc\"", null), toBuffer("body"));
+    assertNotNull(cache.get(KEY));
+
+    File[] metaFiles = directory.listFiles();
+    assertNotNull(metaFiles);
+    for (File metaFile : metaFiles)
+    {
+      if (!metaFile.getName().endsWith(".meta"))
+      {
+        continue;
+      }
+
+      Properties meta = new Properties();
+      FileInputStream inputStream = new FileInputStream(metaFile);
+      try
+      {
+        meta.load(inputStream);
+      }
+      finally
+      {
+        inputStream.close();
+      }
+
+      meta.setProperty("length", "4x");
+      FileOutputStream outputStream = new FileOutputStream(metaFile);
+      try
+      {
+        meta.store(outputStream, null);
+      }
+      finally
+      {
+        outputStream.close();
+      }
+    }
+
+    // corrupted entry is treated as missing and removed
+    assertNull(cache.get(KEY));
+    assertNull(cache.getBody(KEY));
+  }
+}
@@ -1,21 +1,12 @@
 {
-   {{DEBUG}} console.log('starting injecting css rules');
-   var selectors = JSON.parse({{BRIDGE}}.getElemhideSelectors());
-   {{DEBUG}} console.log('parsed selectors: ' + selectors.length);
-   var head = document.getElementsByTagName("head")[0];
-   var style = document.createElement("style");
-   head.appendChild(style);
-   var sheet = style.sheet ? style.sheet : style.styleSheet;
-   for (var i=0; i<selectors.length; i++)
+   {{DEBUG}} console.log('starting injecting css stylesheet: ' + stylesheet.length + ' chars');
+   if (stylesheet.length > 0)
    {
-     if (sheet.insertRule)
-     {
-       sheet.insertRule(selectors[i] + ' { display: none !important; }', 0);
-     }
-     else
-     {
-       sheet.addRule(selectors[i], 'display: none !important;', 0);
-     }
+     var head = document.getElementsByTagName("head")[0];
+     var style = document.createElement("style");
+     // single DOM operation instead of inserting the rules one by one
+     style.textContent = stylesheet;
+     head.appendChild(style);
    }
-   {{DEBUG}} console.log('finished injecting css rules');
+   {{DEBUG}} console.log('finished injecting css stylesheet');
 }
\ No newline at end of file
@@ -7,6 +7,20 @@ var hideElements = function()
     return;
   }
 
+  // no need to request again if requested on another event
+  if (window.{{BRIDGE}}StylesheetRequested)
+  {
+    {{DEBUG}} console.log('already requested, exiting');
+    return;
+  }
+  window.{{BRIDGE}}StylesheetRequested = true;
+
+  // does not block, the stylesheet is pushed to `{{BRIDGE}}ApplyStylesheet` when ready
+  {{BRIDGE}}.requestElemhideStylesheet();
+};
+
+window.{{BRIDGE}}ApplyStylesheet = function(stylesheet)
+{
   // hide using element visibility (to be replaced with script body)
   {{HIDE}}
 
@@ -46,18 +46,15 @@ import android.webkit.WebView;
 import android.webkit.WebViewClient;
 
 import org.adblockplus.libadblockplus.FilterEngine;
-import org.adblockplus.libadblockplus.Subscription;
 import org.adblockplus.libadblockplus.android.AdblockEngine;
+import org.adblockplus.libadblockplus.android.ContentTypeDetector;
+import org.adblockplus.libadblockplus.android.ElementHidingExecutor;
+import org.adblockplus.libadblockplus.android.ReferrerChainTracker;
 import org.adblockplus.libadblockplus.android.Utils;
+import org.json.JSONObject;
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.regex.Pattern;
 
 /**
  * WebView with ad blocking
@@ -84,13 +81,9 @@ public class AdblockWebView extends WebView
   private static final String HIDE_TOKEN = "{{HIDE}}";
   private static final String BRIDGE = "jsBridge";
   private static final String[] EMPTY_ARRAY = {};
-  private static final String EMPTY_ELEMHIDE_ARRAY_STRING = "[]";
-
-  private static final Pattern RE_JS = Pattern.compile("\\.js$", Pattern.CASE_INSENSITIVE);
-  private static final Pattern RE_CSS = Pattern.compile("\\.css$", Pattern.CASE_INSENSITIVE);
-  private static final Pattern RE_IMAGE = Pattern.compile("\\.(?:gif|png|jpe?g|bmp|ico)$", Pattern.CASE_INSENSITIVE);
-  private static final Pattern RE_FONT = Pattern.compile("\\.(?:ttf|woff)$", Pattern.CASE_INSENSITIVE);
-  private static final Pattern RE_HTML = Pattern.compile("\\.html?$", Pattern.CASE_INSENSITIVE);
+  private static final String EMPTY_ELEMHIDE_STYLESHEET = "";
+  // page function defined in injected JS to push the stylesheet to
+  private static final String APPLY_STYLESHEET_FUNCTION = BRIDGE + "ApplyStylesheet";
 
   private volatile boolean addDomListener = true;
   private boolean adblockEnabled = true;
@@ -102,14 +95,16 @@ public class AdblockWebView extends WebView
   private WebChromeClient extWebChromeClient;
   private WebViewClient extWebViewClient;
   private WebViewClient intWebViewClient;
-  private Map<String, String> url2Referrer = Collections.synchronizedMap(new HashMap<String, String>());
+  private final ReferrerChainTracker referrerChainTracker =
+    new ReferrerChainTracker(ReferrerChainTracker.DEFAULT_CAPACITY);
   private String url;
   private String domain;
   private String injectJs;
-  private CountDownLatch elemHideLatch;
-  private String elemHideSelectorsString;
-  private Object elemHideThreadLockObject = new Object();
-  private ElemHideThread elemHideThread;
+  private String elemHideStylesheet;
+  private boolean elemHideStylesheetRequested;
+  private int elemHideLoadId;
+  private Object elemHideRequestLockObject = new Object();
+  private ElementHidingExecutor.Request elemHideRequest;
   private boolean loading;
   private volatile boolean elementsHidden = false;
   private final Handler handler = new Handler();
@@ -143,7 +138,7 @@ public class AdblockWebView extends WebView
   @JavascriptInterface
   public void setAddDomListener(boolean value)
   {
-    d("addDomListener=" + value);
+    d("addDomListener=", value);
     this.addDomListener = value;
   }
 
@@ -199,6 +194,32 @@ public class AdblockWebView extends WebView
     }
   }
 
+  // lazy overloads: parts are concatenated only if debug mode is on,
+  // so the callers on the request path don't build the message for nothing
+  private void d(String part1, Object part2)
+  {
+    if (debugMode)
+    {
+      Log.d(TAG, part1 + part2);
+    }
+  }
+
+  private void d(String part1, Object part2, Object part3)
+  {
+    if (debugMode)
+    {
+      Log.d(TAG, part1 + part2 + part3);
+    }
+  }
+
+  private void d(String part1, Object part2, Object part3, Object part4)
+  {
+    if (debugMode)
+    {
+      Log.d(TAG, part1 + part2 + part3 + part4);
+    }
+  }
+
   private void w(String message)
   {
     if (debugMode)
@@ -207,6 +228,14 @@ public class AdblockWebView extends WebView
     }
   }
 
+  private void w(String part1, Object part2)
+  {
+    if (debugMode)
+    {
+      Log.w(TAG, part1 + part2);
+    }
+  }
+
   private void e(String message, Throwable t)
   {
     Log.e(TAG, message, t);
@@ -498,10 +527,7 @@ public class AdblockWebView extends WebView
     @Override
     public boolean onConsoleMessage(ConsoleMessage consoleMessage)
     {
-      d("JS: level=" + consoleMessage.messageLevel()
-        + ", message=\"" + consoleMessage.message() + "\""
-        + ", sourceId=\"" + consoleMessage.sourceId() + "\""
-        + ", line=" + consoleMessage.lineNumber());
+      d("JS: level=", consoleMessage.messageLevel(), ", message=", consoleMessage.message());
 
       if (extWebChromeClient != null)
       {
@@ -555,7 +581,7 @@ public class AdblockWebView extends WebView
     @Override
     public void onProgressChanged(WebView view, int newProgress)
     {
-      d("Loading progress=" + newProgress + "%");
+      d("Loading progress=", newProgress, "%");
 
       // addDomListener is changed to 'false' in `setAddDomListener` invoked from injected JS
       if (getAddDomListener() && loadError == null && injectJs != null)
@@ -613,7 +639,7 @@ public class AdblockWebView extends WebView
   private void clearReferrers()
   {
     d("Clearing referrers");
-    url2Referrer.clear();
+    referrerChainTracker.clear();
   }
 
   /**
@@ -822,7 +848,7 @@ public class AdblockWebView extends WebView
 
     protected WebResourceResponse shouldInterceptRequest(
       WebView webview, String url, boolean isMainFrame,
-      boolean isXmlHttpRequest, String[] referrerChainArray)
+      boolean isXmlHttpRequest, String accept, String[] referrerChainArray)
     {
       // if dispose() was invoke, but the page is still loading then just let it go
       if (adblockEngine == null)
@@ -836,7 +862,7 @@ public class AdblockWebView extends WebView
       if (isMainFrame)
       {
         // never blocking main frame requests, just subrequests
-        w(url + " is main frame, allow loading");
+        w(url, " is main frame, allow loading");
 
         // allow loading by returning null
         return null;
@@ -845,7 +871,7 @@ public class AdblockWebView extends WebView
       // whitelisted
       if (adblockEngine.isDomainWhitelisted(url, referrerChainArray))
       {
-        w(url + " domain is whitelisted, allow loading");
+        w(url, " domain is whitelisted, allow loading");
 
         // allow loading by returning null
         return null;
@@ -853,7 +879,7 @@ public class AdblockWebView extends WebView
 
       if (adblockEngine.isDocumentWhitelisted(url, referrerChainArray))
       {
-        w(url + " document is whitelisted, allow loading");
+        w(url, " document is whitelisted, allow loading");
 
         // allow loading by returning null
         return null;
@@ -867,42 +893,19 @@ public class AdblockWebView extends WebView
       }
       else
       {
-        if (RE_JS.matcher(url).find())
-        {
-          contentType = FilterEngine.ContentType.SCRIPT;
-        }
-        else if (RE_CSS.matcher(url).find())
-        {
-          contentType = FilterEngine.ContentType.STYLESHEET;
-        }
-        else if (RE_IMAGE.matcher(url).find())
-        {
-          contentType = FilterEngine.ContentType.IMAGE;
-        }
-        else if (RE_FONT.matcher(url).find())
-        {
-          contentType = FilterEngine.ContentType.FONT;
-        }
-        else if (RE_HTML.matcher(url).find())
-        {
-          contentType = FilterEngine.ContentType.SUBDOCUMENT;
-        }
-        else
-        {
-          contentType = FilterEngine.ContentType.OTHER;
-        }
+        contentType = ContentTypeDetector.detect(url, accept);
       }
 
       // check if we should block
       if (adblockEngine.matches(url, contentType, referrerChainArray))
       {
-        w("Blocked loading " + url);
+        w("Blocked loading ", url);
 
         // if we should block, return empty response which results in 'errorLoading' callback
         return new WebResourceResponse("text/plain", "UTF-8", null);
       }
 
-      d("Allowed loading " + url);
+      d("Allowed loading ", url);
 
       // continue by returning null
       return null;
@@ -926,21 +929,22 @@ public class AdblockWebView extends WebView
 
       if (referrer != null)
       {
-        d("Header referrer for " + url + " is " + referrer);
-        url2Referrer.put(url, referrer);
+        d("Header referrer for ", url, " is ", referrer);
+        referrerChainTracker.put(url, referrer);
 
-        referrers = new String[]
-          {
-            referrer
-          };
+        // full frame ancestry: referrer, its referrer, ..., top level document
+        referrers = referrerChainTracker.getChain(referrer);
       }
       else
       {
-        w("No referrer header for " + url);
+        w("No referrer header for ", url);
         referrers = EMPTY_ARRAY;
       }
 
-      return shouldInterceptRequest(view, url, request.isForMainFrame(), isXmlHttpRequest, referrers);
+      String accept = request.getRequestHeaders().get(ContentTypeDetector.HEADER_ACCEPT);
+
+      return shouldInterceptRequest(view, url, request.isForMainFrame(), isXmlHttpRequest,
+        accept, referrers);
     }
   }
 
@@ -969,128 +973,6 @@ public class AdblockWebView extends WebView
       .build();
   }
 
-  private class ElemHideThread extends Thread
-  {
-    private String selectorsString;
-    private CountDownLatch finishedLatch;
-    private AtomicBoolean isCancelled;
-
-    public ElemHideThread(CountDownLatch finishedLatch)
-    {
-      this.finishedLatch = finishedLatch;
-      isCancelled = new AtomicBoolean(false);
-    }
-
-    @Override
-    public void run()
-    {
-      try
-      {
-        if (adblockEngine == null)
-        {
-          w("FilterEngine already disposed");
-          selectorsString = EMPTY_ELEMHIDE_ARRAY_STRING;
-        }
-        else
-        {
-          String[] referrers = new String[]
-            {
-              url
-            };
-
-          List<Subscription> subscriptions = adblockEngine.getFilterEngine().getListedSubscriptions();
-          try
-          {
-            d("Listed subscriptions: " + subscriptions.size());
-            if (debugMode)
-            {
-              for (Subscription eachSubscription : subscriptions)
-              {
-                d("Subscribed to "
-                  + (eachSubscription.isDisabled() ? "disabled" : "enabled")
-                  + " " + eachSubscription);
-              }
-            }
-          }
-          finally
-          {
-            for (Subscription eachSubscription : subscriptions)
-            {
-              eachSubscription.dispose();
-            }
-          }
-
-          d("Requesting elemhide selectors from AdblockEngine for " + url + " in " + this);
-          List<String> selectors = adblockEngine.getElementHidingSelectors(url, domain, referrers);
-          d("Finished requesting elemhide selectors, got " + selectors.size() + " in " + this);
-          selectorsString = Utils.stringListToJsonArray(selectors);
-        }
-      }
-      finally
-      {
-        if (!isCancelled.get())
-        {
-          finish(selectorsString);
-        }
-        else
-        {
-          w("This thread is cancelled, exiting silently " + this);
-        }
-      }
-    }
-
-    private void onFinished()
-    {
-      finishedLatch.countDown();
-      synchronized (finishedRunnableLockObject)
-      {
-        if (finishedRunnable != null)
-        {
-          finishedRunnable.run();
-        }
-      }
-    }
-
-    private void finish(String result)
-    {
-      d("Setting elemhide string " + result.length() + " bytes");
-      elemHideSelectorsString = result;
-      onFinished();
-    }
-
-    private final Object finishedRunnableLockObject = new Object();
-    private Runnable finishedRunnable;
-
-    public void setFinishedRunnable(Runnable runnable)
-    {
-      synchronized (finishedRunnableLockObject)
-      {
-        this.finishedRunnable = runnable;
-      }
-    }
-
-    public void cancel()
-    {
-      w("Cancelling elemhide thread " + this);
-      isCancelled.set(true);
-
-      finish(EMPTY_ELEMHIDE_ARRAY_STRING);
-    }
-  }
-
-  private Runnable elemHideThreadFinishedRunnable = new Runnable()
-  {
-    @Override
-    public void run()
-    {
-      synchronized (elemHideThreadLockObject)
-      {
-        w("elemHideThread set to null");
-        elemHideThread = null;
-      }
-    }
-  };
-
   private void initAbpLoading()
   {
     getSettings().setJavaScriptEnabled(true);
@@ -1105,7 +987,11 @@ public class AdblockWebView extends WebView
 
   private void startAbpLoading(String newUrl)
   {
-    d("Start loading " + newUrl);
+    d("Start loading ", newUrl);
+
+    // the request of the previous navigation is cancelled even if it's not loading anymore
+    // (`stopAbpLoading()` is invoked only if it is)
+    cancelElemHideRequest();
 
     loading = true;
     addDomListener = true;
@@ -1117,30 +1003,95 @@ public class AdblockWebView extends WebView
     {
       try
       {
-        domain = adblockEngine.getFilterEngine().getHostFromURL(url);
+        domain = adblockEngine.getHostFromURL(url);
         if (domain == null)
         {
           throw new RuntimeException("Failed to extract domain from " + url);
         }
 
-        d("Extracted domain " + domain + " from " + url);
+        d("Extracted domain ", domain, " from ", url);
       }
       catch (Throwable t)
       {
         e("Failed to extract domain from " + url, t);
       }
 
-      elemHideLatch = new CountDownLatch(1);
-      elemHideThread = new ElemHideThread(elemHideLatch);
-      elemHideThread.setFinishedRunnable(elemHideThreadFinishedRunnable);
-      elemHideThread.start();
+      String[] referrers = new String[]
+        {
+          url
+        };
+
+      d("Requesting elemhide stylesheet from AdblockEngine for ", url);
+      synchronized (elemHideRequestLockObject)
+      {
+        final int loadId = resetElemHideStylesheet();
+        elemHideRequest = adblockEngine.getElementHidingStylesheetAsync(url, domain, referrers,
+          new ElementHidingExecutor.Callback()
+          {
+            @Override
+            public void onFinished(String stylesheet)
+            {
+              d("Elemhide stylesheet ready, ", stylesheet.length(), " chars");
+              synchronized (elemHideRequestLockObject)
+              {
+                if (loadId != elemHideLoadId)
+                {
+                  // another page is loading already
+                  return;
+                }
+                elemHideRequest = null;
+                elemHideStylesheet = stylesheet;
+                if (elemHideStylesheetRequested)
+                {
+                  pushElemHideStylesheet(loadId, stylesheet);
+                }
+              }
+            }
+          });
+      }
     }
     else
     {
-      elemHideLatch = null;
+      synchronized (elemHideRequestLockObject)
+      {
+        resetElemHideStylesheet();
+        elemHideStylesheet = EMPTY_ELEMHIDE_STYLESHEET;
+      }
     }
   }
 
+  // invoked while holding `elemHideRequestLockObject`
+  private int resetElemHideStylesheet()
+  {
+    elemHideStylesheet = null;
+    elemHideStylesheetRequested = false;
+    return ++elemHideLoadId;
+  }
+
+  // invoked while holding `elemHideRequestLockObject`
+  private void pushElemHideStylesheet(final int loadId, final String stylesheet)
+  {
+    // `evaluateJavascript` must be invoked on main thread
+    handler.post(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        synchronized (elemHideRequestLockObject)
+        {
+          if (loadId != elemHideLoadId)
+          {
+            d("Page changed, elemhide stylesheet is not pushed");
+            return;
+          }
+        }
+
+        d("Pushing elemhide stylesheet, ", stylesheet.length(), " chars");
+        runScript(APPLY_STYLESHEET_FUNCTION + "(" + JSONObject.quote(stylesheet) + ");");
+      }
+    });
+  }
+
   private void buildInjectJs()
   {
     try
@@ -1259,13 +1210,31 @@ public class AdblockWebView extends WebView
     stopPreventDrawing();
     clearReferrers();
 
-    synchronized (elemHideThreadLockObject)
+    cancelElemHideRequest();
+  }
+
+  private void cancelElemHideRequest()
+  {
+    final ElementHidingExecutor.Request request;
+    synchronized (elemHideRequestLockObject)
     {
-      if (elemHideThread != null)
+      request = elemHideRequest;
+      if (request == null)
       {
-        elemHideThread.cancel();
+        return;
       }
+
+      w("Cancelling elemhide request");
+      elemHideRequest = null;
+
+      // the page can still request it, pending pushes are dropped
+      // (running callback sees another load id)
+      resetElemHideStylesheet();
+      elemHideStylesheet = EMPTY_ELEMHIDE_STYLESHEET;
     }
+
+    // not holding `elemHideRequestLockObject` as `cancel()` waits for the running callback
+    request.cancel();
   }
 
   // warning: do not rename (used in injected JS by method name)
@@ -1284,7 +1253,7 @@ public class AdblockWebView extends WebView
 
       if (allowDrawDelay > 0)
       {
-        d("Scheduled 'allow drawing' invocation in " + allowDrawDelay + " ms");
+        d("Scheduled 'allow drawing' invocation in ", allowDrawDelay, " ms");
       }
       handler.postDelayed(allowDrawRunnable, allowDrawDelay);
     }
@@ -1348,31 +1317,26 @@ public class AdblockWebView extends WebView
     }
   };
 
-  // warning: do not rename (used in injected JS by method name)
+  /**
+   * Invoked from injected JS when the page is ready to apply the stylesheet.
+   * The call does not block: the stylesheet is pushed to the page when it's ready.
+   * Warning: do not rename (used in injected JS by method name)
+   */
   @JavascriptInterface
-  public String getElemhideSelectors()
+  public void requestElemhideStylesheet()
   {
-    if (elemHideLatch == null)
-    {
-      return EMPTY_ELEMHIDE_ARRAY_STRING;
-    }
-    else
+    synchronized (elemHideRequestLockObject)
     {
-      try
-      {
-        // elemhide selectors list getting is started in startAbpLoad() in background thread
-        d("Waiting for elemhide selectors to be ready");
-        elemHideLatch.await();
-        d("Elemhide selectors ready, " + elemHideSelectorsString.length() + " bytes");
+      elemHideStylesheetRequested = true;
 
-        clearReferrers();
-
-        return elemHideSelectorsString;
+      // otherwise it's pushed when elemhide request is finished
+      if (elemHideStylesheet != null)
+      {
+        pushElemHideStylesheet(elemHideLoadId, elemHideStylesheet);
       }
-      catch (InterruptedException e)
+      else
       {
-        w("Interrupted, returning empty selectors list");
-        return EMPTY_ELEMHIDE_ARRAY_STRING;
+        d("Elemhide stylesheet is not ready yet");
       }
     }
   }
@@ -1428,18 +1392,21 @@ public class AdblockWebView extends WebView
       adblockEngine = null;
     }
 
+    cancelElemHideRequest();
+
     DisposeRunnable disposeRunnable = new DisposeRunnable(disposeFinished);
-    synchronized (elemHideThreadLockObject)
+    if (disposeEngine)
     {
-      if (elemHideThread != null)
-      {
-        w("Busy with elemhide selectors, delayed disposing scheduled");
-        elemHideThread.setFinishedRunnable(disposeRunnable);
-      }
-      else
-      {
-        disposeRunnable.run();
-      }
+      // AdblockEngine waits for its executors to shut down when disposing,
+      // so it's disposed in background thread and not in the caller (usually main) thread
+      w("Delayed disposing scheduled");
+      Thread disposeThread = new Thread(disposeRunnable, "AdblockWebViewDispose");
+      disposeThread.setDaemon(true);
+      disposeThread.start();
+    }
+    else
+    {
+      disposeRunnable.run();
     }
   }
 }
@@ -18,6 +18,7 @@
 #ifndef JNICALLBACKS_H
 #define JNICALLBACKS_H
 
+#include <atomic>
 #include <AdblockPlus.h>
 #include "Utils.h"
 #include "JniJsValue.h"
@@ -82,6 +83,13 @@ class JniLogSystemCallback : public JniCallbackBase, public AdblockPlus::LogSyst
 public:
   JniLogSystemCallback(JNIEnv* env, jobject callbackObject);
   void operator()(AdblockPlus::LogSystem::LogLevel logLevel, const std::string& message, const std::string& source);
+
+  // messages below the level are dropped without calling Java
+  void SetMinLogLevel(AdblockPlus::LogSystem::LogLevel logLevel);
+
+private:
+  jmethodID logCallbackMethod;
+  std::atomic<int> minLogLevel;
 };
 
 class JniShowNotificationCallback : public JniCallbackBase
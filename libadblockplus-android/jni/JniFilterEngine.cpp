@@ -18,8 +18,14 @@
 #include <AdblockPlus.h>
 #include "Utils.h"
 #include "JniCallbacks.h"
+#include <mutex>
 #include <thread>
+#include <unordered_set>
 #include "JniJsEngine.h"
+#include "JniNativeMatcher.h"
+#include "MatchesCache.h"
+#include "MatchVerdict.h"
+#include "NativeMatcher.h"
 
 static jobject SubscriptionsToArrayList(JNIEnv* env, std::vector<AdblockPlus::Subscription>&& subscriptions)
 {
@@ -51,13 +57,232 @@ namespace
   struct JniFilterEngine
   {
     AdblockPlus::ITimer* timer;
+    AdblockPlus::JsEnginePtr jsEngine;
     AdblockPlus::FilterEnginePtr filterEngine;
+    MatchesCachePtr matchesCache;
+
+    // generic element hiding selectors (the ones applied for any domain) for `genericGeneration`
+    struct GenericSelectors
+    {
+      std::vector<std::string> list;
+      std::unordered_set<std::string> set;
+    };
+    std::mutex genericSelectorsMutex;
+    uint64_t genericGeneration;
+    std::shared_ptr<const GenericSelectors> genericSelectors;
   };
 
   AdblockPlus::FilterEnginePtr& GetFilterEnginePtrRef(jlong ptr)
   {
     return JniLongToTypePtr<JniFilterEngine>(ptr)->filterEngine;
   }
+
+  // indexed by FilterEngine.ContentType ordinal, keep in sync with FilterEngine.java
+  const char* const CONTENT_TYPE_NAMES[] =
+  {
+    "OTHER", "SCRIPT", "IMAGE", "STYLESHEET", "OBJECT", "SUBDOCUMENT", "DOCUMENT",
+    "XMLHTTPREQUEST", "OBJECT_SUBREQUEST", "FONT", "MEDIA"
+  };
+
+  AdblockPlus::FilterEngine::ContentType OrdinalToContentType(jint ordinal)
+  {
+    static const jint count = sizeof(CONTENT_TYPE_NAMES) / sizeof(CONTENT_TYPE_NAMES[0]);
+    if (ordinal < 0 || ordinal >= count)
+    {
+      throw std::invalid_argument("Unknown content type");
+    }
+    return AdblockPlus::FilterEngine::StringToContentType(CONTENT_TYPE_NAMES[ordinal]);
+  }
+
+  jint FilterToMatchVerdict(AdblockPlus::Filter& filter)
+  {
+    return filter.GetType() == AdblockPlus::Filter::TYPE_EXCEPTION
+      ? MATCH_VERDICT_EXCEPTION
+      : MATCH_VERDICT_BLOCK;
+  }
+
+  /**
+   * FilterEngine supports the only filter change callback, so the callback invalidating
+   * matches cache is always set and it forwards the events to Java callback if it's set.
+   */
+  /**
+   * Only these actions change matching results, the others (hit statistics, saving,
+   * subscription download status, etc) must not invalidate the cache and bump the generation
+   */
+  bool IsMatchingChange(const std::string& action)
+  {
+    return action == "filter.added"
+      || action == "filter.removed"
+      || action == "filter.disabled"
+      || action == "subscription.added"
+      || action == "subscription.removed"
+      || action == "subscription.disabled"
+      || action == "subscription.updated"
+      || action == "load"; // filters are loaded from the storage (once)
+  }
+
+  AdblockPlus::FilterEngine::FilterChangeCallback CreateFilterChangeCallback(
+      const MatchesCachePtr& matchesCache, JniFilterChangeCallback* callback)
+  {
+    return [matchesCache, callback](const std::string& action, AdblockPlus::JsValue&& jsValue)
+    {
+      if (IsMatchingChange(action))
+      {
+        matchesCache->Invalidate();
+      }
+
+      if (callback)
+      {
+        callback->Callback(action, std::move(jsValue));
+      }
+    };
+  }
+
+  /**
+   * Returns cached result if available, otherwise invokes `match` and caches the result.
+   * `makeKey` is invoked only if the cache is enabled.
+   * @param withText precompute filter text and verdict flags even if the cache is disabled,
+   *                 otherwise the filter is required
+   */
+  MatchesCache::Entry MatchWithCache(JniFilterEngine* jniFilterEngine,
+                                     const std::function<std::string()>& makeKey,
+                                     const std::function<AdblockPlus::FilterPtr()>& match,
+                                     bool withText)
+  {
+    MatchesCache& cache = *jniFilterEngine->matchesCache;
+    const bool cacheEnabled = cache.IsEnabled();
+
+    std::string key;
+    MatchesCache::Entry entry;
+    if (cacheEnabled)
+    {
+      key = makeKey();
+      if (cache.Get(key, entry))
+      {
+        // entries loaded from snapshot have filter texts only
+        if (!withText && !entry.filter && !entry.text.empty())
+        {
+          entry.filter = std::make_shared<AdblockPlus::Filter>(
+            jniFilterEngine->filterEngine->GetFilter(entry.text));
+        }
+        return entry;
+      }
+    }
+
+    uint64_t generation = cache.GetGeneration();
+    AdblockPlus::FilterPtr filterPtr = match();
+
+    entry.verdict = MATCH_VERDICT_ALLOW;
+    if (filterPtr.get())
+    {
+      entry.verdict = FilterToMatchVerdict(*filterPtr);
+      if (cacheEnabled || withText)
+      {
+        entry.text = filterPtr->GetProperty("text").AsString();
+        if (entry.text.find("||") != std::string::npos)
+        {
+          entry.verdict |= MATCH_VERDICT_FLAG_DOMAIN_SPECIFIC;
+        }
+      }
+      entry.filter = MatchesCache::SharedFilter(std::move(filterPtr));
+    }
+
+    if (cacheEnabled)
+    {
+      cache.Put(key, generation, entry);
+    }
+
+    return entry;
+  }
+
+  void AppendToFingerprint(uint64_t& fingerprint, const std::string& value)
+  {
+    // FNV-1a
+    for (auto c : value)
+    {
+      fingerprint ^= static_cast<uint8_t>(c);
+      fingerprint *= 1099511628211ULL;
+    }
+    fingerprint ^= 0xFF;
+    fingerprint *= 1099511628211ULL;
+  }
+
+  /**
+   * Identifies the set of the filters the engine matches with: listed subscriptions
+   * with their versions and custom filters
+   */
+  uint64_t CalculateFiltersFingerprint(AdblockPlus::FilterEngine& engine)
+  {
+    static const char* SUBSCRIPTION_PROPERTIES[] =
+    {
+      "url", "disabled", "lastDownload", "version"
+    };
+
+    uint64_t fingerprint = 14695981039346656037ULL;
+    std::vector<AdblockPlus::Subscription> subscriptions = engine.GetListedSubscriptions();
+    for (auto& subscription : subscriptions)
+    {
+      for (auto property : SUBSCRIPTION_PROPERTIES)
+      {
+        AppendToFingerprint(fingerprint, subscription.GetProperty(property).AsString());
+      }
+    }
+
+    std::vector<AdblockPlus::Filter> filters = engine.GetListedFilters();
+    for (auto& filter : filters)
+    {
+      AppendToFingerprint(fingerprint, filter.GetProperty("text").AsString());
+    }
+    return fingerprint;
+  }
+
+  std::shared_ptr<const JniFilterEngine::GenericSelectors> GetGenericSelectors(
+      JniFilterEngine* jniFilterEngine)
+  {
+    uint64_t generation = jniFilterEngine->matchesCache->GetGeneration();
+    {
+      std::lock_guard<std::mutex> lock(jniFilterEngine->genericSelectorsMutex);
+      if (jniFilterEngine->genericSelectors && jniFilterEngine->genericGeneration == generation)
+      {
+        return jniFilterEngine->genericSelectors;
+      }
+    }
+
+    // JS is not invoked under the lock
+    auto genericSelectors = std::make_shared<JniFilterEngine::GenericSelectors>();
+    genericSelectors->list = jniFilterEngine->filterEngine->GetElementHidingSelectors("");
+    genericSelectors->set.insert(genericSelectors->list.begin(), genericSelectors->list.end());
+
+    std::lock_guard<std::mutex> lock(jniFilterEngine->genericSelectorsMutex);
+    jniFilterEngine->genericGeneration = generation;
+    jniFilterEngine->genericSelectors = genericSelectors;
+    return genericSelectors;
+  }
+
+  jobject NewJniStringList(JNIEnv* env, const std::vector<const std::string*>& strings)
+  {
+    jobject list = NewJniArrayList(env);
+    jmethodID addMethod = JniGetAddToListMethod(env, list);
+    for (auto str : strings)
+    {
+      JniAddObjectToList(env, list, addMethod,
+          *JniLocalReference<jstring>(env, env->NewStringUTF(str->c_str())));
+    }
+    return list;
+  }
+
+  jobject NewJniFilter(JNIEnv* env, MatchesCache::Entry& entry)
+  {
+    if (!entry.filter)
+    {
+      return 0;
+    }
+
+    // not shared with the cache, so can be moved rather than copied
+    return entry.filter.use_count() == 1
+      ? NewJniFilter(env, std::move(*entry.filter))
+      : NewJniFilter(env, AdblockPlus::Filter(*entry.filter));
+  }
 }
 
 static jlong JNICALL JniCtor(JNIEnv* env, jclass clazz, jlong jniJsEnginePtr, jlong isAllowedConnectionCallbackPtr)
@@ -68,6 +293,7 @@ static jlong JNICALL JniCtor(JNIEnv* env, jclass clazz, jlong jniJsEnginePtr, jl
     auto jsEngine = jniJsEngine->jsEngine;
     auto jniFilterEngine = new JniFilterEngine();
     jniFilterEngine->timer = jniJsEngine->timer;
+    jniFilterEngine->jsEngine = jsEngine;
 
     if (isAllowedConnectionCallbackPtr != 0)
     {
@@ -96,6 +322,10 @@ static jlong JNICALL JniCtor(JNIEnv* env, jclass clazz, jlong jniJsEnginePtr, jl
       jniFilterEngine->filterEngine = AdblockPlus::FilterEngine::Create(jsEngine);
     }
 
+    jniFilterEngine->matchesCache = std::make_shared<MatchesCache>();
+    jniFilterEngine->filterEngine->SetFilterChangeCallback(
+      CreateFilterChangeCallback(jniFilterEngine->matchesCache, nullptr));
+
     return JniPtrToLong(jniFilterEngine);
   }
   CATCH_THROW_AND_RETURN(env, 0)
@@ -256,11 +486,13 @@ static void JNICALL JniSetUpdateAvailableCallback(JNIEnv* env, jclass clazz,
 
 static void JNICALL JniRemoveFilterChangeCallback(JNIEnv* env, jclass clazz, jlong ptr)
 {
-  AdblockPlus::FilterEnginePtr& engine = GetFilterEnginePtrRef(ptr);
+  JniFilterEngine* jniFilterEngine = JniLongToTypePtr<JniFilterEngine>(ptr);
 
   try
   {
-    engine->RemoveFilterChangeCallback();
+    // matches cache still has to be notified
+    jniFilterEngine->filterEngine->SetFilterChangeCallback(
+      CreateFilterChangeCallback(jniFilterEngine->matchesCache, nullptr));
   }
   CATCH_AND_THROW(env)
 }
@@ -268,22 +500,96 @@ static void JNICALL JniRemoveFilterChangeCallback(JNIEnv* env, jclass clazz, jlo
 static void JNICALL JniSetFilterChangeCallback(JNIEnv* env, jclass clazz,
     jlong ptr, jlong filterPtr)
 {
-  AdblockPlus::FilterEnginePtr& engine = GetFilterEnginePtrRef(ptr);
+  JniFilterEngine* jniFilterEngine = JniLongToTypePtr<JniFilterEngine>(ptr);
   JniFilterChangeCallback* callback = JniLongToTypePtr<JniFilterChangeCallback>(
       filterPtr);
 
-  auto filterCallback = [callback](const std::string& arg, AdblockPlus::JsValue&& jsValue)
+  try
   {
-    callback->Callback(arg, std::move(jsValue));
-  };
+    jniFilterEngine->filterEngine->SetFilterChangeCallback(
+      CreateFilterChangeCallback(jniFilterEngine->matchesCache, callback));
+  }
+  CATCH_AND_THROW(env)
+}
 
+static void JNICALL JniSetMatchesCacheCapacity(JNIEnv* env, jclass clazz, jlong ptr, jint jCapacity)
+{
   try
   {
-    engine->SetFilterChangeCallback(filterCallback);
+    if (jCapacity < 0)
+    {
+      throw std::invalid_argument("Matches cache capacity can't be negative");
+    }
+    JniLongToTypePtr<JniFilterEngine>(ptr)->matchesCache->SetCapacity(
+      static_cast<size_t>(jCapacity));
   }
   CATCH_AND_THROW(env)
 }
 
+static jint JNICALL JniGetMatchesCacheCapacity(JNIEnv* env, jclass clazz, jlong ptr)
+{
+  return static_cast<jint>(JniLongToTypePtr<JniFilterEngine>(ptr)->matchesCache->GetCapacity());
+}
+
+static jlong JNICALL JniGetMatchesCacheHits(JNIEnv* env, jclass clazz, jlong ptr)
+{
+  return static_cast<jlong>(JniLongToTypePtr<JniFilterEngine>(ptr)->matchesCache->GetHits());
+}
+
+static jlong JNICALL JniGetMatchesCacheMisses(JNIEnv* env, jclass clazz, jlong ptr)
+{
+  return static_cast<jlong>(JniLongToTypePtr<JniFilterEngine>(ptr)->matchesCache->GetMisses());
+}
+
+static jlong JNICALL JniGetFilterChangeGeneration(JNIEnv* env, jclass clazz, jlong ptr)
+{
+  return static_cast<jlong>(JniLongToTypePtr<JniFilterEngine>(ptr)->matchesCache->GetGeneration());
+}
+
+static void JNICALL JniClearMatchesCache(JNIEnv* env, jclass clazz, jlong ptr)
+{
+  try
+  {
+    JniLongToTypePtr<JniFilterEngine>(ptr)->matchesCache->Invalidate();
+  }
+  CATCH_AND_THROW(env)
+}
+
+static jboolean JNICALL JniSaveMatchesCache(JNIEnv* env, jclass clazz, jlong ptr, jstring jPath)
+{
+  JniFilterEngine* jniFilterEngine = JniLongToTypePtr<JniFilterEngine>(ptr);
+  std::string path = JniJavaToStdString(env, jPath);
+
+  try
+  {
+    MatchesCache& cache = *jniFilterEngine->matchesCache;
+    uint64_t generation = cache.GetGeneration();
+    uint64_t fingerprint = CalculateFiltersFingerprint(*jniFilterEngine->filterEngine);
+    return cache.Save(path, fingerprint, generation) ? JNI_TRUE : JNI_FALSE;
+  }
+  CATCH_THROW_AND_RETURN(env, JNI_FALSE)
+}
+
+static jboolean JNICALL JniLoadMatchesCache(JNIEnv* env, jclass clazz, jlong ptr, jstring jPath)
+{
+  JniFilterEngine* jniFilterEngine = JniLongToTypePtr<JniFilterEngine>(ptr);
+  std::string path = JniJavaToStdString(env, jPath);
+
+  try
+  {
+    MatchesCache& cache = *jniFilterEngine->matchesCache;
+    if (!cache.IsEnabled())
+    {
+      return JNI_FALSE;
+    }
+
+    uint64_t generation = cache.GetGeneration();
+    uint64_t fingerprint = CalculateFiltersFingerprint(*jniFilterEngine->filterEngine);
+    return cache.Load(path, fingerprint, generation) ? JNI_TRUE : JNI_FALSE;
+  }
+  CATCH_THROW_AND_RETURN(env, JNI_FALSE)
+}
+
 static void JNICALL JniForceUpdateCheck(JNIEnv* env, jclass clazz, jlong ptr, jlong updaterPtr)
 {
   AdblockPlus::FilterEnginePtr& engine = GetFilterEnginePtrRef(ptr);
@@ -333,40 +639,131 @@ static jobject JNICALL JniGetElementHidingSelectors(JNIEnv* env, jclass clazz,
   CATCH_THROW_AND_RETURN(env, 0)
 }
 
-static jobject JNICALL JniMatches(JNIEnv* env, jclass clazz, jlong ptr, jstring jUrl, jobject jContentType, jstring jDocumentUrl)
+static jobject JNICALL JniGetGenericElementHidingSelectors(JNIEnv* env, jclass clazz, jlong ptr)
 {
-  AdblockPlus::FilterEnginePtr& engine = GetFilterEnginePtrRef(ptr);
+  try
+  {
+    auto genericSelectors = GetGenericSelectors(JniLongToTypePtr<JniFilterEngine>(ptr));
 
-  std::string url = JniJavaToStdString(env, jUrl);
-  AdblockPlus::FilterEngine::ContentType contentType =
-      ConvertContentType(env, jContentType);
-  std::string documentUrl = JniJavaToStdString(env, jDocumentUrl);
+    std::vector<const std::string*> selectors;
+    selectors.reserve(genericSelectors->list.size());
+    for (auto& selector : genericSelectors->list)
+    {
+      selectors.push_back(&selector);
+    }
+    return NewJniStringList(env, selectors);
+  }
+  CATCH_THROW_AND_RETURN(env, 0)
+}
+
+static jobject JNICALL JniGetPrefilterTokens(JNIEnv* env, jclass clazz, jlong ptr)
+{
+  try
+  {
+    JniFilterEngine* jniFilterEngine = JniLongToTypePtr<JniFilterEngine>(ptr);
+    std::vector<std::string> filters;
+    JniReadActiveFilters(jniFilterEngine->jsEngine, filters);
+
+    std::vector<std::string> tokens;
+    if (!NativeMatcher::GetPrefilterTokens(filters, tokens))
+    {
+      return 0;
+    }
+
+    std::vector<const std::string*> strings;
+    strings.reserve(tokens.size());
+    for (const auto& token : tokens)
+    {
+      strings.push_back(&token);
+    }
+    return NewJniStringList(env, strings);
+  }
+  CATCH_THROW_AND_RETURN(env, 0)
+}
 
+static jlong JNICALL JniGetFiltersFingerprint(JNIEnv* env, jclass clazz, jlong ptr)
+{
   try
   {
-    AdblockPlus::FilterPtr filterPtr = engine->Matches(url, contentType, documentUrl);
+    JniFilterEngine* jniFilterEngine = JniLongToTypePtr<JniFilterEngine>(ptr);
+    uint64_t fingerprint = CalculateFiltersFingerprint(*jniFilterEngine->filterEngine);
 
-    return filterPtr.get() ? NewJniFilter(env, std::move(*filterPtr)) : 0;
+    // subscription versions don't tell if all the filters of the subscriptions are loaded
+    std::vector<std::string> filters;
+    JniReadActiveFilters(jniFilterEngine->jsEngine, filters);
+    for (const auto& filter : filters)
+    {
+      AppendToFingerprint(fingerprint, filter);
+    }
+    return static_cast<jlong>(fingerprint);
   }
   CATCH_THROW_AND_RETURN(env, 0)
 }
 
-static void JavaStringArrayToStringVector(JNIEnv* env, jobjectArray jArray,
-    std::vector<std::string>& out)
+static jobject JNICALL JniGetElementHidingSelectorsDelta(JNIEnv* env, jclass clazz,
+    jlong ptr, jstring jDomain)
 {
-  if (jArray)
+  JniFilterEngine* jniFilterEngine = JniLongToTypePtr<JniFilterEngine>(ptr);
+
+  std::string domain = JniJavaToStdString(env, jDomain);
+
+  try
   {
-    jsize len = env->GetArrayLength(jArray);
+    auto genericSelectors = GetGenericSelectors(jniFilterEngine);
+    std::vector<std::string> selectors = jniFilterEngine->filterEngine->GetElementHidingSelectors(domain);
 
-    for (jsize i = 0; i < len; i++)
+    // selectors can be duplicated, so matched generic selectors are counted by address in the set
+    std::unordered_set<const std::string*> matchedGenericSelectors;
+    std::vector<const std::string*> delta;
+    for (auto& selector : selectors)
     {
-      out.push_back(
-          JniJavaToStdString(env,
-              *JniLocalReference<jstring>(env,
-                  static_cast<jstring>(
-                      env->GetObjectArrayElement(jArray, i)))));
+      auto it = genericSelectors->set.find(selector);
+      if (it != genericSelectors->set.end())
+      {
+        matchedGenericSelectors.insert(&*it);
+      }
+      else
+      {
+        delta.push_back(&selector);
+      }
     }
+
+    // some generic selectors are excluded for the domain, it can't be expressed as delta
+    if (matchedGenericSelectors.size() != genericSelectors->set.size())
+    {
+      return 0;
+    }
+
+    return NewJniStringList(env, delta);
   }
+  CATCH_THROW_AND_RETURN(env, 0)
+}
+
+static jobject JNICALL JniMatches(JNIEnv* env, jclass clazz, jlong ptr, jstring jUrl, jobject jContentType, jstring jDocumentUrl)
+{
+  AdblockPlus::FilterEnginePtr& engine = GetFilterEnginePtrRef(ptr);
+
+  std::string url = JniJavaToStdString(env, jUrl);
+  AdblockPlus::FilterEngine::ContentType contentType =
+      ConvertContentType(env, jContentType);
+  std::string documentUrl = JniJavaToStdString(env, jDocumentUrl);
+
+  try
+  {
+    MatchesCache::Entry entry = MatchWithCache(JniLongToTypePtr<JniFilterEngine>(ptr),
+      [&url, contentType, &documentUrl]()
+      {
+        return MatchesCache::MakeKey(url, contentType, documentUrl);
+      },
+      [&engine, &url, contentType, &documentUrl]()
+      {
+        return engine->Matches(url, contentType, documentUrl);
+      },
+      false);
+
+    return NewJniFilter(env, entry);
+  }
+  CATCH_THROW_AND_RETURN(env, 0)
 }
 
 static jobject JNICALL JniMatchesMany(JNIEnv* env, jclass clazz, jlong ptr,
@@ -383,13 +780,49 @@ static jobject JNICALL JniMatchesMany(JNIEnv* env, jclass clazz, jlong ptr,
 
   try
   {
-    AdblockPlus::FilterPtr filterPtr = engine->Matches(url, contentType, documentUrls);
+    MatchesCache::Entry entry = MatchWithCache(JniLongToTypePtr<JniFilterEngine>(ptr),
+      [&url, contentType, &documentUrls]()
+      {
+        return MatchesCache::MakeKey(url, contentType, documentUrls);
+      },
+      [&engine, &url, contentType, &documentUrls]()
+      {
+        return engine->Matches(url, contentType, documentUrls);
+      },
+      false);
 
-    return (filterPtr.get() ? NewJniFilter(env, std::move(*filterPtr)) : 0);
+    return NewJniFilter(env, entry);
   }
   CATCH_THROW_AND_RETURN(env, 0)
 }
 
+static jint JNICALL JniMatchVerdict(JNIEnv* env, jclass clazz, jlong ptr,
+    jstring jUrl, jint jContentType, jobjectArray jDocumentUrls)
+{
+  AdblockPlus::FilterEnginePtr& engine = GetFilterEnginePtrRef(ptr);
+
+  std::string url = JniJavaToStdString(env, jUrl);
+  std::vector<std::string> documentUrls;
+  JavaStringArrayToStringVector(env, jDocumentUrls, documentUrls);
+
+  try
+  {
+    AdblockPlus::FilterEngine::ContentType contentType = OrdinalToContentType(jContentType);
+
+    return MatchWithCache(JniLongToTypePtr<JniFilterEngine>(ptr),
+      [&url, contentType, &documentUrls]()
+      {
+        return MatchesCache::MakeKey(url, contentType, documentUrls);
+      },
+      [&engine, &url, contentType, &documentUrls]()
+      {
+        return engine->Matches(url, contentType, documentUrls);
+      },
+      true).verdict;
+  }
+  CATCH_THROW_AND_RETURN(env, MATCH_VERDICT_ALLOW)
+}
+
 static jboolean JNICALL JniIsDocumentWhitelisted(JNIEnv* env, jclass clazz, jlong ptr,
     jstring jUrl, jobjectArray jDocumentUrls)
 {
@@ -574,8 +1007,21 @@ static JNINativeMethod methods[] =
   { (char*)"removeFilterChangeCallback", (char*)"(J)V", (void*)JniRemoveFilterChangeCallback },
   { (char*)"forceUpdateCheck", (char*)"(JJ)V", (void*)JniForceUpdateCheck },
   { (char*)"getElementHidingSelectors", (char*)"(JLjava/lang/String;)Ljava/util/List;", (void*)JniGetElementHidingSelectors },
+  { (char*)"getGenericElementHidingSelectors", (char*)"(J)Ljava/util/List;", (void*)JniGetGenericElementHidingSelectors },
+  { (char*)"getElementHidingSelectorsDelta", (char*)"(JLjava/lang/String;)Ljava/util/List;", (void*)JniGetElementHidingSelectorsDelta },
+  { (char*)"getPrefilterTokens", (char*)"(J)Ljava/util/List;", (void*)JniGetPrefilterTokens },
+  { (char*)"getFiltersFingerprint", (char*)"(J)J", (void*)JniGetFiltersFingerprint },
   { (char*)"matches", (char*)"(JLjava/lang/String;" TYP("FilterEngine$ContentType") "Ljava/lang/String;)" TYP("Filter"), (void*)JniMatches },
   { (char*)"matches", (char*)"(JLjava/lang/String;" TYP("FilterEngine$ContentType") "[Ljava/lang/String;)" TYP("Filter"), (void*)JniMatchesMany },
+  { (char*)"matchVerdict", (char*)"(JLjava/lang/String;I[Ljava/lang/String;)I", (void*)JniMatchVerdict },
+  { (char*)"setMatchesCacheCapacity", (char*)"(JI)V", (void*)JniSetMatchesCacheCapacity },
+  { (char*)"getMatchesCacheCapacity", (char*)"(J)I", (void*)JniGetMatchesCacheCapacity },
+  { (char*)"getMatchesCacheHits", (char*)"(J)J", (void*)JniGetMatchesCacheHits },
+  { (char*)"getMatchesCacheMisses", (char*)"(J)J", (void*)JniGetMatchesCacheMisses },
+  { (char*)"clearMatchesCache", (char*)"(J)V", (void*)JniClearMatchesCache },
+  { (char*)"getFilterChangeGeneration", (char*)"(J)J", (void*)JniGetFilterChangeGeneration },
+  { (char*)"saveMatchesCache", (char*)"(JLjava/lang/String;)Z", (void*)JniSaveMatchesCache },
+  { (char*)"loadMatchesCache", (char*)"(JLjava/lang/String;)Z", (void*)JniLoadMatchesCache },
   { (char*)"isDocumentWhitelisted", (char*)"(JLjava/lang/String;[Ljava/lang/String;)Z", (void*)JniIsDocumentWhitelisted },
   { (char*)"isElemhideWhitelisted", (char*)"(JLjava/lang/String;[Ljava/lang/String;)Z", (void*)JniIsElemhideWhitelisted },
   { (char*)"getPref", (char*)"(JLjava/lang/String;)" TYP("JsValue"), (void*)JniGetPref },
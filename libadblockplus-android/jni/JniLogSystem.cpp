@@ -18,16 +18,82 @@
 #include "JniCallbacks.h"
 #include "JniLogSystem.h"
 
+namespace
+{
+  // same order as Java LogSystem.LogLevel constants
+  const char* const LOG_LEVEL_NAMES[] =
+  {
+    "TRACE", "LOG", "INFO", "WARN", "ERROR"
+  };
+
+  const int LOG_LEVEL_COUNT = sizeof(LOG_LEVEL_NAMES) / sizeof(LOG_LEVEL_NAMES[0]);
+
+  int LogLevelToOrdinal(AdblockPlus::LogSystem::LogLevel logLevel)
+  {
+    switch (logLevel)
+    {
+    default:
+    case AdblockPlus::LogSystem::LOG_LEVEL_TRACE:
+      return 0;
+    case AdblockPlus::LogSystem::LOG_LEVEL_LOG:
+      return 1;
+    case AdblockPlus::LogSystem::LOG_LEVEL_INFO:
+      return 2;
+    case AdblockPlus::LogSystem::LOG_LEVEL_WARN:
+      return 3;
+    case AdblockPlus::LogSystem::LOG_LEVEL_ERROR:
+      return 4;
+    }
+  }
+
+  AdblockPlus::LogSystem::LogLevel OrdinalToLogLevel(jint ordinal)
+  {
+    switch (ordinal)
+    {
+    default:
+    case 0:
+      return AdblockPlus::LogSystem::LOG_LEVEL_TRACE;
+    case 1:
+      return AdblockPlus::LogSystem::LOG_LEVEL_LOG;
+    case 2:
+      return AdblockPlus::LogSystem::LOG_LEVEL_INFO;
+    case 3:
+      return AdblockPlus::LogSystem::LOG_LEVEL_WARN;
+    case 4:
+      return AdblockPlus::LogSystem::LOG_LEVEL_ERROR;
+    }
+  }
+}
+
 // precached in JNI_OnLoad and released in JNI_OnUnload
 JniGlobalReference<jclass>* logLevelClass;
+static JniGlobalReference<jobject>* logLevels[LOG_LEVEL_COUNT];
 
 void JniLogSystem_OnLoad(JavaVM* vm, JNIEnv* env, void* reserved)
 {
   logLevelClass = new JniGlobalReference<jclass>(env, env->FindClass(PKG("LogSystem$LogLevel")));
+
+  for (int i = 0; i < LOG_LEVEL_COUNT; i++)
+  {
+    jfieldID enumField = env->GetStaticFieldID(logLevelClass->Get(), LOG_LEVEL_NAMES[i],
+        TYP("LogSystem$LogLevel"));
+    JniLocalReference<jobject> logLevel(env,
+        env->GetStaticObjectField(logLevelClass->Get(), enumField));
+    logLevels[i] = new JniGlobalReference<jobject>(env, *logLevel);
+  }
 }
 
 void JniLogSystem_OnUnload(JavaVM* vm, JNIEnv* env, void* reserved)
 {
+  for (int i = 0; i < LOG_LEVEL_COUNT; i++)
+  {
+    if (logLevels[i])
+    {
+      delete logLevels[i];
+      logLevels[i] = NULL;
+    }
+  }
+
   if (logLevelClass)
   {
     delete logLevelClass;
@@ -44,77 +110,68 @@ static jlong JNICALL JniCtor(JNIEnv* env, jclass clazz, jobject callbackObject)
   CATCH_THROW_AND_RETURN(env, 0)
 }
 
+static void JNICALL JniSetMinLogLevel(JNIEnv* env, jclass clazz, jlong ptr, jint ordinal)
+{
+  try
+  {
+    AdblockPlus::LogSystemPtr& logSystem = *JniLongToTypePtr<AdblockPlus::LogSystemPtr>(ptr);
+    static_cast<JniLogSystemCallback*>(logSystem.get())->SetMinLogLevel(OrdinalToLogLevel(ordinal));
+  }
+  CATCH_AND_THROW(env)
+}
+
 static void JNICALL JniDtor(JNIEnv* env, jclass clazz, jlong ptr)
 {
   delete JniLongToTypePtr<AdblockPlus::LogSystemPtr>(ptr);
 }
 
 JniLogSystemCallback::JniLogSystemCallback(JNIEnv* env, jobject callbackObject)
-  : JniCallbackBase(env, callbackObject), AdblockPlus::LogSystem()
+  : JniCallbackBase(env, callbackObject), AdblockPlus::LogSystem(), minLogLevel(0)
+{
+  // the callback object class is fixed, so the method is resolved once
+  logCallbackMethod = env->GetMethodID(
+      *JniLocalReference<jclass>(env, env->GetObjectClass(callbackObject)),
+      "logCallback",
+      "(" TYP("LogSystem$LogLevel") "Ljava/lang/String;Ljava/lang/String;)V");
+}
+
+void JniLogSystemCallback::SetMinLogLevel(AdblockPlus::LogSystem::LogLevel logLevel)
 {
+  minLogLevel = LogLevelToOrdinal(logLevel);
 }
 
 void JniLogSystemCallback::operator()(AdblockPlus::LogSystem::LogLevel logLevel,
     const std::string& message, const std::string& source)
 {
-  JNIEnvAcquire env(GetJavaVM());
-
-  jmethodID method = env->GetMethodID(
-      *JniLocalReference<jclass>(*env,
-          env->GetObjectClass(GetCallbackObject())),
-      "logCallback",
-      "(" TYP("LogSystem$LogLevel") "Ljava/lang/String;Ljava/lang/String;)V");
-
-  // TODO: Set log level from Java and handle it here (to reduce C++->Java calls)
+  int ordinal = LogLevelToOrdinal(logLevel);
+  if (ordinal < minLogLevel || !logCallbackMethod)
+  {
+    return;
+  }
 
-  if (method)
+  JniGlobalReference<jobject>* jLogLevel = logLevels[ordinal];
+  if (!jLogLevel)
   {
-    const char* enumName = 0;
+    return;
+  }
 
-    switch (logLevel)
-    {
-    default:
-    case AdblockPlus::LogSystem::LOG_LEVEL_TRACE:
-      enumName = "TRACE";
-      break;
-    case AdblockPlus::LogSystem::LOG_LEVEL_LOG:
-      enumName = "LOG";
-      break;
-    case AdblockPlus::LogSystem::LOG_LEVEL_INFO:
-      enumName = "INFO";
-      break;
-    case AdblockPlus::LogSystem::LOG_LEVEL_WARN:
-      enumName = "WARN";
-      break;
-    case AdblockPlus::LogSystem::LOG_LEVEL_ERROR:
-      enumName = "ERROR";
-      break;
-    }
+  JNIEnvAcquire env(GetJavaVM());
 
-    jclass enumClass = logLevelClass->Get();
-    if (enumClass)
-    {
-      jfieldID enumField = env->GetStaticFieldID(enumClass, enumName,
-          TYP("LogSystem$LogLevel"));
-      JniLocalReference<jobject> jLogLevel(*env,
-          env->GetStaticObjectField(enumClass, enumField));
-
-      JniLocalReference<jstring> jMessage(*env,
-          env->NewStringUTF(message.c_str()));
-      JniLocalReference<jstring> jSource(*env,
-          env->NewStringUTF(source.c_str()));
-
-      env->CallVoidMethod(GetCallbackObject(), method, *jLogLevel, *jMessage,
-          *jSource);
-    }
+  JniLocalReference<jstring> jMessage(*env,
+      env->NewStringUTF(message.c_str()));
+  JniLocalReference<jstring> jSource(*env,
+      env->NewStringUTF(source.c_str()));
 
-    CheckAndLogJavaException(*env);
-  }
+  env->CallVoidMethod(GetCallbackObject(), logCallbackMethod, jLogLevel->Get(),
+      *jMessage, *jSource);
+
+  CheckAndLogJavaException(*env);
 }
 
 static JNINativeMethod methods[] =
 {
   { (char*)"ctor", (char*)"(Ljava/lang/Object;)J", (void*)JniCtor },
+  { (char*)"setMinLogLevel", (char*)"(JI)V", (void*)JniSetMinLogLevel },
   { (char*)"dtor", (char*)"(J)V", (void*)JniDtor }
 };
 
@@ -0,0 +1,243 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include <cstdlib>
+
+#include "JniJsEngine.h"
+#include "JniNativeMatcher.h"
+#include "MatchVerdict.h"
+#include "NativeMatcher.h"
+#include "Utils.h"
+
+namespace
+{
+  // number of FilterEngine.ContentType values, keep in sync with FilterEngine.java
+  const jint CONTENT_TYPE_COUNT = 11;
+
+  // active filters of the enabled subscriptions, one per line
+  const char* const ACTIVE_FILTERS_SOURCE =
+    "(function()\n"
+    "{\n"
+    "  var texts = [];\n"
+    "  require(\"filterStorage\").FilterStorage.subscriptions.forEach(function(subscription)\n"
+    "  {\n"
+    "    if (!subscription.disabled)\n"
+    "    {\n"
+    "      subscription.filters.forEach(function(filter)\n"
+    "      {\n"
+    "        if (!filter.disabled)\n"
+    "          texts.push(filter.text);\n"
+    "      });\n"
+    "    }\n"
+    "  });\n"
+    "  return texts.join(\"\\n\");\n"
+    "})()";
+
+  // `suffix=offset` lines if the public suffix list is available
+  const char* const PUBLIC_SUFFIXES_SOURCE =
+    "(function()\n"
+    "{\n"
+    "  var suffixes = (typeof publicSuffixes == \"object\" ? publicSuffixes : null);\n"
+    "  if (!suffixes)\n"
+    "  {\n"
+    "    try\n"
+    "    {\n"
+    "      suffixes = require(\"publicSuffixList\").publicSuffixes;\n"
+    "    }\n"
+    "    catch (e)\n"
+    "    {\n"
+    "    }\n"
+    "  }\n"
+    "  var lines = [];\n"
+    "  for (var suffix in suffixes || {})\n"
+    "    lines.push(suffix + \"=\" + suffixes[suffix]);\n"
+    "  return lines.join(\"\\n\");\n"
+    "})()";
+
+  NativeMatcher* GetMatcher(jlong ptr)
+  {
+    return JniLongToTypePtr<NativeMatcher>(ptr);
+  }
+
+  void SplitLines(const std::string& value, std::vector<std::string>& out)
+  {
+    size_t start = 0;
+    while (start < value.length())
+    {
+      size_t end = value.find('\n', start);
+      if (end == std::string::npos)
+      {
+        end = value.length();
+      }
+      if (end > start)
+      {
+        out.push_back(value.substr(start, end - start));
+      }
+      start = end + 1;
+    }
+  }
+
+  uint32_t OrdinalToContentTypeMask(jint ordinal)
+  {
+    if (ordinal < 0 || ordinal >= CONTENT_TYPE_COUNT)
+    {
+      throw std::invalid_argument("Unknown content type");
+    }
+    return 1u << ordinal;
+  }
+}
+
+void JniReadActiveFilters(const AdblockPlus::JsEnginePtr& jsEngine, std::vector<std::string>& filters)
+{
+  SplitLines(jsEngine->Evaluate(ACTIVE_FILTERS_SOURCE, "NativeMatcher").AsString(), filters);
+}
+
+static jlong JNICALL JniCtor(JNIEnv* env, jclass clazz, jobjectArray jFilters)
+{
+  std::vector<std::string> filters;
+  JavaStringArrayToStringVector(env, jFilters, filters);
+
+  try
+  {
+    return JniPtrToLong(new NativeMatcher(filters, std::unordered_map<std::string, int>()));
+  }
+  CATCH_THROW_AND_RETURN(env, 0)
+}
+
+static jlong JNICALL JniCtorFromJsEngine(JNIEnv* env, jclass clazz, jlong jsEnginePtr)
+{
+  try
+  {
+    AdblockPlus::JsEnginePtr& jsEngine = JniLongToTypePtr<JniJsEngine>(jsEnginePtr)->jsEngine;
+
+    std::vector<std::string> filters;
+    JniReadActiveFilters(jsEngine, filters);
+
+    std::vector<std::string> suffixLines;
+    SplitLines(jsEngine->Evaluate(PUBLIC_SUFFIXES_SOURCE, "NativeMatcher").AsString(), suffixLines);
+    std::unordered_map<std::string, int> publicSuffixes;
+    for (const auto& line : suffixLines)
+    {
+      size_t separator = line.rfind('=');
+      if (separator != std::string::npos)
+      {
+        publicSuffixes[line.substr(0, separator)] = std::atoi(line.c_str() + separator + 1);
+      }
+    }
+
+    return JniPtrToLong(new NativeMatcher(filters, publicSuffixes));
+  }
+  CATCH_THROW_AND_RETURN(env, 0)
+}
+
+static void JNICALL JniDtor(JNIEnv* env, jclass clazz, jlong ptr)
+{
+  delete GetMatcher(ptr);
+}
+
+static jint JNICALL JniGetFilterCount(JNIEnv* env, jclass clazz, jlong ptr)
+{
+  return static_cast<jint>(GetMatcher(ptr)->GetFilterCount());
+}
+
+static jint JNICALL JniMatchVerdict(JNIEnv* env, jclass clazz, jlong ptr,
+    jstring jUrl, jint jContentType, jobjectArray jDocumentUrls)
+{
+  std::string url = JniJavaToStdString(env, jUrl);
+  std::vector<std::string> documentUrls;
+  JavaStringArrayToStringVector(env, jDocumentUrls, documentUrls);
+
+  try
+  {
+    NativeMatcher::FilterPtr filter = GetMatcher(ptr)->Matches(url,
+      OrdinalToContentTypeMask(jContentType), documentUrls);
+    if (!filter)
+    {
+      return MATCH_VERDICT_ALLOW;
+    }
+
+    jint verdict = (filter->exception ? MATCH_VERDICT_EXCEPTION : MATCH_VERDICT_BLOCK);
+    if (filter->text.find("||") != std::string::npos)
+    {
+      verdict |= MATCH_VERDICT_FLAG_DOMAIN_SPECIFIC;
+    }
+    return verdict;
+  }
+  CATCH_THROW_AND_RETURN(env, MATCH_VERDICT_ALLOW)
+}
+
+static jstring JNICALL JniGetMatchingFilter(JNIEnv* env, jclass clazz, jlong ptr,
+    jstring jUrl, jint jContentType, jobjectArray jDocumentUrls)
+{
+  std::string url = JniJavaToStdString(env, jUrl);
+  std::vector<std::string> documentUrls;
+  JavaStringArrayToStringVector(env, jDocumentUrls, documentUrls);
+
+  try
+  {
+    NativeMatcher::FilterPtr filter = GetMatcher(ptr)->Matches(url,
+      OrdinalToContentTypeMask(jContentType), documentUrls);
+    return filter ? JniStdStringToJava(env, filter->text) : 0;
+  }
+  CATCH_THROW_AND_RETURN(env, 0)
+}
+
+static jboolean IsGenericallyWhitelisted(JNIEnv* env, jlong ptr,
+    jstring jUrl, jobjectArray jDocumentUrls, uint32_t contentTypeMask)
+{
+  std::string url = JniJavaToStdString(env, jUrl);
+  std::vector<std::string> documentUrls;
+  JavaStringArrayToStringVector(env, jDocumentUrls, documentUrls);
+
+  try
+  {
+    return GetMatcher(ptr)->IsGenericallyWhitelisted(url, documentUrls, contentTypeMask)
+      ? JNI_TRUE : JNI_FALSE;
+  }
+  CATCH_THROW_AND_RETURN(env, JNI_FALSE)
+}
+
+static jboolean JNICALL JniIsDocumentWhitelisted(JNIEnv* env, jclass clazz, jlong ptr,
+    jstring jUrl, jobjectArray jDocumentUrls)
+{
+  return IsGenericallyWhitelisted(env, ptr, jUrl, jDocumentUrls,
+    NativeMatcher::CONTENT_TYPE_DOCUMENT);
+}
+
+static jboolean JNICALL JniIsElemhideWhitelisted(JNIEnv* env, jclass clazz, jlong ptr,
+    jstring jUrl, jobjectArray jDocumentUrls)
+{
+  return IsGenericallyWhitelisted(env, ptr, jUrl, jDocumentUrls,
+    NativeMatcher::CONTENT_TYPE_ELEMHIDE);
+}
+
+static JNINativeMethod methods[] =
+{
+  { (char*)"ctor", (char*)"([Ljava/lang/String;)J", (void*)JniCtor },
+  { (char*)"ctorFromJsEngine", (char*)"(J)J", (void*)JniCtorFromJsEngine },
+  { (char*)"getFilterCount", (char*)"(J)I", (void*)JniGetFilterCount },
+  { (char*)"matchVerdict", (char*)"(JLjava/lang/String;I[Ljava/lang/String;)I", (void*)JniMatchVerdict },
+  { (char*)"getMatchingFilter", (char*)"(JLjava/lang/String;I[Ljava/lang/String;)Ljava/lang/String;", (void*)JniGetMatchingFilter },
+  { (char*)"isDocumentWhitelisted", (char*)"(JLjava/lang/String;[Ljava/lang/String;)Z", (void*)JniIsDocumentWhitelisted },
+  { (char*)"isElemhideWhitelisted", (char*)"(JLjava/lang/String;[Ljava/lang/String;)Z", (void*)JniIsElemhideWhitelisted },
+  { (char*)"dtor", (char*)"(J)V", (void*)JniDtor }
+};
+
+extern "C" JNIEXPORT void JNICALL Java_org_adblockplus_libadblockplus_NativeMatcher_registerNatives(JNIEnv *env, jclass clazz)
+{
+  env->RegisterNatives(clazz, methods, sizeof(methods) / sizeof(methods[0]));
+}
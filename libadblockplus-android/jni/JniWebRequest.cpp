@@ -102,10 +102,27 @@ AdblockPlus::ServerResponse JniWebRequest::GET(const std::string& url,
                                                 serverResponseClass->Get(),
                                                 *response,
                                                 "responseStatus");
-      sResponse.responseText = JniGetStringField(*env,
-                                                 serverResponseClass->Get(),
-                                                 *response,
-                                                 "response");
+
+      // direct buffer is read in place, so the response is copied only once
+      JniLocalReference<jobject> responseBuffer(*env, JniGetByteBufferField(*env,
+                                                                            serverResponseClass->Get(),
+                                                                            *response,
+                                                                            "responseBuffer"));
+      void* responseBufferAddress = *responseBuffer
+        ? env->GetDirectBufferAddress(*responseBuffer)
+        : NULL;
+      if (responseBufferAddress)
+      {
+        sResponse.responseText.assign(static_cast<const char*>(responseBufferAddress),
+          static_cast<size_t>(env->GetDirectBufferCapacity(*responseBuffer)));
+      }
+      else
+      {
+        sResponse.responseText = JniGetStringField(*env,
+                                                   serverResponseClass->Get(),
+                                                   *response,
+                                                   "response");
+      }
 
       // map headers
       jobjectArray responseHeadersArray = JniGetStringArrayField(*env,
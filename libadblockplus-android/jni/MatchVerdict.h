@@ -0,0 +1,34 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef MATCH_VERDICT_H
+#define MATCH_VERDICT_H
+
+#include <jni.h>
+
+// keep in sync with MatchVerdict.java
+enum MatchVerdict
+{
+  MATCH_VERDICT_ALLOW = 0,
+  MATCH_VERDICT_BLOCK = 1,
+  MATCH_VERDICT_WHITELIST = 2,
+  MATCH_VERDICT_EXCEPTION = 3
+};
+
+const jint MATCH_VERDICT_FLAG_DOMAIN_SPECIFIC = 0x100;
+
+#endif /* MATCH_VERDICT_H */
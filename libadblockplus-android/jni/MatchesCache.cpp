@@ -0,0 +1,314 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include <algorithm>
+#include <cstdio>
+#include <fstream>
+#include <iterator>
+
+#include "MatchesCache.h"
+
+namespace
+{
+  const char KEY_SEPARATOR = '\x01';
+  const char KEY_SINGLE_DOCUMENT_URL = 's';
+  const char KEY_DOCUMENT_URLS = 'm';
+
+  const char SNAPSHOT_MAGIC[4] = { 'A', 'B', 'P', 'M' };
+  const uint32_t SNAPSHOT_VERSION = 1;
+  const char* SNAPSHOT_TMP_SUFFIX = ".tmp";
+
+  uint32_t Adler32(const std::string& data, size_t length)
+  {
+    uint32_t a = 1, b = 0;
+    for (size_t i = 0; i < length; i++)
+    {
+      a = (a + static_cast<uint8_t>(data[i])) % 65521;
+      b = (b + a) % 65521;
+    }
+    return (b << 16) | a;
+  }
+
+  template<typename T>
+  void Write(std::string& out, T value)
+  {
+    out.append(reinterpret_cast<const char*>(&value), sizeof(value));
+  }
+
+  void WriteString(std::string& out, const std::string& value)
+  {
+    Write<uint32_t>(out, static_cast<uint32_t>(value.length()));
+    out += value;
+  }
+
+  class Reader
+  {
+  public:
+    Reader(const std::string& data, size_t length)
+      : data(data), length(length), position(0)
+    {
+    }
+
+    template<typename T>
+    bool Read(T& value)
+    {
+      if (length - position < sizeof(value))
+      {
+        return false;
+      }
+      data.copy(reinterpret_cast<char*>(&value), sizeof(value), position);
+      position += sizeof(value);
+      return true;
+    }
+
+    bool ReadString(std::string& value)
+    {
+      uint32_t valueLength;
+      if (!Read(valueLength) || length - position < valueLength)
+      {
+        return false;
+      }
+      value.assign(data, position, valueLength);
+      position += valueLength;
+      return true;
+    }
+
+  private:
+    const std::string& data;
+    size_t length;
+    size_t position;
+  };
+}
+
+MatchesCache::MatchesCache()
+  : capacity(0), generation(0), hits(0), misses(0)
+{
+}
+
+void MatchesCache::SetCapacity(size_t newCapacity)
+{
+  Entries evicted;
+  {
+    std::lock_guard<std::mutex> lock(mutex);
+    capacity = newCapacity;
+    while (index.size() > newCapacity)
+    {
+      index.erase(entries.back().first);
+      evicted.splice(evicted.end(), entries, --entries.end());
+    }
+  }
+  // `evicted` filters are destroyed here, out of the lock
+}
+
+bool MatchesCache::Get(const std::string& key, Entry& entry)
+{
+  {
+    std::lock_guard<std::mutex> lock(mutex);
+    auto it = index.find(key);
+    if (it != index.end())
+    {
+      // move to the head as recently used
+      entries.splice(entries.begin(), entries, it->second);
+      entry = it->second->second;
+      hits++;
+      return true;
+    }
+  }
+
+  misses++;
+  return false;
+}
+
+void MatchesCache::Put(const std::string& key, uint64_t matchGeneration, const Entry& entry)
+{
+  // replaced and evicted filters are destroyed after the mutex is unlocked
+  Entry replaced;
+  Entries evicted;
+  {
+    std::lock_guard<std::mutex> lock(mutex);
+    if (capacity == 0 || matchGeneration != generation)
+    {
+      return;
+    }
+
+    auto it = index.find(key);
+    if (it != index.end())
+    {
+      std::swap(replaced, it->second->second);
+      it->second->second = entry;
+      entries.splice(entries.begin(), entries, it->second);
+      return;
+    }
+
+    entries.push_front(KeyEntry(key, entry));
+    index[key] = entries.begin();
+
+    if (index.size() > capacity)
+    {
+      index.erase(entries.back().first);
+      evicted.splice(evicted.end(), entries, --entries.end());
+    }
+  }
+}
+
+void MatchesCache::Invalidate()
+{
+  Entries evicted;
+  {
+    std::lock_guard<std::mutex> lock(mutex);
+    generation++;
+    index.clear();
+    evicted.swap(entries);
+  }
+}
+
+bool MatchesCache::Save(const std::string& path, uint64_t fingerprint, uint64_t expectedGeneration)
+{
+  // only verdicts and texts are copied, filters are not touched
+  std::string data;
+  data.append(SNAPSHOT_MAGIC, sizeof(SNAPSHOT_MAGIC));
+  Write<uint32_t>(data, SNAPSHOT_VERSION);
+  Write<uint64_t>(data, fingerprint);
+  {
+    std::lock_guard<std::mutex> lock(mutex);
+    if (generation != expectedGeneration)
+    {
+      return false;
+    }
+
+    Write<uint32_t>(data, static_cast<uint32_t>(entries.size()));
+    for (auto& keyEntry : entries)
+    {
+      WriteString(data, keyEntry.first);
+      Write<int32_t>(data, static_cast<int32_t>(keyEntry.second.verdict));
+      WriteString(data, keyEntry.second.text);
+    }
+  }
+  Write<uint32_t>(data, Adler32(data, data.length()));
+
+  const std::string tmpPath = path + SNAPSHOT_TMP_SUFFIX;
+  {
+    std::ofstream file(tmpPath.c_str(), std::ios::binary | std::ios::trunc);
+    file.write(data.data(), data.length());
+    if (!file)
+    {
+      return false;
+    }
+  }
+  return std::rename(tmpPath.c_str(), path.c_str()) == 0;
+}
+
+bool MatchesCache::Load(const std::string& path, uint64_t fingerprint, uint64_t expectedGeneration)
+{
+  if (capacity == 0)
+  {
+    return false;
+  }
+
+  std::ifstream file(path.c_str(), std::ios::binary);
+  if (!file)
+  {
+    return false;
+  }
+  const std::string data((std::istreambuf_iterator<char>(file)), std::istreambuf_iterator<char>());
+
+  const size_t checksumOffset = data.length() - sizeof(uint32_t);
+  if (data.length() < sizeof(SNAPSHOT_MAGIC) + sizeof(uint32_t)
+    || data.compare(0, sizeof(SNAPSHOT_MAGIC), SNAPSHOT_MAGIC, sizeof(SNAPSHOT_MAGIC)) != 0)
+  {
+    return false;
+  }
+
+  uint32_t checksum;
+  data.copy(reinterpret_cast<char*>(&checksum), sizeof(checksum), checksumOffset);
+  if (checksum != Adler32(data, checksumOffset))
+  {
+    return false;
+  }
+
+  Reader reader(data, checksumOffset);
+  char magic[sizeof(SNAPSHOT_MAGIC)];
+  uint32_t version;
+  uint64_t snapshotFingerprint;
+  uint32_t count;
+  if (!reader.Read(magic) || !reader.Read(version) || version != SNAPSHOT_VERSION
+    || !reader.Read(snapshotFingerprint) || snapshotFingerprint != fingerprint
+    || !reader.Read(count))
+  {
+    return false;
+  }
+
+  std::vector<KeyEntry> loaded;
+  loaded.reserve(std::min<size_t>(count, capacity));
+  for (uint32_t i = 0; i < count; i++)
+  {
+    KeyEntry keyEntry;
+    int32_t verdict;
+    if (!reader.ReadString(keyEntry.first) || !reader.Read(verdict)
+      || !reader.ReadString(keyEntry.second.text))
+    {
+      return false;
+    }
+    keyEntry.second.verdict = verdict;
+    if (loaded.size() < capacity)
+    {
+      loaded.push_back(keyEntry);
+    }
+  }
+
+  // entries are saved starting from the most recently used
+  for (auto it = loaded.rbegin(); it != loaded.rend(); ++it)
+  {
+    Put(it->first, expectedGeneration, it->second);
+  }
+  return true;
+}
+
+std::string MatchesCache::MakeKey(const std::string& url, int contentType,
+                                  const std::vector<std::string>& documentUrls)
+{
+  std::string key;
+  size_t length = url.length() + sizeof(contentType) + 1;
+  for (auto& documentUrl : documentUrls)
+  {
+    length += documentUrl.length() + 1;
+  }
+  key.reserve(length);
+
+  key += KEY_DOCUMENT_URLS;
+  key.append(reinterpret_cast<const char*>(&contentType), sizeof(contentType));
+  key += url;
+  for (auto& documentUrl : documentUrls)
+  {
+    key += KEY_SEPARATOR;
+    key += documentUrl;
+  }
+  return key;
+}
+
+std::string MatchesCache::MakeKey(const std::string& url, int contentType,
+                                  const std::string& documentUrl)
+{
+  std::string key;
+  key.reserve(url.length() + documentUrl.length() + sizeof(contentType) + 2);
+  key += KEY_SINGLE_DOCUMENT_URL;
+  key.append(reinterpret_cast<const char*>(&contentType), sizeof(contentType));
+  key += url;
+  key += KEY_SEPARATOR;
+  key += documentUrl;
+  return key;
+}
@@ -0,0 +1,128 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef MATCHESCACHE_H
+#define MATCHESCACHE_H
+
+#include <atomic>
+#include <list>
+#include <memory>
+#include <mutex>
+#include <string>
+#include <unordered_map>
+#include <vector>
+
+#include <AdblockPlus.h>
+
+/**
+ * Bounded LRU cache of `FilterEngine::Matches` results (including "no match").
+ *
+ * Cached filters are JS values so they are never copied or destroyed while holding
+ * the internal mutex: filter change notifications are fired from JS with V8 locked
+ * and they invalidate the cache, so taking V8 lock under the mutex could deadlock.
+ */
+class MatchesCache
+{
+public:
+  typedef std::shared_ptr<AdblockPlus::Filter> SharedFilter;
+
+  struct Entry
+  {
+    SharedFilter filter; // null if nothing matched
+    std::string text;    // filter text and verdict are precomputed to answer without JS
+    int verdict;
+  };
+
+  MatchesCache();
+
+  void SetCapacity(size_t capacity);
+
+  size_t GetCapacity() const
+  {
+    return capacity;
+  }
+
+  bool IsEnabled() const
+  {
+    return capacity > 0;
+  }
+
+  /**
+   * Generation is incremented on every invalidation. Take it before matching and pass to `Put`
+   * so a result computed with outdated filters is not stored.
+   */
+  uint64_t GetGeneration() const
+  {
+    return generation;
+  }
+
+  bool Get(const std::string& key, Entry& entry);
+
+  void Put(const std::string& key, uint64_t generation, const Entry& entry);
+
+  void Invalidate();
+
+  int64_t GetHits() const
+  {
+    return hits;
+  }
+
+  int64_t GetMisses() const
+  {
+    return misses;
+  }
+
+  /**
+   * Writes verdicts and filter texts (not the filters) to the file.
+   * @param fingerprint fingerprint of the filters the entries were matched with
+   * @param expectedGeneration generation the fingerprint was calculated at
+   * @return false if the cache was invalidated meanwhile or failed to write
+   */
+  bool Save(const std::string& path, uint64_t fingerprint, uint64_t expectedGeneration);
+
+  /**
+   * Reads the entries saved with `Save` if the fingerprint matches.
+   * Loaded entries have no filters, only filter texts.
+   * @return false if the file is missing, corrupted, stale or the cache is disabled
+   */
+  bool Load(const std::string& path, uint64_t fingerprint, uint64_t expectedGeneration);
+
+  static std::string MakeKey(const std::string& url, int contentType,
+                             const std::vector<std::string>& documentUrls);
+
+  static std::string MakeKey(const std::string& url, int contentType,
+                             const std::string& documentUrl);
+
+private:
+  typedef std::pair<std::string, Entry> KeyEntry;
+  typedef std::list<KeyEntry> Entries;
+
+  MatchesCache(const MatchesCache& other);
+  MatchesCache& operator=(const MatchesCache& other);
+
+  std::mutex mutex;
+  Entries entries;
+  std::unordered_map<std::string, Entries::iterator> index;
+  std::atomic<size_t> capacity;
+  std::atomic<uint64_t> generation;
+  std::atomic<int64_t> hits;
+  std::atomic<int64_t> misses;
+};
+
+typedef std::shared_ptr<MatchesCache> MatchesCachePtr;
+
+#endif /* MATCHESCACHE_H */
@@ -0,0 +1,1119 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include <unordered_set>
+
+#include "NativeMatcher.h"
+
+namespace
+{
+  typedef NativeMatcher::Filter Filter;
+  typedef NativeMatcher::FilterPtr FilterPtr;
+
+  // as in adblockpluscore `RegExpFilter.prototype.contentType`
+  const uint32_t DEFAULT_CONTENT_TYPE = 0x7FFFFFFF &
+    ~(NativeMatcher::CONTENT_TYPE_DOCUMENT | NativeMatcher::CONTENT_TYPE_ELEMHIDE |
+      NativeMatcher::CONTENT_TYPE_POPUP | NativeMatcher::CONTENT_TYPE_GENERICHIDE |
+      NativeMatcher::CONTENT_TYPE_GENERICBLOCK);
+
+  struct ContentTypeOption
+  {
+    const char* name;
+    uint32_t contentType;
+  };
+
+  // adblockpluscore `RegExpFilter.typeMap`, option names are upper case with the first `-`
+  // replaced with `_`
+  const ContentTypeOption CONTENT_TYPE_OPTIONS[] =
+  {
+    { "OTHER", NativeMatcher::CONTENT_TYPE_OTHER },
+    { "SCRIPT", NativeMatcher::CONTENT_TYPE_SCRIPT },
+    { "IMAGE", NativeMatcher::CONTENT_TYPE_IMAGE },
+    { "STYLESHEET", NativeMatcher::CONTENT_TYPE_STYLESHEET },
+    { "OBJECT", NativeMatcher::CONTENT_TYPE_OBJECT },
+    { "SUBDOCUMENT", NativeMatcher::CONTENT_TYPE_SUBDOCUMENT },
+    { "DOCUMENT", NativeMatcher::CONTENT_TYPE_DOCUMENT },
+    { "XMLHTTPREQUEST", NativeMatcher::CONTENT_TYPE_XMLHTTPREQUEST },
+    { "OBJECT_SUBREQUEST", NativeMatcher::CONTENT_TYPE_OBJECT_SUBREQUEST },
+    { "FONT", NativeMatcher::CONTENT_TYPE_FONT },
+    { "MEDIA", NativeMatcher::CONTENT_TYPE_MEDIA },
+    { "PING", NativeMatcher::CONTENT_TYPE_PING },
+    { "WEBSOCKET", NativeMatcher::CONTENT_TYPE_WEBSOCKET },
+    { "WEBRTC", NativeMatcher::CONTENT_TYPE_WEBRTC },
+    { "POPUP", NativeMatcher::CONTENT_TYPE_POPUP },
+    { "GENERICBLOCK", NativeMatcher::CONTENT_TYPE_GENERICBLOCK },
+    { "GENERICHIDE", NativeMatcher::CONTENT_TYPE_GENERICHIDE },
+    { "ELEMHIDE", NativeMatcher::CONTENT_TYPE_ELEMHIDE },
+    // legacy aliases
+    { "BACKGROUND", NativeMatcher::CONTENT_TYPE_IMAGE },
+    { "XBL", NativeMatcher::CONTENT_TYPE_OTHER },
+    { "DTD", NativeMatcher::CONTENT_TYPE_OTHER }
+  };
+
+  bool LookupContentType(const std::string& name, uint32_t& contentType)
+  {
+    for (const auto& option : CONTENT_TYPE_OPTIONS)
+    {
+      if (name == option.name)
+      {
+        contentType = option.contentType;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  inline char ToLower(char c)
+  {
+    return (c >= 'A' && c <= 'Z') ? static_cast<char>(c + ('a' - 'A')) : c;
+  }
+
+  inline char ToUpper(char c)
+  {
+    return (c >= 'a' && c <= 'z') ? static_cast<char>(c - ('a' - 'A')) : c;
+  }
+
+  std::string ToLower(const std::string& value)
+  {
+    std::string result(value);
+    for (auto& c : result)
+    {
+      c = ToLower(c);
+    }
+    return result;
+  }
+
+  inline bool IsSpace(char c)
+  {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\v';
+  }
+
+  // [\w-]
+  inline bool IsOptionNameChar(char c)
+  {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+      c == '_' || c == '-';
+  }
+
+  // [a-z0-9%], expects lower case
+  inline bool IsKeywordChar(char c)
+  {
+    return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '%';
+  }
+
+  // `^` placeholder: [\x00-\x24\x26-\x2C\x2F\x3A-\x40\x5B-\x5E\x60\x7B-\x7F]
+  inline bool IsSeparator(char c)
+  {
+    unsigned char u = static_cast<unsigned char>(c);
+    return u <= 0x24 || (u >= 0x26 && u <= 0x2C) || u == 0x2F || (u >= 0x3A && u <= 0x40) ||
+      (u >= 0x5B && u <= 0x5E) || u == 0x60 || (u >= 0x7B && u <= 0x7F);
+  }
+
+  /**
+   * Checks if `text` from `begin` matches adblockpluscore `Filter.optionsRegExp` options part:
+   * ~?[\w-]+(?:=[^,\s]+)?(?:,~?[\w-]+(?:=[^,\s]+)?)*
+   */
+  bool IsValidOptions(const std::string& text, size_t begin)
+  {
+    size_t i = begin;
+    const size_t length = text.length();
+    while (true)
+    {
+      if (i < length && text[i] == '~')
+      {
+        i++;
+      }
+      size_t nameStart = i;
+      while (i < length && IsOptionNameChar(text[i]))
+      {
+        i++;
+      }
+      if (i == nameStart)
+      {
+        return false;
+      }
+      if (i < length && text[i] == '=')
+      {
+        size_t valueStart = ++i;
+        while (i < length && text[i] != ',' && !IsSpace(text[i]))
+        {
+          i++;
+        }
+        if (i == valueStart)
+        {
+          return false;
+        }
+      }
+      if (i == length)
+      {
+        return true;
+      }
+      if (text[i] != ',')
+      {
+        return false;
+      }
+      i++;
+    }
+  }
+
+  // position of `$` the options start with or npos
+  size_t FindOptions(const std::string& text)
+  {
+    for (size_t pos = text.find('$'); pos != std::string::npos; pos = text.find('$', pos + 1))
+    {
+      if (IsValidOptions(text, pos + 1))
+      {
+        return pos;
+      }
+    }
+    return std::string::npos;
+  }
+
+  // adblockpluscore `Filter.elemhideRegExp`: ^([^\/\*\|\@"!]*?)#([@?])?#(.+)$
+  bool IsElementHidingFilter(const std::string& text)
+  {
+    size_t domainsEnd = text.find_first_of("/*|@\"!");
+    for (size_t hash = text.find('#'); hash < domainsEnd; hash = text.find('#', hash + 1))
+    {
+      size_t selectorStart = hash + 1;
+      if (selectorStart < text.length() &&
+          (text[selectorStart] == '@' || text[selectorStart] == '?'))
+      {
+        selectorStart++;
+      }
+      if (selectorStart + 1 < text.length() && text[selectorStart] == '#')
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  void ParseDomains(const std::string& source, Filter& filter)
+  {
+    bool hasIncludes = false;
+    size_t start = 0;
+    while (start <= source.length())
+    {
+      size_t end = source.find('|', start);
+      if (end == std::string::npos)
+      {
+        end = source.length();
+      }
+      std::string domain = source.substr(start, end - start);
+      start = end + 1;
+
+      if (domain.empty())
+      {
+        continue;
+      }
+      bool include = (domain[0] != '~');
+      if (!include)
+      {
+        domain.erase(0, 1);
+      }
+      filter.domains[domain] = include;
+      hasIncludes |= include;
+    }
+    filter.domains[""] = !hasIncludes;
+  }
+
+  /**
+   * Same as adblockpluscore `Filter.fromText` for request filters.
+   * @param lenient keep the filters with unknown options (content type is not restricted then)
+   *                and don't compile regexps, so no filter valid for JS matcher is skipped
+   * @param keywordSource set to the text keywords are looked for in, empty for regexp filters
+   * @return null for invalid, comment and element hiding filters
+   */
+  FilterPtr ParseFilter(const std::string& rawText, bool lenient, std::string& keywordSource)
+  {
+    std::string text;
+    text.reserve(rawText.length());
+    for (auto c : rawText)
+    {
+      if (!IsSpace(c))
+      {
+        text += c;
+      }
+    }
+
+    if (text.empty() || text[0] == '!' || IsElementHidingFilter(text))
+    {
+      return FilterPtr();
+    }
+
+    auto filter = std::make_shared<Filter>();
+    filter->text = text;
+    filter->exception = (text.compare(0, 2, "@@") == 0);
+    filter->contentType = DEFAULT_CONTENT_TYPE;
+    filter->thirdParty = -1;
+    filter->matchCase = false;
+    filter->sitekeys = false;
+
+    size_t patternStart = (filter->exception ? 2 : 0);
+    size_t optionsStart = FindOptions(text);
+    std::string pattern = text.substr(patternStart,
+      optionsStart == std::string::npos ? std::string::npos : optionsStart - patternStart);
+
+    if (optionsStart != std::string::npos)
+    {
+      bool contentTypeSet = false;
+      bool hasUnknownOptions = false;
+      size_t start = optionsStart + 1;
+      while (start < text.length())
+      {
+        size_t end = text.find(',', start);
+        if (end == std::string::npos)
+        {
+          end = text.length();
+        }
+        std::string option = text.substr(start, end - start);
+        start = end + 1;
+
+        std::string value;
+        bool hasValue = false;
+        size_t separator = option.find('=');
+        if (separator != std::string::npos)
+        {
+          value = option.substr(separator + 1);
+          option.erase(separator);
+          hasValue = true;
+        }
+        for (auto& c : option)
+        {
+          c = ToUpper(c);
+        }
+        size_t dash = option.find('-');
+        if (dash != std::string::npos)
+        {
+          option[dash] = '_';
+        }
+
+        uint32_t contentType;
+        if (LookupContentType(option, contentType))
+        {
+          if (!contentTypeSet)
+          {
+            filter->contentType = 0;
+            contentTypeSet = true;
+          }
+          filter->contentType |= contentType;
+        }
+        else if (option[0] == '~' && LookupContentType(option.substr(1), contentType))
+        {
+          contentTypeSet = true;
+          filter->contentType &= ~contentType;
+        }
+        else if (option == "MATCH_CASE" || option == "~MATCH_CASE")
+        {
+          filter->matchCase = (option[0] != '~');
+        }
+        else if (option == "DOMAIN")
+        {
+          if (hasValue)
+          {
+            ParseDomains(ToLower(value), *filter);
+          }
+        }
+        else if (option == "THIRD_PARTY" || option == "~THIRD_PARTY")
+        {
+          filter->thirdParty = (option[0] != '~' ? 1 : 0);
+        }
+        else if (option == "COLLAPSE" || option == "~COLLAPSE")
+        {
+          // affects element collapsing only
+        }
+        else if (option == "SITEKEY")
+        {
+          filter->sitekeys = hasValue;
+        }
+        else if (lenient)
+        {
+          hasUnknownOptions = true;
+        }
+        else
+        {
+          // unknown option makes the filter invalid
+          return FilterPtr();
+        }
+      }
+
+      if (hasUnknownOptions)
+      {
+        // the option can be supported by JS matcher, so any content type is assumed
+        filter->contentType = 0x7FFFFFFF;
+      }
+    }
+
+    filter->isRegExp = (pattern.length() >= 2 && pattern[0] == '/' && pattern.back() == '/');
+    filter->anchor = Filter::ANCHOR_NONE;
+    filter->endAnchor = false;
+    if (filter->isRegExp)
+    {
+      keywordSource.clear();
+      if (lenient)
+      {
+        return filter;
+      }
+      try
+      {
+        auto flags = std::regex::ECMAScript | std::regex::optimize;
+        if (!filter->matchCase)
+        {
+          flags |= std::regex::icase;
+        }
+        filter->regExp = std::regex(pattern.substr(1, pattern.length() - 2), flags);
+      }
+      catch (const std::regex_error&)
+      {
+        // not supported by std::regex or invalid
+        return FilterPtr();
+      }
+      return filter;
+    }
+
+    keywordSource = ToLower(pattern);
+
+    std::string source;
+    source.reserve(pattern.length());
+    for (auto c : pattern)
+    {
+      if (c != '*' || source.empty() || source.back() != '*')
+      {
+        source += c;
+      }
+    }
+    if (source.length() >= 2 && source.compare(source.length() - 2, 2, "^|") == 0)
+    {
+      source.pop_back();
+    }
+    if (source.compare(0, 2, "||") == 0)
+    {
+      filter->anchor = Filter::ANCHOR_DOMAIN;
+      source.erase(0, 2);
+    }
+    else if (source.compare(0, 1, "|") == 0)
+    {
+      filter->anchor = Filter::ANCHOR_START;
+      source.erase(0, 1);
+    }
+    if (!source.empty() && source.back() == '|')
+    {
+      filter->endAnchor = true;
+      source.pop_back();
+    }
+    if (!filter->matchCase)
+    {
+      source = ToLower(source);
+    }
+
+    size_t start = 0;
+    while (true)
+    {
+      size_t end = source.find('*', start);
+      if (end == std::string::npos)
+      {
+        filter->segments.push_back(source.substr(start));
+        break;
+      }
+      filter->segments.push_back(source.substr(start, end - start));
+      start = end + 1;
+    }
+
+    return filter;
+  }
+
+  /**
+   * @return position after the segment matched at `pos` or npos
+   */
+  size_t MatchSegment(const std::string& segment, const std::string& url, size_t pos)
+  {
+    const size_t length = url.length();
+    for (auto c : segment)
+    {
+      if (c == '^')
+      {
+        // separator or the end of the URL
+        if (pos < length)
+        {
+          if (!IsSeparator(url[pos]))
+          {
+            return std::string::npos;
+          }
+          pos++;
+        }
+      }
+      else
+      {
+        if (pos >= length || url[pos] != c)
+        {
+          return std::string::npos;
+        }
+        pos++;
+      }
+    }
+    return pos;
+  }
+
+  // segments starting from `index` are matched at `pos` or later
+  bool MatchSegments(const Filter& filter, const std::string& url, size_t index, size_t pos)
+  {
+    const auto& segments = filter.segments;
+    const size_t length = url.length();
+    for (; index < segments.size(); index++)
+    {
+      const std::string& segment = segments[index];
+      if (index + 1 == segments.size() && filter.endAnchor)
+      {
+        // the segment consumes at most one char per placeholder
+        size_t from = (length >= segment.length() ? length - segment.length() : 0);
+        for (size_t start = std::max(pos, from); start <= length; start++)
+        {
+          if (MatchSegment(segment, url, start) == length)
+          {
+            return true;
+          }
+        }
+        return false;
+      }
+
+      // the leftmost match leaves the most room for the next segments
+      size_t end = std::string::npos;
+      for (size_t start = pos; start <= length && end == std::string::npos; start++)
+      {
+        end = MatchSegment(segment, url, start);
+      }
+      if (end == std::string::npos)
+      {
+        return false;
+      }
+      pos = end;
+    }
+    return !filter.endAnchor || pos == length;
+  }
+
+  // ^[\w\-]+:\/+(?!\/)(?:[^\/]+\.)?
+  bool MatchDomainAnchored(const Filter& filter, const std::string& url)
+  {
+    const size_t length = url.length();
+    size_t pos = 0;
+    while (pos < length && IsOptionNameChar(url[pos]))
+    {
+      pos++;
+    }
+    if (pos == 0 || pos >= length || url[pos] != ':')
+    {
+      return false;
+    }
+    pos++;
+    size_t slashesStart = pos;
+    while (pos < length && url[pos] == '/')
+    {
+      pos++;
+    }
+    if (pos == slashesStart)
+    {
+      return false;
+    }
+
+    const std::string& first = filter.segments[0];
+    for (size_t start = pos; start <= length; start++)
+    {
+      if (start == pos || (start >= pos + 2 && url[start - 1] == '.'))
+      {
+        size_t end = MatchSegment(first, url, start);
+        if (end != std::string::npos && MatchSegments(filter, url, 1, end))
+        {
+          return true;
+        }
+      }
+      if (start < length && url[start] == '/')
+      {
+        break;
+      }
+    }
+    return false;
+  }
+
+  bool MatchPattern(const Filter& filter, const std::string& url, const std::string& lowerUrl)
+  {
+    if (filter.isRegExp)
+    {
+      return std::regex_search(url, filter.regExp);
+    }
+
+    const std::string& target = (filter.matchCase ? url : lowerUrl);
+    switch (filter.anchor)
+    {
+      case Filter::ANCHOR_DOMAIN:
+        return MatchDomainAnchored(filter, target);
+
+      case Filter::ANCHOR_START:
+      {
+        size_t end = MatchSegment(filter.segments[0], target, 0);
+        return end != std::string::npos && MatchSegments(filter, target, 1, end);
+      }
+
+      default:
+        return MatchSegments(filter, target, 0, 0);
+    }
+  }
+
+  bool IsActiveOnDomain(const Filter& filter, const std::string& documentHost)
+  {
+    if (filter.sitekeys)
+    {
+      return false;
+    }
+    if (filter.domains.empty())
+    {
+      return true;
+    }
+
+    std::string domain(documentHost);
+    while (!domain.empty() && domain.back() == '.')
+    {
+      domain.pop_back();
+    }
+    if (!domain.empty())
+    {
+      while (true)
+      {
+        auto it = filter.domains.find(domain);
+        if (it != filter.domains.end())
+        {
+          return it->second;
+        }
+        size_t nextDot = domain.find('.');
+        if (nextDot == std::string::npos)
+        {
+          break;
+        }
+        domain.erase(0, nextDot + 1);
+      }
+    }
+    return filter.domains.find("")->second;
+  }
+
+  bool Matches(const Filter& filter, const std::string& url, const std::string& lowerUrl,
+               uint32_t contentTypeMask, const std::string& documentHost, bool thirdParty)
+  {
+    return (filter.contentType & contentTypeMask) &&
+      (filter.thirdParty < 0 || (filter.thirdParty == 1) == thirdParty) &&
+      IsActiveOnDomain(filter, documentHost) &&
+      MatchPattern(filter, url, lowerUrl);
+  }
+
+  FilterPtr CheckEntryMatch(const std::vector<FilterPtr>& filters, const std::string& url,
+                            const std::string& lowerUrl, uint32_t contentTypeMask,
+                            const std::string& documentHost, bool thirdParty)
+  {
+    for (const auto& filter : filters)
+    {
+      if (Matches(*filter, url, lowerUrl, contentTypeMask, documentHost, thirdParty))
+      {
+        return filter;
+      }
+    }
+    return FilterPtr();
+  }
+
+  bool IsIpAddress(const std::string& host)
+  {
+    if (host.find(':') != std::string::npos || host.find('[') != std::string::npos)
+    {
+      return true;
+    }
+    if (host.empty() || host[0] < '0' || host[0] > '9')
+    {
+      return false;
+    }
+    for (auto c : host)
+    {
+      if ((c < '0' || c > '9') && c != '.')
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  std::string TrimTrailingDots(const std::string& host)
+  {
+    size_t end = host.find_last_not_of('.');
+    return (end == std::string::npos ? std::string() : host.substr(0, end + 1));
+  }
+
+  // FilterEngine.ContentType values, the filters for other types don't match requests
+  const uint32_t PREFILTER_CONTENT_TYPES = (1 << 11) - 1;
+
+  // present in most of URLs, so they don't filter out anything
+  const char* const COMMON_KEYWORDS[] =
+  {
+    "http", "https", "www", "com", "net", "org", "html", "php"
+  };
+
+  const char* const COMMON_SUBSTRINGS[] =
+  {
+    "http", "ttps", "ttp:", "tp:/", "tps:", "ps:/", "s://", "p://", "://w", "//ww", "www.",
+    ".com", "com/", ".net", ".org", ".htm", "html", ".php"
+  };
+
+  template<size_t N>
+  bool IsCommon(const std::string& value, const char* const (&common)[N])
+  {
+    for (auto item : common)
+    {
+      if (value == item)
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // prefilter tokens are checked in Java against UTF-16 chars
+  bool IsAscii(const std::string& value)
+  {
+    for (auto c : value)
+    {
+      if (static_cast<unsigned char>(c) > 0x7F)
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // any keyword candidate is in the URL if the filter matches, the longest uncommon one is taken
+  std::string FindPrefilterKeyword(const std::string& keywordSource)
+  {
+    std::string keyword;
+    bool keywordCommon = true;
+    const size_t length = keywordSource.length();
+    size_t i = 0;
+    while (i < length)
+    {
+      if (IsKeywordChar(keywordSource[i]) || keywordSource[i] == '*')
+      {
+        i++;
+        continue;
+      }
+      size_t end = i + 1;
+      while (end < length && IsKeywordChar(keywordSource[end]))
+      {
+        end++;
+      }
+      size_t candidateLength = end - i - 1;
+      if (candidateLength >= 3 && end < length && keywordSource[end] != '*')
+      {
+        std::string candidate = keywordSource.substr(i + 1, candidateLength);
+        bool candidateCommon = IsCommon(candidate, COMMON_KEYWORDS);
+        if (keyword.empty() || (keywordCommon && !candidateCommon) ||
+            (keywordCommon == candidateCommon && candidateLength > keyword.length()))
+        {
+          keyword = candidate;
+          keywordCommon = candidateCommon;
+        }
+      }
+      i = end;
+    }
+    return keyword;
+  }
+
+  const int COMMON_SUBSTRING_PENALTY = 100;
+
+  // URL parts chars are frequent in any URL
+  int GetSubstringPenalty(const std::string& substring)
+  {
+    if (IsCommon(substring, COMMON_SUBSTRINGS))
+    {
+      return COMMON_SUBSTRING_PENALTY;
+    }
+    int penalty = 0;
+    for (auto c : substring)
+    {
+      if (c == '/' || c == '.' || c == ':' || c == '?' || c == '=' || c == '&')
+      {
+        penalty++;
+      }
+    }
+    return penalty;
+  }
+
+  // literal substring of the pattern (no wildcards and separator placeholders)
+  std::string FindPrefilterSubstring(const Filter& filter, int& substringPenalty)
+  {
+    const size_t length = NativeMatcher::PREFILTER_SUBSTRING_LENGTH;
+    std::string substring;
+    substringPenalty = 0;
+    for (const auto& segment : filter.segments)
+    {
+      std::string lowerSegment = ToLower(segment);
+      size_t start = 0;
+      while (start < lowerSegment.length())
+      {
+        size_t end = lowerSegment.find('^', start);
+        if (end == std::string::npos)
+        {
+          end = lowerSegment.length();
+        }
+        for (size_t i = start; i + length <= end; i++)
+        {
+          std::string candidate = lowerSegment.substr(i, length);
+          if (!IsAscii(candidate))
+          {
+            continue;
+          }
+          int penalty = GetSubstringPenalty(candidate);
+          if (substring.empty() || penalty < substringPenalty)
+          {
+            substring = candidate;
+            substringPenalty = penalty;
+          }
+        }
+        start = end + 1;
+      }
+    }
+    return substring;
+  }
+}
+
+NativeMatcher::NativeMatcher(const std::vector<std::string>& texts,
+                             const std::unordered_map<std::string, int>& publicSuffixes)
+  : publicSuffixes(publicSuffixes), filterCount(0)
+{
+  std::unordered_set<std::string> added;
+  std::string keywordSource;
+  for (const auto& text : texts)
+  {
+    FilterPtr filter = ParseFilter(text, false, keywordSource);
+    if (filter && added.insert(filter->text).second)
+    {
+      Add(filter, keywordSource);
+    }
+  }
+}
+
+// same as adblockpluscore `Matcher.findKeyword`
+void NativeMatcher::Add(const FilterPtr& filter, const std::string& keywordSource)
+{
+  KeywordIndex& index = (filter->exception ? whitelist : blacklist);
+
+  // candidates: [^a-z0-9%*][a-z0-9%]{3,}(?=[^a-z0-9%*])
+  std::string keyword;
+  size_t keywordCount = 0xFFFFFF;
+  const std::string& source = keywordSource;
+  const size_t length = source.length();
+  size_t i = 0;
+  while (i < length)
+  {
+    if (IsKeywordChar(source[i]) || source[i] == '*')
+    {
+      i++;
+      continue;
+    }
+    size_t end = i + 1;
+    while (end < length && IsKeywordChar(source[end]))
+    {
+      end++;
+    }
+    size_t candidateLength = end - i - 1;
+    if (candidateLength >= 3 && end < length && source[end] != '*')
+    {
+      std::string candidate = source.substr(i + 1, candidateLength);
+      auto it = index.find(candidate);
+      size_t count = (it != index.end() ? it->second.size() : 0);
+      if (count < keywordCount || (count == keywordCount && candidateLength > keyword.length()))
+      {
+        keyword = candidate;
+        keywordCount = count;
+      }
+    }
+    i = end;
+  }
+
+  index[keyword].push_back(filter);
+  filterCount++;
+}
+
+std::string NativeMatcher::ExtractHostFromUrl(const std::string& url)
+{
+  size_t schemeEnd = url.find(':');
+  if (schemeEnd == std::string::npos || url.compare(schemeEnd + 1, 2, "//") != 0)
+  {
+    return std::string();
+  }
+
+  size_t hostStart = schemeEnd + 3;
+  size_t authorityEnd = url.find_first_of("/?#", hostStart);
+  if (authorityEnd == std::string::npos)
+  {
+    authorityEnd = url.length();
+  }
+  size_t userInfoEnd = url.find('@', hostStart);
+  if (userInfoEnd != std::string::npos && userInfoEnd < authorityEnd)
+  {
+    hostStart = userInfoEnd + 1;
+  }
+
+  size_t hostEnd = authorityEnd;
+  size_t portSearchStart = hostStart;
+  if (hostStart < authorityEnd && url[hostStart] == '[')
+  {
+    size_t bracket = url.find(']', hostStart);
+    if (bracket != std::string::npos && bracket < authorityEnd)
+    {
+      portSearchStart = bracket + 1;
+    }
+  }
+  size_t portStart = url.find(':', portSearchStart);
+  if (portStart != std::string::npos && portStart < authorityEnd)
+  {
+    hostEnd = portStart;
+  }
+
+  return ToLower(url.substr(hostStart, hostEnd - hostStart));
+}
+
+std::string NativeMatcher::GetBaseDomain(const std::string& host) const
+{
+  std::vector<size_t> labels(1, 0);
+  for (size_t i = 0; i < host.length(); i++)
+  {
+    if (host[i] == '.')
+    {
+      labels.push_back(i + 1);
+    }
+  }
+
+  int cutoff = static_cast<int>(labels.size()) - 2;
+  if (!publicSuffixes.empty())
+  {
+    for (size_t i = 0; i < labels.size(); i++)
+    {
+      auto it = publicSuffixes.find(host.substr(labels[i]));
+      if (it != publicSuffixes.end())
+      {
+        cutoff = static_cast<int>(i) - it->second;
+        break;
+      }
+    }
+  }
+  return (cutoff <= 0 ? host : host.substr(labels[cutoff]));
+}
+
+bool NativeMatcher::IsThirdParty(const std::string& requestHost,
+                                 const std::string& documentHost) const
+{
+  std::string request = TrimTrailingDots(requestHost);
+  std::string document = TrimTrailingDots(documentHost);
+  if (request == document)
+  {
+    return false;
+  }
+  if (IsIpAddress(request) || IsIpAddress(document))
+  {
+    return true;
+  }
+  return GetBaseDomain(request) != GetBaseDomain(document);
+}
+
+bool NativeMatcher::GetPrefilterTokens(const std::vector<std::string>& texts,
+                                       std::vector<std::string>& tokens)
+{
+  std::unordered_set<std::string> unique;
+  std::string keywordSource;
+  for (const auto& text : texts)
+  {
+    FilterPtr filter = ParseFilter(text, true, keywordSource);
+    if (!filter || filter->exception || filter->sitekeys ||
+        !(filter->contentType & PREFILTER_CONTENT_TYPES))
+    {
+      continue;
+    }
+
+    std::string keyword;
+    std::string substring;
+    int substringPenalty = 0;
+    if (!filter->isRegExp)
+    {
+      keyword = FindPrefilterKeyword(keywordSource);
+      substring = FindPrefilterSubstring(*filter, substringPenalty);
+    }
+
+    // common keywords and substrings are present in most of URLs, domains are better then
+    if (!keyword.empty() && !IsCommon(keyword, COMMON_KEYWORDS))
+    {
+      unique.insert(PREFILTER_KEYWORD + keyword);
+      continue;
+    }
+    if (!substring.empty() && substringPenalty < COMMON_SUBSTRING_PENALTY)
+    {
+      unique.insert(PREFILTER_SUBSTRING + substring);
+      continue;
+    }
+
+    // the filter can match on the included domains only
+    auto defaultDomain = filter->domains.find("");
+    if (defaultDomain != filter->domains.end() && !defaultDomain->second)
+    {
+      bool ascii = true;
+      for (const auto& domain : filter->domains)
+      {
+        ascii &= IsAscii(domain.first);
+      }
+      if (ascii)
+      {
+        for (const auto& domain : filter->domains)
+        {
+          if (domain.second)
+          {
+            unique.insert(PREFILTER_DOMAIN + domain.first);
+          }
+        }
+        continue;
+      }
+    }
+
+    if (!keyword.empty())
+    {
+      unique.insert(PREFILTER_KEYWORD + keyword);
+    }
+    else if (!substring.empty())
+    {
+      unique.insert(PREFILTER_SUBSTRING + substring);
+    }
+    else
+    {
+      return false;
+    }
+  }
+
+  tokens.assign(unique.begin(), unique.end());
+  return true;
+}
+
+// same as adblockpluscore `checkFilterMatch` and `CombinedMatcher.matchesAny`
+NativeMatcher::FilterPtr NativeMatcher::CheckFilterMatch(const std::string& url,
+    uint32_t contentTypeMask, const std::string& documentUrl) const
+{
+  std::string documentHost = ExtractHostFromUrl(documentUrl);
+  bool thirdParty = IsThirdParty(ExtractHostFromUrl(url), documentHost);
+  std::string lowerUrl = ToLower(url);
+
+  FilterPtr blacklistHit;
+  auto check = [&](const std::string& keyword) -> FilterPtr
+  {
+    auto whitelisted = whitelist.find(keyword);
+    if (whitelisted != whitelist.end())
+    {
+      FilterPtr filter = CheckEntryMatch(whitelisted->second, url, lowerUrl,
+        contentTypeMask, documentHost, thirdParty);
+      if (filter)
+      {
+        return filter;
+      }
+    }
+    if (!blacklistHit)
+    {
+      auto blacklisted = blacklist.find(keyword);
+      if (blacklisted != blacklist.end())
+      {
+        blacklistHit = CheckEntryMatch(blacklisted->second, url, lowerUrl,
+          contentTypeMask, documentHost, thirdParty);
+      }
+    }
+    return FilterPtr();
+  };
+
+  // URL keywords: [a-z0-9%]{3,} and the empty one for the filters without keywords
+  std::string keyword;
+  const size_t length = lowerUrl.length();
+  size_t i = 0;
+  while (i < length)
+  {
+    if (!IsKeywordChar(lowerUrl[i]))
+    {
+      i++;
+      continue;
+    }
+    size_t end = i + 1;
+    while (end < length && IsKeywordChar(lowerUrl[end]))
+    {
+      end++;
+    }
+    if (end - i >= 3)
+    {
+      keyword.assign(lowerUrl, i, end - i);
+      FilterPtr exception = check(keyword);
+      if (exception)
+      {
+        return exception;
+      }
+    }
+    i = end;
+  }
+  keyword.clear();
+  FilterPtr exception = check(keyword);
+  return exception ? exception : blacklistHit;
+}
+
+// same as `FilterEngine::Matches`
+NativeMatcher::FilterPtr NativeMatcher::Matches(const std::string& url, uint32_t contentTypeMask,
+    const std::vector<std::string>& documentUrls) const
+{
+  if (documentUrls.empty())
+  {
+    return CheckFilterMatch(url, contentTypeMask, "");
+  }
+
+  std::string lastDocumentUrl = documentUrls.front();
+  for (const auto& documentUrl : documentUrls)
+  {
+    FilterPtr filter = CheckFilterMatch(documentUrl, CONTENT_TYPE_DOCUMENT, lastDocumentUrl);
+    if (filter && filter->exception)
+    {
+      return filter;
+    }
+    lastDocumentUrl = documentUrl;
+  }
+  return CheckFilterMatch(url, contentTypeMask, lastDocumentUrl);
+}
+
+// same as `FilterEngine::IsGenericallyWhitelisted`
+bool NativeMatcher::IsGenericallyWhitelisted(const std::string& url,
+    const std::vector<std::string>& documentUrls, uint32_t contentTypeMask) const
+{
+  if (documentUrls.empty())
+  {
+    FilterPtr filter = CheckFilterMatch(url, contentTypeMask, "");
+    return filter && filter->exception;
+  }
+
+  std::string currentUrl = url;
+  for (const auto& documentUrl : documentUrls)
+  {
+    FilterPtr filter = CheckFilterMatch(currentUrl, contentTypeMask, documentUrl);
+    if (filter && filter->exception)
+    {
+      return true;
+    }
+    currentUrl = documentUrl;
+  }
+  return false;
+}
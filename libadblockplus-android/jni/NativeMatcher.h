@@ -0,0 +1,166 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#ifndef NATIVEMATCHER_H
+#define NATIVEMATCHER_H
+
+#include <memory>
+#include <regex>
+#include <string>
+#include <unordered_map>
+#include <vector>
+
+/**
+ * Request filter matcher compiled from filter texts, an alternative to the JS matcher
+ * for `FilterEngine::Matches` and `FilterEngine::IsDocumentWhitelisted`.
+ *
+ * Filters are parsed and matched the way adblockpluscore `RegExpFilter` and `CombinedMatcher`
+ * do it: every filter is indexed by one of its keywords and only the filters indexed by
+ * the keywords found in the URL are checked. Element hiding filters are ignored.
+ *
+ * The matcher is immutable once built, so it can be used from any thread without locking.
+ */
+class NativeMatcher
+{
+public:
+  // content type bits, the first ones are indexed by FilterEngine.ContentType ordinal
+  enum ContentType
+  {
+    CONTENT_TYPE_OTHER = 1 << 0,
+    CONTENT_TYPE_SCRIPT = 1 << 1,
+    CONTENT_TYPE_IMAGE = 1 << 2,
+    CONTENT_TYPE_STYLESHEET = 1 << 3,
+    CONTENT_TYPE_OBJECT = 1 << 4,
+    CONTENT_TYPE_SUBDOCUMENT = 1 << 5,
+    CONTENT_TYPE_DOCUMENT = 1 << 6,
+    CONTENT_TYPE_XMLHTTPREQUEST = 1 << 7,
+    CONTENT_TYPE_OBJECT_SUBREQUEST = 1 << 8,
+    CONTENT_TYPE_FONT = 1 << 9,
+    CONTENT_TYPE_MEDIA = 1 << 10,
+    CONTENT_TYPE_PING = 1 << 11,
+    CONTENT_TYPE_WEBSOCKET = 1 << 12,
+    CONTENT_TYPE_WEBRTC = 1 << 13,
+    CONTENT_TYPE_POPUP = 1 << 14,
+    CONTENT_TYPE_GENERICBLOCK = 1 << 15,
+    CONTENT_TYPE_GENERICHIDE = 1 << 16,
+    CONTENT_TYPE_ELEMHIDE = 1 << 17
+  };
+
+  struct Filter
+  {
+    std::string text;
+    bool exception;
+    uint32_t contentType;
+    int thirdParty;   // -1 if not specified
+    bool matchCase;
+    bool sitekeys;    // sitekeys are not supported, such filters never match
+
+    // domain -> include, "" is the default (true if there are no included domains)
+    std::unordered_map<std::string, bool> domains;
+
+    bool isRegExp;
+    std::regex regExp;
+
+    enum Anchor
+    {
+      ANCHOR_NONE,
+      ANCHOR_START,  // |
+      ANCHOR_DOMAIN  // ||
+    };
+    Anchor anchor;
+    bool endAnchor;
+    // pattern split by `*`, `^` is a separator placeholder
+    std::vector<std::string> segments;
+  };
+
+  typedef std::shared_ptr<const Filter> FilterPtr;
+
+  /**
+   * @param texts filter texts, invalid filters and element hiding filters are skipped
+   * @param publicSuffixes public suffix -> number of additional labels in the base domain
+   *                       (as in adblockpluscore `publicSuffixes`), if empty the base domain
+   *                       is assumed to be the last two labels
+   */
+  NativeMatcher(const std::vector<std::string>& texts,
+                const std::unordered_map<std::string, int>& publicSuffixes);
+
+  /**
+   * Same as `FilterEngine::Matches`
+   * @param contentTypeMask combination of `ContentType` bits
+   * @return matching filter or null
+   */
+  FilterPtr Matches(const std::string& url, uint32_t contentTypeMask,
+                    const std::vector<std::string>& documentUrls) const;
+
+  /**
+   * Same as `FilterEngine::IsDocumentWhitelisted` (for `CONTENT_TYPE_DOCUMENT`)
+   * and `FilterEngine::IsElemhideWhitelisted` (for `CONTENT_TYPE_ELEMHIDE`)
+   */
+  bool IsGenericallyWhitelisted(const std::string& url,
+                                const std::vector<std::string>& documentUrls,
+                                uint32_t contentTypeMask) const;
+
+  size_t GetFilterCount() const
+  {
+    return filterCount;
+  }
+
+  static std::string ExtractHostFromUrl(const std::string& url);
+
+  // prefilter token kinds (the first char of the token)
+  static const char PREFILTER_KEYWORD = 'k';
+  static const char PREFILTER_SUBSTRING = 's';
+  static const char PREFILTER_DOMAIN = 'd';
+  static const size_t PREFILTER_SUBSTRING_LENGTH = 4;
+
+  /**
+   * Collects the tokens a request must have at least one of to match any blocking filter:
+   * URL keyword (whole [a-z0-9%]{3,} run of the lower case URL), lower case URL substring
+   * of `PREFILTER_SUBSTRING_LENGTH` chars or document domain (including parent domains).
+   * Exception filters are not needed since the request not matching any blocking filter
+   * is allowed anyway.
+   * @param texts filter texts
+   * @param tokens unique tokens prefixed with the token kind
+   * @return false if some blocking filter can't be described with a token
+   */
+  static bool GetPrefilterTokens(const std::vector<std::string>& texts,
+                                 std::vector<std::string>& tokens);
+
+private:
+  typedef std::unordered_map<std::string, std::vector<FilterPtr> > KeywordIndex;
+
+  NativeMatcher(const NativeMatcher& other);
+  NativeMatcher& operator=(const NativeMatcher& other);
+
+  void Add(const FilterPtr& filter, const std::string& keywordSource);
+
+  FilterPtr CheckFilterMatch(const std::string& url, uint32_t contentTypeMask,
+                             const std::string& documentUrl) const;
+
+  bool IsThirdParty(const std::string& requestHost, const std::string& documentHost) const;
+
+  std::string GetBaseDomain(const std::string& host) const;
+
+  KeywordIndex blacklist;
+  KeywordIndex whitelist;
+  std::unordered_map<std::string, int> publicSuffixes;
+  size_t filterCount;
+};
+
+typedef std::shared_ptr<const NativeMatcher> NativeMatcherPtr;
+
+#endif /* NATIVEMATCHER_H */
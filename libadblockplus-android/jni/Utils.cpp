@@ -130,6 +130,24 @@ void JniAddObjectToList(JNIEnv* env, jobject list, jobject value)
   JniAddObjectToList(env, list, addMethod, value);
 }
 
+void JavaStringArrayToStringVector(JNIEnv* env, jobjectArray jArray,
+    std::vector<std::string>& out)
+{
+  if (jArray)
+  {
+    jsize len = env->GetArrayLength(jArray);
+
+    for (jsize i = 0; i < len; i++)
+    {
+      out.push_back(
+          JniJavaToStdString(env,
+              *JniLocalReference<jstring>(env,
+                  static_cast<jstring>(
+                      env->GetObjectArrayElement(jArray, i)))));
+    }
+  }
+}
+
 void JniThrowException(JNIEnv* env, const std::string& message)
 {
   env->ThrowNew(exceptionClass->Get(), message.c_str());
@@ -23,6 +23,7 @@
 #include <jni.h>
 #include <stdexcept>
 #include <memory>
+#include <vector>
 
 #include <AdblockPlus.h>
 
@@ -161,6 +162,9 @@ void JniAddObjectToList(JNIEnv* env, jobject list, jmethodID addMethod, jobject
 
 void JniAddObjectToList(JNIEnv* env, jobject list, jobject value);
 
+void JavaStringArrayToStringVector(JNIEnv* env, jobjectArray jArray,
+    std::vector<std::string>& out);
+
 inline std::string JniGetStringField(JNIEnv* env, jclass clazz, jobject jObj, const char* name)
 {
   return JniJavaToStdString(env, reinterpret_cast<jstring>(env->GetObjectField(jObj, env->GetFieldID(clazz, name, "Ljava/lang/String;"))));
@@ -181,6 +185,11 @@ inline int64_t JniGetLongField(JNIEnv* env, jclass clazz, jobject jObj, const ch
   return (int64_t)env->GetLongField(jObj, env->GetFieldID(clazz, name, "J"));
 }
 
+inline jobject JniGetByteBufferField(JNIEnv* env, jclass clazz, jobject jObj, const char* name)
+{
+  return env->GetObjectField(jObj, env->GetFieldID(clazz, name, "Ljava/nio/ByteBuffer;"));
+}
+
 inline jobjectArray JniGetStringArrayField(JNIEnv* env, jclass clazz, jobject jObj, const char* name)
 {
   return (jobjectArray)env->GetObjectField(jObj, env->GetFieldID(clazz, name, "[Ljava/lang/String;"));
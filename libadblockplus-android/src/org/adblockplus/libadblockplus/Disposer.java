@@ -17,14 +17,29 @@
 
 package org.adblockplus.libadblockplus;
 
+import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public final class Disposer extends WeakReference<Disposable>
 {
   static final ReferenceQueue<Disposable> referenceQueue = new ReferenceQueue<Disposable>();
-  private static final HashSet<Disposer> disposerSet = new HashSet<Disposer>();
+
+  // concurrent set to let JsValue/Filter/Subscription be created and disposed in parallel
+  // without contention on a single global lock
+  private static final Set<Disposer> disposerSet = Collections.newSetFromMap(
+    new ConcurrentHashMap<Disposer, Boolean>(256, 0.75f, Runtime.getRuntime().availableProcessors()));
+
+  private static final AtomicInteger liveCount = new AtomicInteger(0);
+  private static final AtomicLong cleanedCount = new AtomicLong(0);
+  private static volatile int lastCleanBatchSize = 0;
+  private static volatile int maxCleanBatchSize = 0;
+
   private final Disposable disposable;
   private volatile boolean disposed = false;
 
@@ -41,10 +56,8 @@ public final class Disposer extends WeakReference<Disposable>
     super(referent, referenceQueue);
     this.disposable = disposable;
 
-    synchronized (disposerSet)
-    {
-      disposerSet.add(this);
-    }
+    disposerSet.add(this);
+    liveCount.incrementAndGet();
   }
 
   public synchronized void dispose()
@@ -61,13 +74,50 @@ public final class Disposer extends WeakReference<Disposable>
       }
 
       this.disposed = true;
-      synchronized (disposerSet)
-      {
-        disposerSet.remove(this);
-      }
+      disposerSet.remove(this);
+      liveCount.decrementAndGet();
     }
   }
 
+  public boolean isDisposed()
+  {
+    return this.disposed;
+  }
+
+  /**
+   * @return count of native handles that are neither disposed explicitly nor cleaned yet
+   */
+  public static int getLiveCount()
+  {
+    return liveCount.get();
+  }
+
+  /**
+   * @return count of native handles released by the cleaner thread after garbage collection
+   * (not disposed explicitly)
+   */
+  public static long getCleanedCount()
+  {
+    return cleanedCount.get();
+  }
+
+  /**
+   * @return count of garbage collected references drained by the cleaner thread at once lately
+   * (cleaner queue lag)
+   */
+  public static int getLastCleanBatchSize()
+  {
+    return lastCleanBatchSize;
+  }
+
+  /**
+   * @return max count of garbage collected references drained by the cleaner thread at once
+   */
+  public static int getMaxCleanBatchSize()
+  {
+    return maxCleanBatchSize;
+  }
+
   private static final class Cleaner implements Runnable
   {
     public Cleaner()
@@ -75,6 +125,18 @@ public final class Disposer extends WeakReference<Disposable>
       //
     }
 
+    private static boolean clean(final Reference<? extends Disposable> reference)
+    {
+      final Disposer disposer = (Disposer) reference;
+      if (disposer.disposed)
+      {
+        return false;
+      }
+
+      disposer.dispose();
+      return true;
+    }
+
     @Override
     public void run()
     {
@@ -82,7 +144,32 @@ public final class Disposer extends WeakReference<Disposable>
       {
         try
         {
-          ((Disposer) Disposer.referenceQueue.remove()).dispose();
+          // block until something is enqueued and then drain all the queue without blocking
+          Reference<? extends Disposable> reference = Disposer.referenceQueue.remove();
+          int batchSize = 0;
+          while (reference != null)
+          {
+            try
+            {
+              if (clean(reference))
+              {
+                cleanedCount.incrementAndGet();
+              }
+            }
+            catch (final Throwable t)
+            {
+              // ignored
+            }
+
+            batchSize++;
+            reference = Disposer.referenceQueue.poll();
+          }
+
+          lastCleanBatchSize = batchSize;
+          if (batchSize > maxCleanBatchSize)
+          {
+            maxCleanBatchSize = batchSize;
+          }
         }
         catch (final Throwable t)
         {
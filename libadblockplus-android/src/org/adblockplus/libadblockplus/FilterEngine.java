@@ -116,6 +116,28 @@ public final class FilterEngine implements Disposable
     return getElementHidingSelectors(this.ptr, domain);
   }
 
+  /**
+   * Get element hiding selectors applied for any domain.
+   * The selectors are cached natively until the filters are changed
+   * @return generic selectors
+   */
+  public List<String> getGenericElementHidingSelectors()
+  {
+    return getGenericElementHidingSelectors(this.ptr);
+  }
+
+  /**
+   * Get element hiding selectors for the domain except generic ones
+   * (see {@link #getGenericElementHidingSelectors()})
+   * @param domain domain
+   * @return domain-specific selectors or `null` if some generic selectors are not applied
+   * for the domain, in this case {@link #getElementHidingSelectors(String)} should be used
+   */
+  public List<String> getElementHidingSelectorsDelta(final String domain)
+  {
+    return getElementHidingSelectorsDelta(this.ptr, domain);
+  }
+
   public void showNextNotification(final String url)
   {
     showNextNotification(this.ptr, url);
@@ -146,6 +168,112 @@ public final class FilterEngine implements Disposable
     return matches(this.ptr, url, contentType, documentUrls);
   }
 
+  /**
+   * Allocation-free alternative to `matches`: neither `Filter` instance nor its native copy
+   * is created
+   * @param url requested URL
+   * @param contentType content type of the requested URL
+   * @param documentUrls referrer chain
+   * @return {@link MatchVerdict} code combined with {@link MatchVerdict} flags
+   */
+  public int matchVerdict(final String url, final ContentType contentType, final String[] documentUrls)
+  {
+    return matchVerdict(this.ptr, url, contentType.ordinal(), documentUrls);
+  }
+
+  /**
+   * Sets the max number of `matches` results remembered natively (0 to disable the cache, default).
+   * The cache is cleared automatically on any filter or subscription change
+   * @param capacity max number of cached results
+   */
+  public void setMatchesCacheCapacity(final int capacity)
+  {
+    setMatchesCacheCapacity(this.ptr, capacity);
+  }
+
+  public int getMatchesCacheCapacity()
+  {
+    return getMatchesCacheCapacity(this.ptr);
+  }
+
+  /**
+   * @return number of `matches` and `matchVerdict` requests answered from the cache
+   */
+  public long getMatchesCacheHits()
+  {
+    return getMatchesCacheHits(this.ptr);
+  }
+
+  /**
+   * @return number of requests not found in the cache while it's enabled
+   */
+  public long getMatchesCacheMisses()
+  {
+    return getMatchesCacheMisses(this.ptr);
+  }
+
+  public void clearMatchesCache()
+  {
+    clearMatchesCache(this.ptr);
+  }
+
+  /**
+   * Generation is incremented on every change of the filters or subscriptions that can change
+   * matching results (not on hit statistics, saving or download status changes),
+   * so it can be used to invalidate the data derived from the filters
+   * @return current generation
+   */
+  public long getFilterChangeGeneration()
+  {
+    return getFilterChangeGeneration(this.ptr);
+  }
+
+  /**
+   * Get the tokens a request must have at least one of to match any active blocking filter.
+   * Every token starts with its kind:
+   * `k` - URL keyword, whole run of 3 or more [a-z0-9%] chars of the lower case URL;
+   * `s` - substring of 4 chars of the lower case URL;
+   * `d` - domain of the document (or its parent domain).
+   * See {@link org.adblockplus.libadblockplus.android.TokenPrefilter}
+   * @return unique tokens or `null` if some filter can't be described with a token
+   */
+  public List<String> getPrefilterTokens()
+  {
+    return getPrefilterTokens(this.ptr);
+  }
+
+  /**
+   * Fingerprint of the filters the engine matches with: listed subscriptions with their versions,
+   * custom filters and the texts of all the active filters.
+   * Engines loaded with the same filters have equal fingerprints
+   * @return fingerprint
+   */
+  public long getFiltersFingerprint()
+  {
+    return getFiltersFingerprint(this.ptr);
+  }
+
+  /**
+   * Saves cached `matches` results to the file to be loaded after restart
+   * @param path file path
+   * @return `true` if saved
+   */
+  public boolean saveMatchesCache(final String path)
+  {
+    return saveMatchesCache(this.ptr, path);
+  }
+
+  /**
+   * Loads `matches` results saved with `saveMatchesCache`.
+   * The results are ignored if they were saved for different subscriptions or filters
+   * @param path file path
+   * @return `true` if the results are loaded
+   */
+  public boolean loadMatchesCache(final String path)
+  {
+    return loadMatchesCache(this.ptr, path);
+  }
+
   public boolean isDocumentWhitelisted(String url, String[] documentUrls)
   {
     return isDocumentWhitelisted(this.ptr, url, documentUrls);
@@ -256,6 +384,10 @@ public final class FilterEngine implements Disposable
 
   private final static native List<String> getElementHidingSelectors(long ptr, String domain);
 
+  private final static native List<String> getGenericElementHidingSelectors(long ptr);
+
+  private final static native List<String> getElementHidingSelectorsDelta(long ptr, String domain);
+
   private final static native void showNextNotification(long ptr, String url);
 
   private final static native void setShowNotificationCallback(long ptr, long callbackPtr);
@@ -268,6 +400,28 @@ public final class FilterEngine implements Disposable
 
   private final static native Filter matches(long ptr, String url, ContentType contentType, String[] documentUrls);
 
+  private final static native int matchVerdict(long ptr, String url, int contentType, String[] documentUrls);
+
+  private final static native void setMatchesCacheCapacity(long ptr, int capacity);
+
+  private final static native int getMatchesCacheCapacity(long ptr);
+
+  private final static native long getMatchesCacheHits(long ptr);
+
+  private final static native long getMatchesCacheMisses(long ptr);
+
+  private final static native void clearMatchesCache(long ptr);
+
+  private final static native long getFilterChangeGeneration(long ptr);
+
+  private final static native List<String> getPrefilterTokens(long ptr);
+
+  private final static native long getFiltersFingerprint(long ptr);
+
+  private final static native boolean saveMatchesCache(long ptr, String path);
+
+  private final static native boolean loadMatchesCache(long ptr, String path);
+
   private final static native boolean isDocumentWhitelisted(long ptr, String url, String[] documentUrls);
 
   private final static native boolean isElemhideWhitelisted(long ptr, String url, String[] documentUrls);
@@ -21,6 +21,7 @@ public abstract class LogSystem implements Disposable
 {
   private final Disposer disposer;
   protected final long ptr;
+  private volatile LogLevel minLogLevel = LogLevel.TRACE;
 
   static
   {
@@ -41,6 +42,27 @@ public abstract class LogSystem implements Disposable
 
   public abstract void logCallback(LogLevel level, String message, String source);
 
+  /**
+   * Set minimum log level, messages of lower levels are dropped in native code
+   * and `logCallback` is not invoked for them
+   * @param level minimum log level
+   */
+  public void setMinLogLevel(final LogLevel level)
+  {
+    this.minLogLevel = level;
+    setMinLogLevel(this.ptr, level.ordinal());
+  }
+
+  public LogLevel getMinLogLevel()
+  {
+    return this.minLogLevel;
+  }
+
+  public boolean isLoggable(final LogLevel level)
+  {
+    return level.ordinal() >= this.minLogLevel.ordinal();
+  }
+
   @Override
   public void dispose()
   {
@@ -67,5 +89,7 @@ public abstract class LogSystem implements Disposable
 
   private final static native long ctor(Object callbackObject);
 
+  private final static native void setMinLogLevel(long ptr, int level);
+
   private final static native void dtor(long ptr);
 }
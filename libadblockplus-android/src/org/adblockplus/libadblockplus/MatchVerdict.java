@@ -0,0 +1,69 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus;
+
+/**
+ * Verdict codes returned by the primitive (allocation-free) matching methods of {@link FilterEngine}
+ */
+public final class MatchVerdict
+{
+  /**
+   * No filter matched, the request should be allowed
+   */
+  public static final int ALLOW = 0;
+
+  /**
+   * Blocking filter matched
+   */
+  public static final int BLOCK = 1;
+
+  /**
+   * The document is whitelisted, the request should be allowed
+   */
+  public static final int WHITELIST = 2;
+
+  /**
+   * Exception filter matched, the request should be allowed
+   */
+  public static final int EXCEPTION = 3;
+
+  /**
+   * Mask to extract the verdict from a code returned by {@link FilterEngine#matchVerdict}
+   */
+  public static final int VERDICT_MASK = 0xFF;
+
+  /**
+   * Flag set if the matching filter is domain-specific (contains `||`)
+   */
+  public static final int FLAG_DOMAIN_SPECIFIC = 0x100;
+
+  private MatchVerdict()
+  {
+    //
+  }
+
+  public static int getVerdict(final int code)
+  {
+    return code & VERDICT_MASK;
+  }
+
+  public static boolean isDomainSpecific(final int code)
+  {
+    return (code & FLAG_DOMAIN_SPECIFIC) != 0;
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.adblockplus.libadblockplus;
+
+import java.util.List;
+
+/**
+ * Request filter matcher implemented in native code, an alternative to the JS matcher
+ * of {@link FilterEngine} for `matches` and `isDocumentWhitelisted`.
+ * The matcher is a snapshot: it's built from the filters once and is not updated
+ * when the filters are changed. It does not lock JS engine and can be used from any thread.
+ * Element hiding filters and `$sitekey` filters are not supported.
+ */
+public final class NativeMatcher implements Disposable
+{
+  private final Disposer disposer;
+  protected final long ptr;
+
+  static
+  {
+    System.loadLibrary("adblockplus-jni");
+    registerNatives();
+  }
+
+  private NativeMatcher(final long ptr)
+  {
+    this.ptr = ptr;
+    this.disposer = new Disposer(this, new DisposeWrapper(this.ptr));
+  }
+
+  /**
+   * Build the matcher from filter texts
+   * @param filters filter texts, invalid and element hiding filters are skipped
+   */
+  public NativeMatcher(final List<String> filters)
+  {
+    this(ctor(filters.toArray(new String[filters.size()])));
+  }
+
+  /**
+   * Build the matcher from the active filters of the enabled subscriptions
+   * of the FilterEngine running in the JS engine
+   * @param jsEngine JS engine of FilterEngine
+   * @return matcher
+   */
+  public static NativeMatcher fromJsEngine(final JsEngine jsEngine)
+  {
+    return new NativeMatcher(ctorFromJsEngine(jsEngine.ptr));
+  }
+
+  /**
+   * @return number of request filters in the matcher
+   */
+  public int getFilterCount()
+  {
+    return getFilterCount(this.ptr);
+  }
+
+  /**
+   * See {@link FilterEngine#matchVerdict(String, FilterEngine.ContentType, String[])}
+   */
+  public int matchVerdict(final String url, final FilterEngine.ContentType contentType,
+                          final String[] documentUrls)
+  {
+    return matchVerdict(this.ptr, url, contentType.ordinal(), documentUrls);
+  }
+
+  /**
+   * @return text of the matching filter or `null`
+   */
+  public String getMatchingFilter(final String url, final FilterEngine.ContentType contentType,
+                                  final String[] documentUrls)
+  {
+    return getMatchingFilter(this.ptr, url, contentType.ordinal(), documentUrls);
+  }
+
+  public boolean isDocumentWhitelisted(final String url, final String[] documentUrls)
+  {
+    return isDocumentWhitelisted(this.ptr, url, documentUrls);
+  }
+
+  public boolean isElemhideWhitelisted(final String url, final String[] documentUrls)
+  {
+    return isElemhideWhitelisted(this.ptr, url, documentUrls);
+  }
+
+  @Override
+  public void dispose()
+  {
+    this.disposer.dispose();
+  }
+
+  private final static class DisposeWrapper implements Disposable
+  {
+    private final long ptr;
+
+    public DisposeWrapper(final long ptr)
+    {
+      this.ptr = ptr;
+    }
+
+    @Override
+    public void dispose()
+    {
+      dtor(this.ptr);
+    }
+  }
+
+  private final static native void registerNatives();
+
+  private final static native long ctor(String[] filters);
+
+  private final static native long ctorFromJsEngine(long jsEnginePtr);
+
+  private final static native int getFilterCount(long ptr);
+
+  private final static native int matchVerdict(long ptr, String url, int contentType, String[] documentUrls);
+
+  private final static native String getMatchingFilter(long ptr, String url, int contentType, String[] documentUrls);
+
+  private final static native boolean isDocumentWhitelisted(long ptr, String url, String[] documentUrls);
+
+  private final static native boolean isElemhideWhitelisted(long ptr, String url, String[] documentUrls);
+
+  private final static native void dtor(long ptr);
+}
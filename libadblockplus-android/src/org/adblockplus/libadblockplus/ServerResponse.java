@@ -17,6 +17,8 @@
 
 package org.adblockplus.libadblockplus;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -61,9 +63,10 @@ public final class ServerResponse
   private long status = NsStatus.OK.getStatusCode();
   private int responseStatus = 400;
   private String[] headers = null;
-  // TODO: This (and the whole downloading) is a waste of memory, change String
-  // to something more suitable
+  // either `response` or `responseBuffer` is set,
+  // direct `responseBuffer` is passed to native code without intermediate copies
   private String response = null;
+  private ByteBuffer responseBuffer = null;
 
   public NsStatus getStatus()
   {
@@ -87,12 +90,52 @@ public final class ServerResponse
 
   public String getResponse()
   {
+    if (this.response == null && this.responseBuffer != null)
+    {
+      return Charset.forName("UTF-8").decode(this.responseBuffer.duplicate()).toString();
+    }
     return this.response;
   }
 
   public void setResponse(final String response)
   {
     this.response = response;
+    this.responseBuffer = null;
+  }
+
+  /**
+   * Read-only view of the response set with `setResponse(ByteBuffer)`
+   * @return response bytes or `null`
+   */
+  public ByteBuffer getResponseBuffer()
+  {
+    return this.responseBuffer != null ? this.responseBuffer.asReadOnlyBuffer() : null;
+  }
+
+  /**
+   * Sets UTF-8 encoded response as the bytes between buffer position and limit.
+   * Prefer direct buffers as they're read by native code in place, non-direct buffers are copied
+   * @param response response bytes
+   */
+  public void setResponse(final ByteBuffer response)
+  {
+    this.response = null;
+
+    if (response == null)
+    {
+      this.responseBuffer = null;
+    }
+    else if (response.isDirect())
+    {
+      // native code reads the buffer from the address to the capacity
+      this.responseBuffer = response.slice();
+    }
+    else
+    {
+      this.responseBuffer = ByteBuffer.allocateDirect(response.remaining());
+      this.responseBuffer.put(response.duplicate());
+      this.responseBuffer.flip();
+    }
   }
 
   public List<HeaderEntry> getResponseHeaders()
@@ -17,17 +17,22 @@
 
 package org.adblockplus.libadblockplus.android;
 
+import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.adblockplus.libadblockplus.AppInfo;
-import org.adblockplus.libadblockplus.Filter;
 import org.adblockplus.libadblockplus.FilterChangeCallback;
 import org.adblockplus.libadblockplus.FilterEngine;
 import org.adblockplus.libadblockplus.FilterEngine.ContentType;
@@ -35,6 +40,8 @@ import org.adblockplus.libadblockplus.IsAllowedConnectionCallback;
 import org.adblockplus.libadblockplus.JsEngine;
 import org.adblockplus.libadblockplus.JsValue;
 import org.adblockplus.libadblockplus.LogSystem;
+import org.adblockplus.libadblockplus.MatchVerdict;
+import org.adblockplus.libadblockplus.NativeMatcher;
 import org.adblockplus.libadblockplus.ShowNotificationCallback;
 import org.adblockplus.libadblockplus.Subscription;
 import org.adblockplus.libadblockplus.UpdateAvailableCallback;
@@ -54,6 +61,18 @@ public final class AdblockEngine
   // default base path to store subscription files in android app
   public static final String BASE_PATH_DIRECTORY = "adblock";
 
+  // default max number of remembered `FilterEngine.matches` results
+  public static final int DEFAULT_MATCHES_CACHE_CAPACITY = 1000;
+
+  // directory in base path to store HTTP validators and subscription bodies in
+  public static final String VALIDATOR_CACHE_DIRECTORY = "validators";
+
+  // file in base path to save `matches` results in between the launches
+  public static final String MATCHES_SNAPSHOT_FILE = "matches.snapshot";
+
+  // max time to wait for the running token prefilter build on dispose
+  public static final long SHUTDOWN_TIMEOUT_MILLIS = 10 * 1000;
+
   private static final String TAG = Utils.getTag(AdblockEngine.class);
 
   /*
@@ -78,6 +97,18 @@ public final class AdblockEngine
   private volatile boolean elemhideEnabled;
   private volatile boolean enabled = true;
   private volatile List<String> whitelistedDomains;
+  private volatile DomainTrie whitelistedDomainsTrie = DomainTrie.EMPTY;
+  private volatile String matchesSnapshotPath;
+  private volatile ElementHidingStylesheetCache elemhideStylesheetCache;
+  private volatile ElementHidingExecutor elemhideExecutor;
+  private volatile HostExtractor hostExtractor;
+  private volatile EngineMetrics metrics;
+  private volatile FilterEngineDispatcher dispatcher;
+  private volatile FilterEngineReplicas replicas;
+  private volatile NativeMatcherProvider nativeMatcher;
+  private volatile TokenPrefilter tokenPrefilter;
+  private volatile ExecutorService tokenPrefilterExecutor;
+  private final AtomicBoolean tokenPrefilterRebuildScheduled = new AtomicBoolean();
 
   public static AppInfo generateAppInfo(final Context context, boolean developmentBuild,
                                         String application, String applicationVersion)
@@ -121,6 +152,35 @@ public final class AdblockEngine
     }
   }
 
+  /**
+   * Listener for `Builder.buildAsync()` stages
+   */
+  public interface BuildListener
+  {
+    /**
+     * JS engine is created
+     */
+    void onJsEngineReady();
+
+    /**
+     * Filters are loaded, `matches` and the other filtering methods can be used
+     * @param engine adblock engine
+     */
+    void onFiltersReady(AdblockEngine engine);
+
+    /**
+     * Everything is ready including element hiding, this is the last stage
+     * @param engine adblock engine
+     */
+    void onElemhideReady(AdblockEngine engine);
+
+    /**
+     * Failed to build the engine, it's disposed already
+     * @param t error
+     */
+    void onError(Throwable t);
+  }
+
   /**
    * Builds Adblock engine
    */
@@ -133,6 +193,12 @@ public final class AdblockEngine
     private AppInfo appInfo;
     private String basePath;
     private IsAllowedConnectionCallback isAllowedConnectionCallback;
+    private int matchesCacheCapacity = DEFAULT_MATCHES_CACHE_CAPACITY;
+    private boolean useEngineThread;
+    private int matcherReplicas;
+    private boolean useNativeMatcher;
+    private boolean useTokenPrefilter;
+    private LogSystem.LogLevel minLogLevel;
 
     private AdblockEngine engine;
 
@@ -193,9 +259,83 @@ public final class AdblockEngine
       return this;
     }
 
+    /**
+     * @param capacity max number of remembered `matches` results (0 to disable the cache)
+     */
+    public Builder setMatchesCacheCapacity(int capacity)
+    {
+      this.matchesCacheCapacity = capacity;
+      return this;
+    }
+
+    /**
+     * Execute all the JS engine work of AdblockEngine (`matches`, whitelisting checks,
+     * element hiding stylesheets, subscriptions and settings, background rebuilds of
+     * the derived matchers) on one engine-owned thread instead of the calling threads.
+     * Direct calls of {@link #getFilterEngine()} are not routed
+     * @param useEngineThread `true` to use {@link EngineThread}
+     */
+    public Builder useEngineThread(boolean useEngineThread)
+    {
+      this.useEngineThread = useEngineThread;
+      return this;
+    }
+
+    /**
+     * Keep read-only FilterEngine replicas for parallel `matches` on several cores.
+     * Every replica is a separate JS engine with its own copy of the filters in memory.
+     * Requires base path
+     * @param count replicas count (0 to disable)
+     */
+    public Builder setMatcherReplicas(int count)
+    {
+      this.matcherReplicas = count;
+      return this;
+    }
+
+    /**
+     * Use {@link org.adblockplus.libadblockplus.NativeMatcher} for `matches` and
+     * `isDocumentWhitelisted` when it's built for the current filters
+     * (JS matcher is used meanwhile)
+     * @param useNativeMatcher `true` to use {@link NativeMatcherProvider}
+     */
+    public Builder useNativeMatcher(boolean useNativeMatcher)
+    {
+      this.useNativeMatcher = useNativeMatcher;
+      return this;
+    }
+
+    /**
+     * Check {@link TokenPrefilter} in Java before `matches` goes to native code,
+     * the requests which can't match any blocking filter are allowed without FilterEngine.
+     * The prefilter is rebuilt in background when the filters are changed
+     * @param useTokenPrefilter `true` to use the prefilter
+     */
+    public Builder useTokenPrefilter(boolean useTokenPrefilter)
+    {
+      this.useTokenPrefilter = useTokenPrefilter;
+      return this;
+    }
+
+    /**
+     * Messages of lower levels are dropped in native code without calling Java.
+     * Default is {@link AndroidLogSystem#getDefaultMinLogLevel()}
+     * @param minLogLevel minimum log level of JS engine messages
+     */
+    public Builder setMinLogLevel(LogSystem.LogLevel minLogLevel)
+    {
+      this.minLogLevel = minLogLevel;
+      return this;
+    }
+
     private void initRequests()
     {
       androidWebRequest = new AndroidWebRequest(engine.elemhideEnabled, true);
+      if (basePath != null)
+      {
+        androidWebRequest.setValidatorCache(
+          new ValidatorCache(new File(basePath, VALIDATOR_CACHE_DIRECTORY)));
+      }
       engine.webRequest = androidWebRequest;
 
       if (urlToResourceIdMap != null)
@@ -242,7 +382,8 @@ public final class AdblockEngine
       initRequests();
 
       // webRequest should be ready to be used passed right after JsEngine is created
-      createEngines();
+      createJsEngine();
+      createFilterEngine();
 
       initCallbacks();
 
@@ -251,17 +392,108 @@ public final class AdblockEngine
       return engine;
     }
 
-    private void createEngines()
+    /**
+     * Build the engine without locking current thread.
+     * The engine can be used for request blocking since `onFiltersReady` is invoked
+     * @param executor executor to build the engine in
+     * @param listener build stages listener, invoked in executor thread
+     */
+    public void buildAsync(final Executor executor, final BuildListener listener)
+    {
+      executor.execute(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          try
+          {
+            initRequests();
+
+            createJsEngine();
+            listener.onJsEngineReady();
+
+            createFilterEngine();
+            initCallbacks();
+            listener.onFiltersReady(engine);
+
+            androidWebRequest.updateSubscriptionURLs(engine.filterEngine);
+            listener.onElemhideReady(engine);
+          }
+          catch (Throwable t)
+          {
+            Log.e(TAG, "Failed to build adblock engine", t);
+            engine.dispose();
+            listener.onError(t);
+          }
+        }
+      });
+    }
+
+    private void createJsEngine()
     {
       engine.jsEngine = new JsEngine(appInfo);
       engine.jsEngine.setDefaultFileSystem(basePath);
 
       engine.jsEngine.setWebRequest(engine.webRequest);
 
-      engine.logSystem = new AndroidLogSystem();
+      engine.logSystem = new AndroidLogSystem(minLogLevel != null
+        ? minLogLevel
+        : AndroidLogSystem.getDefaultMinLogLevel());
       engine.jsEngine.setLogSystem(engine.logSystem);
+    }
 
+    private void createFilterEngine()
+    {
+      // filters are loaded when FilterEngine is created
       engine.filterEngine = new FilterEngine(engine.jsEngine, isAllowedConnectionCallback);
+      engine.filterEngine.setMatchesCacheCapacity(matchesCacheCapacity);
+
+      // the components below are calling the engine on the engine thread if it's used
+      final EngineThread engineThread = (useEngineThread ? new EngineThread() : null);
+      if (engineThread != null)
+      {
+        engine.dispatcher = new FilterEngineDispatcher(engine.filterEngine, engineThread);
+        engine.elemhideStylesheetCache = new ElementHidingStylesheetCache(
+          engine.dispatcher, ElementHidingStylesheetCache.DEFAULT_CAPACITY);
+      }
+      else
+      {
+        engine.elemhideStylesheetCache = new ElementHidingStylesheetCache(
+          engine.filterEngine, ElementHidingStylesheetCache.DEFAULT_CAPACITY);
+      }
+      engine.elemhideExecutor = new ElementHidingExecutor(engine, ElementHidingExecutor.DEFAULT_THREADS);
+      engine.hostExtractor = (engineThread != null
+        ? new HostExtractor(engine.dispatcher, HostExtractor.DEFAULT_CAPACITY)
+        : new HostExtractor(engine.filterEngine, HostExtractor.DEFAULT_CAPACITY));
+      if (basePath != null && matcherReplicas > 0)
+      {
+        engine.replicas = new FilterEngineReplicas(
+          appInfo, basePath, engine.filterEngine, engineThread, matcherReplicas);
+      }
+      if (useTokenPrefilter)
+      {
+        engine.tokenPrefilterExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+          @Override
+          public Thread newThread(Runnable runnable)
+          {
+            Thread thread = new Thread(runnable, "TokenPrefilter");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+      }
+      if (useNativeMatcher)
+      {
+        engine.nativeMatcher = new NativeMatcherProvider(engine.jsEngine, engine.filterEngine, engineThread);
+      }
+
+      if (basePath != null && matchesCacheCapacity > 0)
+      {
+        engine.matchesSnapshotPath = new File(basePath, MATCHES_SNAPSHOT_FILE).getAbsolutePath();
+        boolean loaded = engine.filterEngine.loadMatchesCache(engine.matchesSnapshotPath);
+        Log.d(TAG, "Matches snapshot " + (loaded ? "loaded" : "is missing or stale"));
+      }
     }
   }
 
@@ -270,13 +502,82 @@ public final class AdblockEngine
     return new Builder(appInfo, basePath);
   }
 
+  /**
+   * Saves cached `matches` results to make them available right after the next launch.
+   * Invoked automatically on `dispose()`
+   * @return `true` if saved
+   */
+  public boolean saveMatchesSnapshot()
+  {
+    final String path = this.matchesSnapshotPath;
+    return path != null && callEngine(new Callable<Boolean>()
+    {
+      @Override
+      public Boolean call()
+      {
+        return filterEngine.saveMatchesCache(path);
+      }
+    });
+  }
+
+  // JS engine work is executed on the engine thread if it's used (see Builder#useEngineThread)
+  private <T> T callEngine(final Callable<T> callable)
+  {
+    final FilterEngineDispatcher dispatcher = this.dispatcher;
+    return EngineThread.call(dispatcher != null ? dispatcher.getEngineThread() : null, callable);
+  }
+
   public void dispose()
   {
     Log.w(TAG, "Dispose");
 
+    // running element hiding task is using the engines
+    if (this.elemhideExecutor != null)
+    {
+      this.elemhideExecutor.shutdown();
+      this.elemhideExecutor = null;
+    }
+
+    // replicas and native matcher are rebuilt from the primary engine
+    if (this.replicas != null)
+    {
+      this.replicas.dispose();
+      this.replicas = null;
+    }
+
+    if (this.nativeMatcher != null)
+    {
+      this.nativeMatcher.dispose();
+      this.nativeMatcher = null;
+    }
+
+    if (this.tokenPrefilterExecutor != null)
+    {
+      this.tokenPrefilterExecutor.shutdownNow();
+      try
+      {
+        this.tokenPrefilterExecutor.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+      this.tokenPrefilterExecutor = null;
+      this.tokenPrefilter = null;
+    }
+
+    // enqueued tasks are using the engines
+    if (this.dispatcher != null)
+    {
+      this.dispatcher.getEngineThread().shutdown();
+      this.dispatcher = null;
+    }
+
     // engines first
     if (this.filterEngine != null)
     {
+      saveMatchesSnapshot();
+
       if (this.updateAvailableCallback != null)
       {
         this.filterEngine.removeUpdateAvailableCallback();
@@ -336,7 +637,14 @@ public final class AdblockEngine
 
   public boolean isFirstRun()
   {
-    return this.filterEngine.isFirstRun();
+    return callEngine(new Callable<Boolean>()
+    {
+      @Override
+      public Boolean call()
+      {
+        return filterEngine.isFirstRun();
+      }
+    });
   }
 
   public boolean isElemhideEnabled()
@@ -386,39 +694,47 @@ public final class AdblockEngine
     return subscriptions;
   }
 
-  public org.adblockplus.libadblockplus.android.Subscription[] getRecommendedSubscriptions()
+  private static org.adblockplus.libadblockplus.android.Subscription[] convertAndDisposeJsSubscriptions(
+    final List<Subscription> jsSubscriptions)
   {
-    List<Subscription> subscriptions = this.filterEngine.fetchAvailableSubscriptions();
     try
     {
-      return convertJsSubscriptions(subscriptions);
+      return convertJsSubscriptions(jsSubscriptions);
     }
     finally
     {
-      for (Subscription eachSubscription : subscriptions)
+      for (Subscription eachSubscription : jsSubscriptions)
       {
         eachSubscription.dispose();
       }
     }
   }
 
-  public org.adblockplus.libadblockplus.android.Subscription[] getListedSubscriptions()
+  public org.adblockplus.libadblockplus.android.Subscription[] getRecommendedSubscriptions()
   {
-    List<Subscription> subscriptions = this.filterEngine.getListedSubscriptions();
-    try
+    return callEngine(new Callable<org.adblockplus.libadblockplus.android.Subscription[]>()
     {
-      return convertJsSubscriptions(subscriptions);
-    }
-    finally
+      @Override
+      public org.adblockplus.libadblockplus.android.Subscription[] call()
+      {
+        return convertAndDisposeJsSubscriptions(filterEngine.fetchAvailableSubscriptions());
+      }
+    });
+  }
+
+  public org.adblockplus.libadblockplus.android.Subscription[] getListedSubscriptions()
+  {
+    return callEngine(new Callable<org.adblockplus.libadblockplus.android.Subscription[]>()
     {
-      for (Subscription eachSubscription : subscriptions)
+      @Override
+      public org.adblockplus.libadblockplus.android.Subscription[] call()
       {
-        eachSubscription.dispose();
+        return convertAndDisposeJsSubscriptions(filterEngine.getListedSubscriptions());
       }
-    }
+    });
   }
 
-  public void clearSubscriptions()
+  private void clearSubscriptionsOnEngine()
   {
     for (final Subscription s : this.filterEngine.getListedSubscriptions())
     {
@@ -433,10 +749,8 @@ public final class AdblockEngine
     }
   }
 
-  public void setSubscription(final String url)
+  private void addSubscriptionOnEngine(final String url)
   {
-    clearSubscriptions();
-
     final Subscription sub = this.filterEngine.getSubscription(url);
     if (sub != null)
     {
@@ -451,25 +765,48 @@ public final class AdblockEngine
     }
   }
 
-  public void setSubscriptions(Collection<String> urls)
+  public void clearSubscriptions()
+  {
+    callEngine(new Callable<Void>()
+    {
+      @Override
+      public Void call()
+      {
+        clearSubscriptionsOnEngine();
+        return null;
+      }
+    });
+  }
+
+  public void setSubscription(final String url)
   {
-    clearSubscriptions();
+    callEngine(new Callable<Void>()
+    {
+      @Override
+      public Void call()
+      {
+        clearSubscriptionsOnEngine();
+        addSubscriptionOnEngine(url);
+        return null;
+      }
+    });
+  }
 
-    for (String eachUrl : urls)
+  public void setSubscriptions(final Collection<String> urls)
+  {
+    callEngine(new Callable<Void>()
     {
-      final Subscription sub = this.filterEngine.getSubscription(eachUrl);
-      if (sub != null)
+      @Override
+      public Void call()
       {
-        try
+        clearSubscriptionsOnEngine();
+        for (String eachUrl : urls)
         {
-          sub.addToList();
-        }
-        finally
-        {
-          sub.dispose();
+          addSubscriptionOnEngine(eachUrl);
         }
+        return null;
       }
-    }
+    });
   }
 
   public void setEnabled(final boolean enabled)
@@ -484,30 +821,59 @@ public final class AdblockEngine
 
   public String getAcceptableAdsSubscriptionURL()
   {
-    return filterEngine.getAcceptableAdsSubscriptionURL();
+    return callEngine(new Callable<String>()
+    {
+      @Override
+      public String call()
+      {
+        return filterEngine.getAcceptableAdsSubscriptionURL();
+      }
+    });
   }
 
   public boolean isAcceptableAdsEnabled()
   {
-    return filterEngine.isAcceptableAdsEnabled();
+    return callEngine(new Callable<Boolean>()
+    {
+      @Override
+      public Boolean call()
+      {
+        return filterEngine.isAcceptableAdsEnabled();
+      }
+    });
   }
 
   public void setAcceptableAdsEnabled(final boolean enabled)
   {
-    filterEngine.setAcceptableAdsEnabled(enabled);
+    callEngine(new Callable<Void>()
+    {
+      @Override
+      public Void call()
+      {
+        filterEngine.setAcceptableAdsEnabled(enabled);
+        return null;
+      }
+    });
   }
 
   public String getDocumentationLink()
   {
-    JsValue jsPref = this.filterEngine.getPref("documentation_link");
-    try
-    {
-      return jsPref.toString();
-    }
-    finally
+    return callEngine(new Callable<String>()
     {
-      jsPref.dispose();
-    }
+      @Override
+      public String call()
+      {
+        JsValue jsPref = filterEngine.getPref("documentation_link");
+        try
+        {
+          return jsPref.toString();
+        }
+        finally
+        {
+          jsPref.dispose();
+        }
+      }
+    });
   }
 
   public boolean matches(final String fullUrl, final ContentType contentType, final String[] referrerChainArray)
@@ -517,79 +883,198 @@ public final class AdblockEngine
       return false;
     }
 
-    final Filter filter = this.filterEngine.matches(fullUrl, contentType, referrerChainArray);
+    final EngineMetrics metrics = this.metrics;
+    final long started = (metrics != null ? System.nanoTime() : 0);
+    // approximate if called concurrently
+    final long fallbacks = (metrics != null ? this.hostExtractor.getFallbacks() : 0);
+    int jniCalls = 0;
 
-    if (filter == null)
+    final ExecutorService tokenPrefilterExecutor = this.tokenPrefilterExecutor;
+    TokenPrefilter prefilter = null;
+    if (tokenPrefilterExecutor != null)
     {
-      return false;
+      prefilter = getUpToDateTokenPrefilter(tokenPrefilterExecutor);
+      jniCalls++;
     }
+    final boolean prefiltered = (prefilter != null
+      && !prefilter.mayMatch(fullUrl, referrerChainArray, this.hostExtractor));
 
-    try
+    final NativeMatcherProvider nativeMatcher = this.nativeMatcher;
+    FilterSnapshotHolder.Reference<NativeMatcher> nativeMatcherReference = null;
+    if (!prefiltered && nativeMatcher != null)
+    {
+      nativeMatcherReference = nativeMatcher.acquire();
+      jniCalls++;
+    }
+    final FilterEngineReplicas replicas = this.replicas;
+    final FilterEngineDispatcher dispatcher = this.dispatcher;
+    final int verdict;
+    if (prefiltered)
+    {
+      verdict = MatchVerdict.ALLOW;
+    }
+    else if (nativeMatcherReference != null)
     {
-      // hack: if there is no referrer, block only if filter is domain-specific
-      // (to re-enable in-app ads blocking, proposed on 12.11.2012 Monday meeting)
-      // (documentUrls contains the referrers on Android)
       try
       {
-        JsValue jsText = filter.getProperty("text");
-        try
-        {
-          if (referrerChainArray.length == 0 && (jsText.toString()).contains("||"))
-          {
-            return false;
-          }
-        }
-        finally
-        {
-          jsText.dispose();
-        }
+        verdict = nativeMatcherReference.get().matchVerdict(fullUrl, contentType, referrerChainArray);
+        jniCalls++;
       }
-      catch (NullPointerException e)
+      finally
       {
+        nativeMatcherReference.release();
       }
+    }
+    else if (replicas != null)
+    {
+      verdict = replicas.matchVerdict(fullUrl, contentType, referrerChainArray);
+      jniCalls += FilterEngineReplicas.MATCH_VERDICT_JNI_CALLS;
+    }
+    else if (dispatcher != null)
+    {
+      verdict = dispatcher.matchVerdict(fullUrl, contentType, referrerChainArray);
+      jniCalls++;
+    }
+    else
+    {
+      verdict = this.filterEngine.matchVerdict(fullUrl, contentType, referrerChainArray);
+      jniCalls++;
+    }
 
-      return filter.getType() != Filter.Type.EXCEPTION;
+    if (metrics != null)
+    {
+      // prefilter falls back to JS for the URLs it can't parse
+      jniCalls += (int) (this.hostExtractor.getFallbacks() - fallbacks);
+      metrics.recordCall(EngineMetrics.Call.MATCHES, started, jniCalls);
+      metrics.recordVerdict(contentType, verdict);
     }
-    finally
+
+    if (MatchVerdict.getVerdict(verdict) != MatchVerdict.BLOCK)
     {
-      filter.dispose();
+      return false;
     }
+
+    // hack: if there is no referrer, block only if filter is domain-specific
+    // (to re-enable in-app ads blocking, proposed on 12.11.2012 Monday meeting)
+    // (documentUrls contains the referrers on Android)
+    return !(referrerChainArray != null
+      && referrerChainArray.length == 0
+      && MatchVerdict.isDomainSpecific(verdict));
   }
 
   public boolean isDocumentWhitelisted(final String url, final String[] referrerChainArray)
   {
-    return this.filterEngine.isDocumentWhitelisted(url, referrerChainArray);
+    final EngineMetrics metrics = this.metrics;
+    final long started = (metrics != null ? System.nanoTime() : 0);
+
+    int jniCalls = 0;
+
+    final NativeMatcherProvider nativeMatcher = this.nativeMatcher;
+    FilterSnapshotHolder.Reference<NativeMatcher> nativeMatcherReference = null;
+    if (nativeMatcher != null)
+    {
+      nativeMatcherReference = nativeMatcher.acquire();
+      jniCalls++;
+    }
+    final FilterEngineDispatcher dispatcher = this.dispatcher;
+    final boolean whitelisted;
+    if (nativeMatcherReference != null)
+    {
+      try
+      {
+        whitelisted = nativeMatcherReference.get().isDocumentWhitelisted(url, referrerChainArray);
+      }
+      finally
+      {
+        nativeMatcherReference.release();
+      }
+    }
+    else
+    {
+      whitelisted = (dispatcher != null
+        ? dispatcher.isDocumentWhitelisted(url, referrerChainArray)
+        : this.filterEngine.isDocumentWhitelisted(url, referrerChainArray));
+    }
+    jniCalls++;
+
+    if (metrics != null)
+    {
+      metrics.recordCall(EngineMetrics.Call.IS_DOCUMENT_WHITELISTED, started, jniCalls);
+    }
+    return whitelisted;
   }
 
   public boolean isDomainWhitelisted(final String url, final String[] referrerChainArray)
   {
-    if (whitelistedDomains == null)
+    // trie is replaced entirely, so the same instance is used for all the urls
+    final DomainTrie domains = this.whitelistedDomainsTrie;
+    if (domains.size() == 0)
     {
       return false;
     }
 
-    // using Set to remove duplicates
-    Set<String> referrersAndResourceUrls = new HashSet<String>();
-    if (referrerChainArray != null)
+    if (domains.matches(hostExtractor.getHost(url)))
     {
-      referrersAndResourceUrls.addAll(Arrays.asList(referrerChainArray));
+      return true;
     }
-    referrersAndResourceUrls.add(url);
 
-    for (String eachUrl : referrersAndResourceUrls)
+    if (referrerChainArray != null)
     {
-      if (whitelistedDomains.contains(filterEngine.getHostFromURL(eachUrl)))
+      for (String eachUrl : referrerChainArray)
       {
-        return true;
+        if (domains.matches(hostExtractor.getHost(eachUrl)))
+        {
+          return true;
+        }
       }
     }
 
     return false;
   }
 
+  /**
+   * Get host from URL, the same as {@link FilterEngine#getHostFromURL(String)}
+   * but parsed in Java for plain URLs and cached
+   * @param url URL
+   * @return host
+   */
+  public String getHostFromURL(final String url)
+  {
+    final EngineMetrics metrics = this.metrics;
+    if (metrics == null)
+    {
+      return this.hostExtractor.getHost(url);
+    }
+
+    final long started = System.nanoTime();
+    // approximate if called concurrently
+    final long fallbacks = this.hostExtractor.getFallbacks();
+    final String host = this.hostExtractor.getHost(url);
+    metrics.recordCall(EngineMetrics.Call.GET_HOST_FROM_URL, started,
+      (int) (this.hostExtractor.getFallbacks() - fallbacks));
+    return host;
+  }
+
+  public HostExtractor getHostExtractor()
+  {
+    return this.hostExtractor;
+  }
+
   public boolean isElemhideWhitelisted(final String url, final String[] referrerChainArray)
   {
-    return this.filterEngine.isElemhideWhitelisted(url, referrerChainArray);
+    final EngineMetrics metrics = this.metrics;
+    final long started = (metrics != null ? System.nanoTime() : 0);
+
+    final FilterEngineDispatcher dispatcher = this.dispatcher;
+    final boolean whitelisted = (dispatcher != null
+      ? dispatcher.isElemhideWhitelisted(url, referrerChainArray)
+      : this.filterEngine.isElemhideWhitelisted(url, referrerChainArray));
+
+    if (metrics != null)
+    {
+      metrics.recordCall(EngineMetrics.Call.IS_ELEMHIDE_WHITELISTED, started, 1);
+    }
+    return whitelisted;
   }
 
   public List<String> getElementHidingSelectors(final String url, final String domain, final String[] referrerChainArray)
@@ -608,20 +1093,199 @@ public final class AdblockEngine
      * the given URL and returns an empty list if so. This is needed to
      * ensure correct functioning of e.g. acceptable ads.
      */
-    if (!this.enabled
-        || !this.elemhideEnabled
-        || this.isDomainWhitelisted(url, referrerChainArray)
-        || this.isDocumentWhitelisted(url, referrerChainArray)
-        || this.isElemhideWhitelisted(url, referrerChainArray))
+    final EngineMetrics metrics = this.metrics;
+    final long started = (metrics != null ? System.nanoTime() : 0);
+
+    final List<String> selectors;
+    int jniCalls = 0;
+    if (!isElemhideApplicable(url, referrerChainArray))
     {
-      return new ArrayList<String>();
+      selectors = new ArrayList<String>();
     }
-    return this.filterEngine.getElementHidingSelectors(domain);
+    else
+    {
+      final FilterEngineDispatcher dispatcher = this.dispatcher;
+      selectors = (dispatcher != null
+        ? dispatcher.getElementHidingSelectors(domain)
+        : this.filterEngine.getElementHidingSelectors(domain));
+      jniCalls++;
+    }
+
+    if (metrics != null)
+    {
+      metrics.recordCall(EngineMetrics.Call.GET_ELEMENT_HIDING_SELECTORS, started, jniCalls);
+    }
+    return selectors;
+  }
+
+  /**
+   * Get ready-to-inject element hiding stylesheet.
+   * Generic stylesheet is shared by all the domains and only domain-specific
+   * selectors are cached per domain until the filters are changed
+   * @param url document URL
+   * @param domain document domain
+   * @param referrerChainArray referrers chain
+   * @return stylesheet or empty string
+   */
+  public String getElementHidingStylesheet(final String url, final String domain, final String[] referrerChainArray)
+  {
+    // whitelisting depends on URL, so it's not cached
+    if (!isElemhideApplicable(url, referrerChainArray))
+    {
+      return "";
+    }
+    return this.elemhideStylesheetCache.get(domain);
+  }
+
+  /**
+   * Get element hiding stylesheet in background.
+   * Requests for the same domain are coalesced and executed in the shared bounded executor
+   * @param url document URL
+   * @param domain document domain
+   * @param referrerChainArray referrers chain
+   * @param callback callback to be invoked in background thread
+   * @return request to cancel if the stylesheet is not needed anymore
+   */
+  public ElementHidingExecutor.Request getElementHidingStylesheetAsync(
+    final String url, final String domain, final String[] referrerChainArray,
+    final ElementHidingExecutor.Callback callback)
+  {
+    return this.elemhideExecutor.submit(url, domain, referrerChainArray, callback);
+  }
+
+  public ElementHidingExecutor getElementHidingExecutor()
+  {
+    return this.elemhideExecutor;
+  }
+
+  private boolean isElemhideApplicable(final String url, final String[] referrerChainArray)
+  {
+    return this.enabled
+      && this.elemhideEnabled
+      && !this.isDomainWhitelisted(url, referrerChainArray)
+      && !this.isDocumentWhitelisted(url, referrerChainArray)
+      && !this.isElemhideWhitelisted(url, referrerChainArray);
   }
 
   public void checkForUpdates()
   {
-    this.filterEngine.forceUpdateCheck(this.updateCheckDoneCallback);
+    callEngine(new Callable<Void>()
+    {
+      @Override
+      public Void call()
+      {
+        filterEngine.forceUpdateCheck(updateCheckDoneCallback);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Enable or disable hot path metrics.
+   * When disabled (by default) the cost is one volatile read per call
+   * @param metrics metrics to record to or `null` to disable
+   */
+  public void setMetrics(final EngineMetrics metrics)
+  {
+    this.metrics = metrics;
+  }
+
+  public EngineMetrics getMetrics()
+  {
+    return this.metrics;
+  }
+
+  /**
+   * @return dispatcher to the engine thread or `null` if not used
+   * (see {@link Builder#useEngineThread(boolean)})
+   */
+  public FilterEngineDispatcher getDispatcher()
+  {
+    return this.dispatcher;
+  }
+
+  /**
+   * @return matcher replicas or `null` if not used
+   * (see {@link Builder#setMatcherReplicas(int)})
+   */
+  public FilterEngineReplicas getReplicas()
+  {
+    return this.replicas;
+  }
+
+  /**
+   * Makes exactly one JNI call (filter change generation)
+   * @param executor token prefilter executor
+   * @return prefilter built for the current filters or `null` if not built yet
+   * (the rebuild is scheduled then)
+   */
+  private TokenPrefilter getUpToDateTokenPrefilter(final ExecutorService executor)
+  {
+    final long generation = this.filterEngine.getFilterChangeGeneration();
+    final TokenPrefilter prefilter = this.tokenPrefilter;
+    if (prefilter != null && prefilter.getGeneration() == generation)
+    {
+      return prefilter;
+    }
+
+    if (tokenPrefilterRebuildScheduled.compareAndSet(false, true))
+    {
+      try
+      {
+        executor.execute(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            tokenPrefilterRebuildScheduled.set(false);
+            try
+            {
+              final TokenPrefilter rebuilt = callEngine(new Callable<TokenPrefilter>()
+              {
+                @Override
+                public TokenPrefilter call()
+                {
+                  return TokenPrefilter.build(filterEngine);
+                }
+              });
+              tokenPrefilter = rebuilt;
+              Log.d(TAG, "Token prefilter " + (rebuilt.isEnabled()
+                ? "built with " + rebuilt.getTokenCount() + " tokens"
+                : "is disabled: some filters can't be prefiltered")
+                + " for generation " + rebuilt.getGeneration());
+            }
+            catch (Throwable t)
+            {
+              Log.e(TAG, "Failed to build token prefilter", t);
+            }
+          }
+        });
+      }
+      catch (RejectedExecutionException e)
+      {
+        // disposed
+        tokenPrefilterRebuildScheduled.set(false);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the last built token prefilter or `null`
+   * (see {@link Builder#useTokenPrefilter(boolean)})
+   */
+  public TokenPrefilter getTokenPrefilter()
+  {
+    return this.tokenPrefilter;
+  }
+
+  /**
+   * @return native matcher provider or `null` if not used
+   * (see {@link Builder#useNativeMatcher(boolean)})
+   */
+  public NativeMatcherProvider getNativeMatcher()
+  {
+    return this.nativeMatcher;
   }
 
   public FilterEngine getFilterEngine()
@@ -629,8 +1293,14 @@ public final class AdblockEngine
     return this.filterEngine;
   }
 
+  /**
+   * Set whitelisted domains
+   * @param domains domains to be matched exactly ("example.com")
+   *                or with subdomains ("*.example.com", see {@link DomainTrie})
+   */
   public void setWhitelistedDomains(List<String> domains)
   {
+    this.whitelistedDomainsTrie = DomainTrie.build(domains);
     this.whitelistedDomains = domains;
   }
 
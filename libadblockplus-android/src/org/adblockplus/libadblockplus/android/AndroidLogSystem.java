@@ -23,6 +23,44 @@ import android.util.Log;
 
 public class AndroidLogSystem extends LogSystem
 {
+  public static final String TAG = Utils.getTag(AndroidLogSystem.class);
+
+  public AndroidLogSystem()
+  {
+    super();
+  }
+
+  /**
+   * @param minLogLevel messages of lower levels are not passed to Android log
+   */
+  public AndroidLogSystem(final LogLevel minLogLevel)
+  {
+    super();
+    setMinLogLevel(minLogLevel);
+  }
+
+  /**
+   * Minimum log level enabled for {@link #TAG} in Android log
+   * (INFO by default, can be changed with `adb shell setprop log.tag.AndroidLogSystem VERBOSE`)
+   * @return the lowest log level which is loggable
+   */
+  public static LogLevel getDefaultMinLogLevel()
+  {
+    if (Log.isLoggable(TAG, Log.VERBOSE))
+    {
+      return LogLevel.TRACE;
+    }
+    if (Log.isLoggable(TAG, Log.INFO))
+    {
+      return LogLevel.INFO;
+    }
+    if (Log.isLoggable(TAG, Log.WARN))
+    {
+      return LogLevel.WARN;
+    }
+    return LogLevel.ERROR;
+  }
+
   private static int abpLogLevelToAndroid(final LogLevel level)
   {
     switch (level)
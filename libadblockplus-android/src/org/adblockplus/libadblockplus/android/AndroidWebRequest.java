@@ -17,15 +17,18 @@
 
 package org.adblockplus.libadblockplus.android;
 
-import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.HashSet;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.GZIPInputStream;
 
 import org.adblockplus.libadblockplus.AdblockPlusException;
@@ -45,9 +48,15 @@ public class AndroidWebRequest extends WebRequest
 
   public final static String TAG = Utils.getTag(WebRequest.class);
 
-  private final HashSet<String> subscriptionURLs = new HashSet<String>();
+  protected static final int READ_CHUNK_SIZE = 16 * 1024;
+  protected static final int MIN_RESPONSE_BUFFER_SIZE = 64 * 1024;
+
+  // updated while the requests can be performed already (see `AdblockEngine.Builder.buildAsync`)
+  private final Set<String> subscriptionURLs =
+    Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
   private final boolean elemhideEnabled;
   private final boolean compressedStream;
+  private volatile ValidatorCache validatorCache;
 
   /**
    * Ctor
@@ -112,82 +121,230 @@ public class AndroidWebRequest extends WebRequest
     }
   }
 
+  /**
+   * Enables conditional requests: validators and bodies of the responses are stored
+   * and "304 Not Modified" response is reported as successful response with the stored body
+   * @param validatorCache validator cache or `null` to disable
+   */
+  public void setValidatorCache(final ValidatorCache validatorCache)
+  {
+    this.validatorCache = validatorCache;
+  }
+
+  public ValidatorCache getValidatorCache()
+  {
+    return validatorCache;
+  }
+
   @Override
   public ServerResponse httpGET(final String urlStr, final List<HeaderEntry> headers)
   {
     try
     {
-      final URL url = new URL(urlStr);
-      Log.d(TAG, "Downloading from: " + url);
+      final ServerResponse response = httpGET(new URL(urlStr), true);
+      Log.d(TAG, "Downloading finished");
+      return response;
+    }
+    catch (final Throwable t)
+    {
+      Log.e(TAG, "WebRequest failed", t);
+      throw new AdblockPlusException("WebRequest failed", t);
+    }
+  }
 
-      final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+  private ServerResponse httpGET(final URL url, final boolean conditional) throws IOException
+  {
+    Log.d(TAG, "Downloading from: " + url);
+
+    final boolean stripElemhideFilters = !this.elemhideEnabled && isListedSubscriptionUrl(url);
+
+    // cached body is stored after stripping, so the key depends on it
+    final ValidatorCache cache = this.validatorCache;
+    final String cacheKey = (cache != null
+      ? Utils.getUrlWithoutParams(url.toString()) + (stripElemhideFilters ? "#noelemhide" : "")
+      : null);
+    final ValidatorCache.Validators validators = (cache != null && conditional
+      ? cache.get(cacheKey)
+      : null);
+
+    final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    try
+    {
       connection.setRequestMethod("GET");
       connection.setRequestProperty("Accept-Encoding",
         (compressedStream ? ENCODING_GZIP : ENCODING_IDENTITY));
+      if (validators != null)
+      {
+        if (validators.getETag() != null)
+        {
+          connection.setRequestProperty("If-None-Match", validators.getETag());
+        }
+        if (validators.getLastModified() != null)
+        {
+          connection.setRequestProperty("If-Modified-Since", validators.getLastModified());
+        }
+      }
       connection.connect();
 
       final ServerResponse response = new ServerResponse();
       response.setResponseStatus(connection.getResponseCode());
 
-      if (response.getResponseStatus() == 200)
+      if (response.getResponseStatus() == HttpURLConnection.HTTP_NOT_MODIFIED && validators != null)
+      {
+        final ByteBuffer cachedBuffer = cache.getBody(cacheKey);
+        if (cachedBuffer == null)
+        {
+          Log.w(TAG, "Cached body is not available, downloading " + url);
+          cache.remove(cacheKey);
+          return httpGET(url, false);
+        }
+
+        // filter engine treats anything but 200 as failure
+        Log.d(TAG, "Not modified: " + url);
+        response.setResponseStatus(HttpURLConnection.HTTP_OK);
+        response.setStatus(NsStatus.OK);
+        response.setResponse(cachedBuffer);
+        response.setReponseHeaders(getResponseHeaders(connection));
+      }
+      else if (response.getResponseStatus() == HttpURLConnection.HTTP_OK)
       {
         final InputStream inputStream =
           (compressedStream && ENCODING_GZIP.equals(connection.getContentEncoding())
             ? new GZIPInputStream(connection.getInputStream())
             : connection.getInputStream());
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
-        final StringBuilder sb = new StringBuilder();
-
-        String line;
-        while ((line = reader.readLine()) != null)
-        {
-          // We're only appending non-element-hiding filters here.
-          //
-          // See:
-          //      https://issues.adblockplus.org/ticket/303
-          //
-          // Follow-up issue for removing this hack:
-          //      https://issues.adblockplus.org/ticket/1541
-          //
-          if (this.elemhideEnabled || !isListedSubscriptionUrl(url) || line.indexOf('#') == -1)
-          {
-            sb.append(line);
-            sb.append('\n');
-          }
-        }
+        final int contentLength = (inputStream instanceof GZIPInputStream ? -1 : connection.getContentLength());
+        final ByteBuffer responseBuffer = readResponse(inputStream, contentLength, stripElemhideFilters);
 
         response.setStatus(NsStatus.OK);
-        response.setResponse(sb.toString());
+        response.setResponse(responseBuffer);
+        response.setReponseHeaders(getResponseHeaders(connection));
 
-        if (connection.getHeaderFields().size() > 0)
+        if (cache != null)
         {
-          List<HeaderEntry> responseHeaders = new LinkedList<HeaderEntry>();
-          for (Map.Entry<String, List<String>> eachEntry : connection.getHeaderFields().entrySet())
-          {
-            for (String eachValue : eachEntry.getValue())
-            {
-              if (eachEntry.getKey() != null && eachValue != null)
-              {
-                responseHeaders.add(new HeaderEntry(eachEntry.getKey().toLowerCase(), eachValue));
-              }
-            }
-          }
-          response.setReponseHeaders(responseHeaders);
+          cache.put(cacheKey, new ValidatorCache.Validators(
+            connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified")), responseBuffer);
         }
-
-        connection.disconnect();
       }
       else
       {
         response.setStatus(NsStatus.ERROR_FAILURE);
       }
-      Log.d(TAG, "Downloading finished");
       return response;
     }
-    catch (final Throwable t)
+    finally
     {
-      Log.e(TAG, "WebRequest failed", t);
-      throw new AdblockPlusException("WebRequest failed", t);
+      connection.disconnect();
+    }
+  }
+
+  private static List<HeaderEntry> getResponseHeaders(final HttpURLConnection connection)
+  {
+    final List<HeaderEntry> responseHeaders = new LinkedList<HeaderEntry>();
+    for (Map.Entry<String, List<String>> eachEntry : connection.getHeaderFields().entrySet())
+    {
+      for (String eachValue : eachEntry.getValue())
+      {
+        if (eachEntry.getKey() != null && eachValue != null)
+        {
+          responseHeaders.add(new HeaderEntry(eachEntry.getKey().toLowerCase(), eachValue));
+        }
+      }
+    }
+    return responseHeaders;
+  }
+
+  /**
+   * Reads the response into direct buffer to pass it to native code without
+   * intermediate Java String copies (response is expected to be UTF-8 encoded)
+   * @param inputStream response stream
+   * @param contentLength expected response length or -1 if unknown
+   * @param stripElemhideFilters skip the lines containing '#'
+   * @return flipped direct buffer
+   * @throws IOException
+   */
+  protected static ByteBuffer readResponse(final InputStream inputStream, final int contentLength,
+                                           final boolean stripElemhideFilters) throws IOException
+  {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(contentLength, MIN_RESPONSE_BUFFER_SIZE));
+    final byte[] chunk = new byte[READ_CHUNK_SIZE];
+
+    // used only if stripping the lines
+    byte[] line = new byte[256];
+    int lineLength = 0;
+    boolean lineHasHash = false;
+
+    int read;
+    while ((read = inputStream.read(chunk)) != -1)
+    {
+      if (!stripElemhideFilters)
+      {
+        buffer = ensureRemaining(buffer, read);
+        buffer.put(chunk, 0, read);
+        continue;
+      }
+
+      // We're only appending non-element-hiding filters here.
+      //
+      // See:
+      //      https://issues.adblockplus.org/ticket/303
+      //
+      // Follow-up issue for removing this hack:
+      //      https://issues.adblockplus.org/ticket/1541
+      //
+      // Both '#' and line separators are single bytes never used in UTF-8 multibyte sequences
+      for (int i = 0; i < read; i++)
+      {
+        final byte b = chunk[i];
+        if (b == '\n')
+        {
+          if (!lineHasHash)
+          {
+            buffer = ensureRemaining(buffer, lineLength + 1);
+            buffer.put(line, 0, lineLength);
+            buffer.put((byte) '\n');
+          }
+          lineLength = 0;
+          lineHasHash = false;
+        }
+        else if (b != '\r')
+        {
+          if (lineLength == line.length)
+          {
+            line = Arrays.copyOf(line, line.length * 2);
+          }
+          line[lineLength++] = b;
+          lineHasHash |= (b == '#');
+        }
+      }
     }
+
+    if (lineLength > 0 && !lineHasHash)
+    {
+      buffer = ensureRemaining(buffer, lineLength + 1);
+      buffer.put(line, 0, lineLength);
+      buffer.put((byte) '\n');
+    }
+
+    buffer.flip();
+    return buffer;
+  }
+
+  private static ByteBuffer ensureRemaining(final ByteBuffer buffer, final int required)
+  {
+    if (buffer.remaining() >= required)
+    {
+      return buffer;
+    }
+
+    int capacity = buffer.capacity() * 2;
+    while (capacity - buffer.position() < required)
+    {
+      capacity *= 2;
+    }
+
+    final ByteBuffer newBuffer = ByteBuffer.allocateDirect(capacity);
+    buffer.flip();
+    newBuffer.put(buffer);
+    return newBuffer;
   }
 }
@@ -18,6 +18,7 @@ package org.adblockplus.libadblockplus.android;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.content.res.AssetFileDescriptor;
 import android.util.Log;
 
 import org.adblockplus.libadblockplus.HeaderEntry;
@@ -25,9 +26,12 @@ import org.adblockplus.libadblockplus.ServerResponse;
 import org.adblockplus.libadblockplus.WebRequest;
 
 import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -140,6 +144,11 @@ public class AndroidWebRequestResourceWrapper extends WebRequest
     return request.httpGET(url, headers);
   }
 
+  /**
+   * Reads the resource as String, lines are joined with "\r\n"
+   * @deprecated use {@link #readResourceBuffer(int)} which does not create Java String copies
+   */
+  @Deprecated
   protected String readResourceContent(int resourceId) throws IOException
   {
     Log.d(TAG, "Reading from resource ...");
@@ -178,12 +187,70 @@ public class AndroidWebRequestResourceWrapper extends WebRequest
     }
   }
 
+  /**
+   * Reads the resource as bytes to be passed to native code in place.
+   * Uncompressed resources (eg. `aaptOptions { noCompress 'txt' }`) are memory-mapped,
+   * compressed ones are read into direct buffer
+   * @param resourceId raw resource id
+   * @return direct buffer with the resource content
+   * @throws IOException
+   */
+  protected ByteBuffer readResourceBuffer(int resourceId) throws IOException
+  {
+    AssetFileDescriptor fd = null;
+    try
+    {
+      // fails for compressed resources
+      fd = context.getResources().openRawResourceFd(resourceId);
+    }
+    catch (Exception e)
+    {
+      Log.d(TAG, "Resource #" + resourceId + " is compressed, it can't be memory-mapped");
+    }
+
+    if (fd != null)
+    {
+      try
+      {
+        FileInputStream fis = fd.createInputStream();
+        try
+        {
+          // the mapping remains valid after the channel is closed
+          ByteBuffer buffer = fis.getChannel().map(
+            FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+          Log.d(TAG, "Resource mapped (" + buffer.remaining() + " bytes)");
+          return buffer;
+        }
+        finally
+        {
+          fis.close();
+        }
+      }
+      finally
+      {
+        fd.close();
+      }
+    }
+
+    InputStream is = context.getResources().openRawResource(resourceId);
+    try
+    {
+      ByteBuffer buffer = AndroidWebRequest.readResponse(is, -1, false);
+      Log.d(TAG, "Resource read (" + buffer.remaining() + " bytes)");
+      return buffer;
+    }
+    finally
+    {
+      is.close();
+    }
+  }
+
   protected ServerResponse buildResourceContentResponse(int resourceId)
   {
     ServerResponse response = new ServerResponse();
     try
     {
-      response.setResponse(readResourceContent(resourceId));
+      response.setResponse(readResourceBuffer(resourceId));
       response.setResponseStatus(200);
       response.setStatus(ServerResponse.NsStatus.OK);
     }
@@ -253,4 +320,24 @@ public class AndroidWebRequestResourceWrapper extends WebRequest
       return urls.contains(url);
     }
   }
+
+  /**
+   * Storage impl in memory (intercepted requests are forgotten on restart)
+   */
+  public static class InMemoryStorage implements Storage
+  {
+    private final Set<String> urls = new HashSet<String>();
+
+    @Override
+    public synchronized void put(String url)
+    {
+      urls.add(url);
+    }
+
+    @Override
+    public synchronized boolean contains(String url)
+    {
+      return urls.contains(url);
+    }
+  }
 }
@@ -0,0 +1,191 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.android;
+
+import org.adblockplus.libadblockplus.FilterEngine.ContentType;
+
+/**
+ * Detects request content type by URL path extension in a single pass
+ * without allocations, falls back to `Accept` request header.
+ * Thread-safe: the suffix trie is immutable after class initialization.
+ */
+public final class ContentTypeDetector
+{
+  public static final String HEADER_ACCEPT = "Accept";
+
+  private static final class Node
+  {
+    private char[] chars = new char[0];
+    private Node[] children = new Node[0];
+    private ContentType contentType;
+
+    private Node get(final char c)
+    {
+      for (int i = 0; i < chars.length; i++)
+      {
+        if (chars[i] == c)
+        {
+          return children[i];
+        }
+      }
+      return null;
+    }
+
+    private Node getOrAdd(final char c)
+    {
+      Node child = get(c);
+      if (child == null)
+      {
+        child = new Node();
+
+        final char[] newChars = new char[chars.length + 1];
+        System.arraycopy(chars, 0, newChars, 0, chars.length);
+        newChars[chars.length] = c;
+
+        final Node[] newChildren = new Node[children.length + 1];
+        System.arraycopy(children, 0, newChildren, 0, children.length);
+        newChildren[children.length] = child;
+
+        chars = newChars;
+        children = newChildren;
+      }
+      return child;
+    }
+  }
+
+  // reversed extensions including the dot
+  private static final Node ROOT = new Node();
+
+  static
+  {
+    add(ContentType.SCRIPT, "js");
+    add(ContentType.STYLESHEET, "css");
+    add(ContentType.IMAGE, "gif", "png", "jpg", "jpeg", "bmp", "ico");
+    add(ContentType.FONT, "ttf", "woff");
+    add(ContentType.SUBDOCUMENT, "htm", "html");
+  }
+
+  private static void add(final ContentType contentType, final String... extensions)
+  {
+    for (final String extension : extensions)
+    {
+      Node node = ROOT;
+      for (int i = extension.length() - 1; i >= 0; i--)
+      {
+        node = node.getOrAdd(extension.charAt(i));
+      }
+      node.getOrAdd('.').contentType = contentType;
+    }
+  }
+
+  private ContentTypeDetector()
+  {
+  }
+
+  /**
+   * Detect content type by URL path extension (query and fragment are ignored)
+   * @param url request URL
+   * @return content type or `null` if unknown
+   */
+  public static ContentType detectByUrl(final String url)
+  {
+    if (url == null)
+    {
+      return null;
+    }
+
+    int end = url.length();
+    for (int i = 0; i < end; i++)
+    {
+      final char c = url.charAt(i);
+      if (c == '?' || c == '#')
+      {
+        end = i;
+        break;
+      }
+    }
+
+    Node node = ROOT;
+    for (int i = end - 1; i >= 0; i--)
+    {
+      node = node.get(toLowerCase(url.charAt(i)));
+      if (node == null)
+      {
+        return null;
+      }
+      if (node.contentType != null)
+      {
+        return node.contentType;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Detect content type by `Accept` request header value
+   * @param accept header value (can be null)
+   * @return content type or `null` if unknown
+   */
+  public static ContentType detectByAccept(final String accept)
+  {
+    if (accept == null)
+    {
+      return null;
+    }
+
+    // only the first (most preferred) media type is checked, browsers send specific one first
+    if (accept.startsWith("text/css"))
+    {
+      return ContentType.STYLESHEET;
+    }
+    if (accept.startsWith("image/"))
+    {
+      return ContentType.IMAGE;
+    }
+    if (accept.startsWith("text/html"))
+    {
+      return ContentType.SUBDOCUMENT;
+    }
+    if (accept.startsWith("application/javascript"))
+    {
+      return ContentType.SCRIPT;
+    }
+    return null;
+  }
+
+  /**
+   * Detect content type by URL and request header
+   * @param url request URL
+   * @param accept `Accept` header value (can be null)
+   * @return content type ({@link ContentType#OTHER} if unknown)
+   */
+  public static ContentType detect(final String url, final String accept)
+  {
+    ContentType contentType = detectByUrl(url);
+    if (contentType == null)
+    {
+      contentType = detectByAccept(accept);
+    }
+    return (contentType != null ? contentType : ContentType.OTHER);
+  }
+
+  private static char toLowerCase(final char c)
+  {
+    return (c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+  }
+}
@@ -0,0 +1,222 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.android;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable trie of reversed domain labels.
+ * "example.com" matches the host exactly, "*.example.com" matches any subdomain of it.
+ * Lookup is O(labels count) and does not allocate.
+ */
+public final class DomainTrie
+{
+  public static final String SUBDOMAINS_PREFIX = "*.";
+
+  public static final DomainTrie EMPTY = new DomainTrie(new Node(), 0);
+
+  private static final class Node
+  {
+    // sorted
+    private String[] labels = new String[0];
+    private Node[] children = new Node[0];
+    private boolean exact;
+    private boolean subdomains;
+
+    private Node find(final String host, final int start, final int end)
+    {
+      final int length = end - start;
+      int low = 0;
+      int high = labels.length - 1;
+      while (low <= high)
+      {
+        final int middle = (low + high) >>> 1;
+        final int result = compare(labels[middle], host, start, length);
+        if (result < 0)
+        {
+          low = middle + 1;
+        }
+        else if (result > 0)
+        {
+          high = middle - 1;
+        }
+        else
+        {
+          return children[middle];
+        }
+      }
+      return null;
+    }
+
+    // the same order as String.compareTo()
+    private static int compare(final String label, final String host, final int start, final int length)
+    {
+      final int minLength = Math.min(label.length(), length);
+      for (int i = 0; i < minLength; i++)
+      {
+        final int diff = label.charAt(i) - host.charAt(start + i);
+        if (diff != 0)
+        {
+          return diff;
+        }
+      }
+      return label.length() - length;
+    }
+  }
+
+  private static final class NodeBuilder
+  {
+    private final Map<String, NodeBuilder> children = new TreeMap<String, NodeBuilder>();
+    private boolean exact;
+    private boolean subdomains;
+
+    private Node build()
+    {
+      final Node node = new Node();
+      node.exact = exact;
+      node.subdomains = subdomains;
+      node.labels = new String[children.size()];
+      node.children = new Node[children.size()];
+
+      int i = 0;
+      for (final Map.Entry<String, NodeBuilder> child : children.entrySet())
+      {
+        node.labels[i] = child.getKey();
+        node.children[i] = child.getValue().build();
+        i++;
+      }
+      return node;
+    }
+  }
+
+  private final Node root;
+  private final int size;
+
+  private DomainTrie(final Node root, final int size)
+  {
+    this.root = root;
+    this.size = size;
+  }
+
+  /**
+   * Build the trie
+   * @param domains domains ("example.com") or subdomain masks ("*.example.com")
+   * @return trie
+   */
+  public static DomainTrie build(final Collection<String> domains)
+  {
+    if (domains == null || domains.isEmpty())
+    {
+      return EMPTY;
+    }
+
+    final NodeBuilder root = new NodeBuilder();
+    int size = 0;
+    for (final String eachDomain : domains)
+    {
+      if (eachDomain == null)
+      {
+        continue;
+      }
+
+      String domain = eachDomain.trim().toLowerCase(Locale.ENGLISH);
+      boolean subdomains = false;
+      if (domain.startsWith(SUBDOMAINS_PREFIX))
+      {
+        subdomains = true;
+        domain = domain.substring(SUBDOMAINS_PREFIX.length());
+      }
+      if (domain.isEmpty())
+      {
+        continue;
+      }
+
+      NodeBuilder node = root;
+      int end = domain.length();
+      while (end > 0)
+      {
+        final int start = domain.lastIndexOf('.', end - 1) + 1;
+        final String label = domain.substring(start, end);
+        NodeBuilder child = node.children.get(label);
+        if (child == null)
+        {
+          child = new NodeBuilder();
+          node.children.put(label, child);
+        }
+        node = child;
+        end = start - 1;
+      }
+
+      if (subdomains)
+      {
+        node.subdomains = true;
+      }
+      else
+      {
+        node.exact = true;
+      }
+      size++;
+    }
+    return new DomainTrie(root.build(), size);
+  }
+
+  /**
+   * @return number of domains and subdomain masks
+   */
+  public int size()
+  {
+    return size;
+  }
+
+  /**
+   * Check if the host is matched
+   * @param host host (lower case)
+   * @return `true` if matches
+   */
+  public boolean matches(final String host)
+  {
+    if (host == null || host.isEmpty())
+    {
+      return false;
+    }
+
+    Node node = root;
+    int end = host.length();
+    while (true)
+    {
+      final int start = host.lastIndexOf('.', end - 1) + 1;
+      node = node.find(host, start, end);
+      if (node == null)
+      {
+        return false;
+      }
+      if (start == 0)
+      {
+        return node.exact;
+      }
+      if (node.subdomains)
+      {
+        return true;
+      }
+      end = start - 1;
+    }
+  }
+}
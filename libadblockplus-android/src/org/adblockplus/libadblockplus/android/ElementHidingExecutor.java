@@ -0,0 +1,313 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.android;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded executor for element hiding requests.
+ * Requests for the same domain waiting for execution are coalesced into one task,
+ * requests can be cancelled and the task is removed from the queue if no requests left
+ */
+public class ElementHidingExecutor
+{
+  private static final String TAG = Utils.getTag(ElementHidingExecutor.class);
+
+  // JS engine can be used by one thread at once, so more threads would just wait for the lock
+  public static final int DEFAULT_THREADS = 1;
+  public static final long SHUTDOWN_TIMEOUT_MILLIS = 5 * 1000;
+
+  private static final String EMPTY_STYLESHEET = "";
+
+  /**
+   * Invoked in executor thread if the request is not cancelled.
+   * `Request.cancel()` waits for the running callback, so the callback must not wait
+   * for the locks held by the thread cancelling the request
+   */
+  public interface Callback
+  {
+    void onFinished(String stylesheet);
+  }
+
+  public final class Request
+  {
+    private final Task task;
+    private final String url;
+    private final String[] referrers;
+    private final Callback callback;
+
+    // held while the callback is invoked, acquired before `lock`
+    private final Object callbackLock = new Object();
+
+    // guarded by `lock`
+    private boolean cancelled;
+    private boolean finished;
+
+    private Request(final Task task, final String url, final String[] referrers, final Callback callback)
+    {
+      this.task = task;
+      this.url = url;
+      this.referrers = referrers;
+      this.callback = callback;
+    }
+
+    /**
+     * Cancel the request, callback is not invoked after this method returns.
+     * If the callback is running, waits for it to return
+     */
+    public void cancel()
+    {
+      ElementHidingExecutor.this.cancel(this);
+    }
+  }
+
+  private final class Task implements Runnable
+  {
+    private final String domain;
+    private final List<Request> requests = new ArrayList<Request>();
+    private FutureTask<Void> future;
+    private boolean started;
+
+    private Task(final String domain)
+    {
+      this.domain = domain;
+    }
+
+    @Override
+    public void run()
+    {
+      final List<Request> requestsToServe;
+      synchronized (lock)
+      {
+        started = true;
+        if (pendingTasks.get(domain) == this)
+        {
+          pendingTasks.remove(domain);
+        }
+        requestsToServe = new ArrayList<Request>(requests);
+      }
+
+      for (final Request request : requestsToServe)
+      {
+        synchronized (lock)
+        {
+          if (request.cancelled)
+          {
+            continue;
+          }
+        }
+
+        String stylesheet;
+        try
+        {
+          // the stylesheet is cached, so it's built once for all the requests
+          stylesheet = engine.getElementHidingStylesheet(request.url, domain, request.referrers);
+        }
+        catch (Throwable t)
+        {
+          Log.e(TAG, "Failed to get element hiding stylesheet for " + request.url, t);
+          stylesheet = EMPTY_STYLESHEET;
+        }
+        finish(request, stylesheet);
+      }
+    }
+  }
+
+  private final AdblockEngine engine;
+  private final ThreadPoolExecutor executor;
+  private final Object lock = new Object();
+  private final Map<String, Task> pendingTasks = new HashMap<String, Task>();
+  private boolean shutdown;
+  private long coalescedCount;
+  private long cancelledCount;
+
+  public ElementHidingExecutor(final AdblockEngine engine, final int threads)
+  {
+    this.engine = engine;
+    this.executor = new ThreadPoolExecutor(
+      threads, threads, 0L, TimeUnit.MILLISECONDS,
+      new LinkedBlockingQueue<Runnable>(),
+      new ThreadFactory()
+      {
+        @Override
+        public Thread newThread(final Runnable runnable)
+        {
+          final Thread thread = new Thread(runnable, "ElementHiding");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+  }
+
+  /**
+   * Request element hiding stylesheet
+   * @param url document URL
+   * @param domain document domain
+   * @param referrers referrers chain
+   * @param callback callback to be invoked in executor thread
+   * @return request to cancel if it's not needed anymore
+   */
+  public Request submit(final String url, final String domain, final String[] referrers,
+                        final Callback callback)
+  {
+    final Request request;
+    synchronized (lock)
+    {
+      Task task = pendingTasks.get(domain);
+      final boolean coalesced = (task != null);
+      if (!coalesced)
+      {
+        task = new Task(domain);
+      }
+
+      request = new Request(task, url, referrers, callback);
+      if (!shutdown)
+      {
+        task.requests.add(request);
+        if (coalesced)
+        {
+          coalescedCount++;
+        }
+        else
+        {
+          pendingTasks.put(domain, task);
+          task.future = new FutureTask<Void>(task, null);
+          executor.execute(task.future);
+        }
+        return request;
+      }
+    }
+
+    Log.w(TAG, "Executor is shut down, returning empty stylesheet");
+    finish(request, EMPTY_STYLESHEET);
+    return request;
+  }
+
+  private void cancel(final Request request)
+  {
+    // wait for the callback if it's running
+    synchronized (request.callbackLock)
+    {
+      synchronized (lock)
+      {
+        if (request.cancelled || request.finished)
+        {
+          return;
+        }
+
+        request.cancelled = true;
+        cancelledCount++;
+
+        final Task task = request.task;
+        task.requests.remove(request);
+        if (!task.started && task.requests.isEmpty())
+        {
+          // nobody is waiting for the task anymore
+          pendingTasks.remove(task.domain);
+          task.future.cancel(false);
+          executor.remove(task.future);
+        }
+      }
+    }
+  }
+
+  private void finish(final Request request, final String stylesheet)
+  {
+    // the callback is invoked holding `callbackLock` (but not `lock`)
+    // so concurrent `cancel()` returns only after the callback returned
+    synchronized (request.callbackLock)
+    {
+      synchronized (lock)
+      {
+        if (request.cancelled || request.finished)
+        {
+          return;
+        }
+        request.finished = true;
+      }
+      request.callback.onFinished(stylesheet);
+    }
+  }
+
+  /**
+   * Number of the requests served by the task created for another request
+   */
+  public long getCoalescedCount()
+  {
+    synchronized (lock)
+    {
+      return coalescedCount;
+    }
+  }
+
+  public long getCancelledCount()
+  {
+    synchronized (lock)
+    {
+      return cancelledCount;
+    }
+  }
+
+  /**
+   * Cancel the tasks waiting for execution (their requests get empty stylesheet)
+   * and wait for the running task to finish
+   */
+  public void shutdown()
+  {
+    final List<Request> notServedRequests = new ArrayList<Request>();
+    synchronized (lock)
+    {
+      shutdown = true;
+      for (final Task task : pendingTasks.values())
+      {
+        task.future.cancel(false);
+        notServedRequests.addAll(task.requests);
+      }
+      pendingTasks.clear();
+    }
+
+    executor.shutdown();
+    for (final Request request : notServedRequests)
+    {
+      finish(request, EMPTY_STYLESHEET);
+    }
+
+    try
+    {
+      if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+      {
+        Log.w(TAG, "Element hiding task is still running");
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Log.w(TAG, "Interrupted while waiting for element hiding task", e);
+      Thread.currentThread().interrupt();
+    }
+  }
+}
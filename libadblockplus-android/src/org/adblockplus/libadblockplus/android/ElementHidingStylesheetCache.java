@@ -0,0 +1,286 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.android;
+
+import org.adblockplus.libadblockplus.FilterEngine;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of ready-to-inject element hiding stylesheets.
+ * Generic selectors are joined into one stylesheet shared by all the domains,
+ * only domain-specific part is cached per domain.
+ * The cache is cleared when the filters are changed
+ */
+public class ElementHidingStylesheetCache
+{
+  public static final int DEFAULT_CAPACITY = 32;
+
+  // the same as in adblockpluscore: not too many selectors in one rule
+  public static final int SELECTOR_GROUP_SIZE = 1024;
+
+  private static final String SELECTOR_SEPARATOR = ", ";
+  private static final String HIDING_DECLARATION = " { display: none !important; }\n";
+
+  /**
+   * Domain-specific part of element hiding stylesheet
+   */
+  public static final class DomainStylesheet
+  {
+    private final String stylesheet;
+    private final boolean includesGeneric;
+
+    public DomainStylesheet(final String stylesheet, final boolean includesGeneric)
+    {
+      this.stylesheet = stylesheet;
+      this.includesGeneric = includesGeneric;
+    }
+
+    public String getStylesheet()
+    {
+      return stylesheet;
+    }
+
+    /**
+     * @return `true` if the stylesheet is complete (some generic selectors are not applied
+     * for the domain) and generic stylesheet must not be injected
+     */
+    public boolean includesGeneric()
+    {
+      return includesGeneric;
+    }
+  }
+
+  private final FilterEngine filterEngine;
+  private final FilterEngineDispatcher dispatcher;
+  private final Map<String, DomainStylesheet> stylesheets;
+  private long generation = -1;
+  private String genericStylesheet;
+  private long hits;
+  private long misses;
+
+  public ElementHidingStylesheetCache(final FilterEngine filterEngine, final int capacity)
+  {
+    this(filterEngine, null, capacity);
+  }
+
+  /**
+   * Constructor
+   * @param dispatcher the selectors are retrieved on the engine thread of the dispatcher
+   * @param capacity max number of cached domain stylesheets
+   */
+  public ElementHidingStylesheetCache(final FilterEngineDispatcher dispatcher, final int capacity)
+  {
+    this(dispatcher.getFilterEngine(), dispatcher, capacity);
+  }
+
+  private ElementHidingStylesheetCache(final FilterEngine filterEngine,
+                                       final FilterEngineDispatcher dispatcher, final int capacity)
+  {
+    this.filterEngine = filterEngine;
+    this.dispatcher = dispatcher;
+    this.stylesheets = new LinkedHashMap<String, DomainStylesheet>(capacity, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, DomainStylesheet> eldest)
+      {
+        return size() > capacity;
+      }
+    };
+  }
+
+  private List<String> getGenericSelectors()
+  {
+    return (dispatcher != null
+      ? dispatcher.getGenericElementHidingSelectors()
+      : filterEngine.getGenericElementHidingSelectors());
+  }
+
+  private List<String> getSelectorsDelta(final String domain)
+  {
+    return (dispatcher != null
+      ? dispatcher.getElementHidingSelectorsDelta(domain)
+      : filterEngine.getElementHidingSelectorsDelta(domain));
+  }
+
+  private List<String> getSelectors(final String domain)
+  {
+    return (dispatcher != null
+      ? dispatcher.getElementHidingSelectors(domain)
+      : filterEngine.getElementHidingSelectors(domain));
+  }
+
+  private long checkGeneration()
+  {
+    final long currentGeneration = filterEngine.getFilterChangeGeneration();
+    synchronized (this)
+    {
+      if (generation != currentGeneration)
+      {
+        stylesheets.clear();
+        genericStylesheet = null;
+        generation = currentGeneration;
+      }
+    }
+    return currentGeneration;
+  }
+
+  /**
+   * Get stylesheet of the selectors applied for any domain
+   * @return generic stylesheet (empty if no selectors)
+   */
+  public String getGeneric()
+  {
+    final long currentGeneration = checkGeneration();
+    synchronized (this)
+    {
+      if (genericStylesheet != null)
+      {
+        return genericStylesheet;
+      }
+    }
+
+    final String stylesheet = buildStylesheet(getGenericSelectors());
+
+    synchronized (this)
+    {
+      // not cached if the filters are changed meanwhile
+      if (generation == currentGeneration)
+      {
+        genericStylesheet = stylesheet;
+      }
+    }
+    return stylesheet;
+  }
+
+  /**
+   * Get domain-specific part of element hiding stylesheet
+   * @param domain domain
+   * @return domain stylesheet
+   */
+  public DomainStylesheet getDomainStylesheet(final String domain)
+  {
+    final long currentGeneration = checkGeneration();
+    synchronized (this)
+    {
+      final DomainStylesheet stylesheet = stylesheets.get(domain);
+      if (stylesheet != null)
+      {
+        hits++;
+        return stylesheet;
+      }
+      misses++;
+    }
+
+    final DomainStylesheet stylesheet;
+    final List<String> delta = getSelectorsDelta(domain);
+    if (delta != null)
+    {
+      stylesheet = new DomainStylesheet(buildStylesheet(delta), false);
+    }
+    else
+    {
+      stylesheet = new DomainStylesheet(
+        buildStylesheet(getSelectors(domain)), true);
+    }
+
+    synchronized (this)
+    {
+      if (generation == currentGeneration)
+      {
+        stylesheets.put(domain, stylesheet);
+      }
+    }
+    return stylesheet;
+  }
+
+  /**
+   * Get complete element hiding stylesheet for the domain
+   * @param domain domain
+   * @return stylesheet (empty if no selectors)
+   */
+  public String get(final String domain)
+  {
+    final DomainStylesheet stylesheet = getDomainStylesheet(domain);
+    if (stylesheet.includesGeneric())
+    {
+      return stylesheet.getStylesheet();
+    }
+
+    final String genericStylesheet = getGeneric();
+    if (stylesheet.getStylesheet().isEmpty())
+    {
+      return genericStylesheet;
+    }
+    return genericStylesheet + stylesheet.getStylesheet();
+  }
+
+  public synchronized void clear()
+  {
+    stylesheets.clear();
+    genericStylesheet = null;
+  }
+
+  public synchronized long getHits()
+  {
+    return hits;
+  }
+
+  public synchronized long getMisses()
+  {
+    return misses;
+  }
+
+  /**
+   * Build stylesheet hiding the elements with comma-joined selectors groups
+   * @param selectors element hiding selectors
+   * @return stylesheet
+   */
+  public static String buildStylesheet(final List<String> selectors)
+  {
+    if (selectors.isEmpty())
+    {
+      return "";
+    }
+
+    int length = 0;
+    for (final String selector : selectors)
+    {
+      length += selector.length() + SELECTOR_SEPARATOR.length();
+    }
+    final int groups = (selectors.size() + SELECTOR_GROUP_SIZE - 1) / SELECTOR_GROUP_SIZE;
+    final StringBuilder sb = new StringBuilder(length + groups * HIDING_DECLARATION.length());
+
+    for (int i = 0; i < selectors.size(); i++)
+    {
+      if (i % SELECTOR_GROUP_SIZE != 0)
+      {
+        sb.append(SELECTOR_SEPARATOR);
+      }
+      sb.append(selectors.get(i));
+
+      if ((i + 1) % SELECTOR_GROUP_SIZE == 0 || i + 1 == selectors.size())
+      {
+        sb.append(HIDING_DECLARATION);
+      }
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.android;
+
+import org.adblockplus.libadblockplus.FilterEngine.ContentType;
+import org.adblockplus.libadblockplus.MatchVerdict;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Opt-in metrics of {@link AdblockEngine} hot path calls: latency histograms, call counts,
+ * JNI transitions counts and `matches` verdicts distribution per content type.
+ * See {@link AdblockEngine#setMetrics(EngineMetrics)}
+ */
+public class EngineMetrics
+{
+  public enum Call
+  {
+    MATCHES, IS_DOCUMENT_WHITELISTED, IS_ELEMHIDE_WHITELISTED,
+    GET_ELEMENT_HIDING_SELECTORS, GET_HOST_FROM_URL
+  }
+
+  private static final Call[] CALLS = Call.values();
+  private static final int CONTENT_TYPES = ContentType.values().length;
+  private static final int VERDICTS = MatchVerdict.EXCEPTION + 1;
+
+  private final LatencyHistogram[] latencies = new LatencyHistogram[CALLS.length];
+  private final AtomicLongArray jniCalls = new AtomicLongArray(CALLS.length);
+  private final AtomicLongArray verdicts = new AtomicLongArray(CONTENT_TYPES * VERDICTS);
+
+  public EngineMetrics()
+  {
+    for (int i = 0; i < latencies.length; i++)
+    {
+      latencies[i] = new LatencyHistogram();
+    }
+  }
+
+  /**
+   * Immutable copy of the metrics
+   */
+  public static final class Snapshot
+  {
+    private final LatencyHistogram.Snapshot[] latencies;
+    private final long[] jniCalls;
+    private final long[] verdicts;
+
+    private Snapshot(final LatencyHistogram.Snapshot[] latencies,
+                     final long[] jniCalls, final long[] verdicts)
+    {
+      this.latencies = latencies;
+      this.jniCalls = jniCalls;
+      this.verdicts = verdicts;
+    }
+
+    /**
+     * @param call call
+     * @return latency histogram in nanoseconds
+     */
+    public LatencyHistogram.Snapshot getLatency(final Call call)
+    {
+      return latencies[call.ordinal()];
+    }
+
+    public long getCallCount(final Call call)
+    {
+      return latencies[call.ordinal()].getCount();
+    }
+
+    /**
+     * @param call call
+     * @return number of Java to native transitions made by the call itself
+     * (nested whitelisting checks are recorded as separate calls)
+     */
+    public long getJniCalls(final Call call)
+    {
+      return jniCalls[call.ordinal()];
+    }
+
+    /**
+     * @param contentType content type
+     * @param verdict verdict (see {@link MatchVerdict})
+     * @return number of `matches` calls with the verdict
+     */
+    public long getVerdictCount(final ContentType contentType, final int verdict)
+    {
+      return verdicts[contentType.ordinal() * VERDICTS + MatchVerdict.getVerdict(verdict)];
+    }
+  }
+
+  /**
+   * Record finished call
+   * @param call call
+   * @param startedNanos {@link System#nanoTime()} when the call was started
+   * @param jniCalls number of native calls made
+   */
+  public void recordCall(final Call call, final long startedNanos, final int jniCalls)
+  {
+    latencies[call.ordinal()].record(System.nanoTime() - startedNanos);
+    if (jniCalls > 0)
+    {
+      this.jniCalls.addAndGet(call.ordinal(), jniCalls);
+    }
+  }
+
+  /**
+   * Record `matches` verdict
+   * @param contentType content type
+   * @param verdict verdict code returned by {@link org.adblockplus.libadblockplus.FilterEngine#matchVerdict}
+   */
+  public void recordVerdict(final ContentType contentType, final int verdict)
+  {
+    final int index = MatchVerdict.getVerdict(verdict);
+    if (index < VERDICTS)
+    {
+      verdicts.incrementAndGet(contentType.ordinal() * VERDICTS + index);
+    }
+  }
+
+  public Snapshot snapshot()
+  {
+    final LatencyHistogram.Snapshot[] latenciesCopy = new LatencyHistogram.Snapshot[latencies.length];
+    final long[] jniCallsCopy = new long[jniCalls.length()];
+    for (int i = 0; i < latencies.length; i++)
+    {
+      latenciesCopy[i] = latencies[i].snapshot();
+      jniCallsCopy[i] = jniCalls.get(i);
+    }
+
+    final long[] verdictsCopy = new long[verdicts.length()];
+    for (int i = 0; i < verdictsCopy.length; i++)
+    {
+      verdictsCopy[i] = verdicts.get(i);
+    }
+    return new Snapshot(latenciesCopy, jniCallsCopy, verdictsCopy);
+  }
+
+  public void reset()
+  {
+    for (int i = 0; i < latencies.length; i++)
+    {
+      latencies[i].reset();
+      jniCalls.set(i, 0);
+    }
+    for (int i = 0; i < verdicts.length(); i++)
+    {
+      verdicts.set(i, 0);
+    }
+  }
+}
@@ -0,0 +1,246 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.android;
+
+import android.util.Log;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single engine-owned thread fed by lock-free multi-producer queue.
+ * All the JS engine work submitted through it is executed on one thread,
+ * so the callers just enqueue instead of contending on the isolate lock
+ */
+public class EngineThread implements Executor
+{
+  private static final String TAG = Utils.getTag(EngineThread.class);
+
+  public static final String THREAD_NAME = "AdblockEngine";
+  public static final long SHUTDOWN_TIMEOUT_MILLIS = 5 * 1000;
+
+  private final Queue<Runnable> queue = new ConcurrentLinkedQueue<Runnable>();
+  private final Thread thread;
+  // set by the engine thread before parking, producers unpark it only if set
+  private volatile boolean idle;
+  private volatile boolean shutdown;
+
+  public EngineThread()
+  {
+    thread = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        loop();
+      }
+    }, THREAD_NAME);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void loop()
+  {
+    while (true)
+    {
+      final Runnable task = queue.poll();
+      if (task != null)
+      {
+        runTask(task);
+        continue;
+      }
+
+      if (shutdown)
+      {
+        break;
+      }
+
+      idle = true;
+      // re-check after `idle` is published: the producer could have missed it
+      if (queue.isEmpty() && !shutdown)
+      {
+        LockSupport.park(this);
+      }
+      idle = false;
+    }
+  }
+
+  private static void runTask(final Runnable task)
+  {
+    try
+    {
+      task.run();
+    }
+    catch (Throwable t)
+    {
+      Log.e(TAG, "Engine thread task failed", t);
+    }
+  }
+
+  /**
+   * Check if invoked on the engine thread
+   * @return `true` if current thread is the engine thread
+   */
+  public boolean isEngineThread()
+  {
+    return Thread.currentThread() == thread;
+  }
+
+  /**
+   * Enqueue the task to be executed on the engine thread
+   * @param task task
+   */
+  @Override
+  public void execute(final Runnable task)
+  {
+    if (shutdown)
+    {
+      throw new RejectedExecutionException("Engine thread is shut down");
+    }
+
+    queue.offer(task);
+    if (shutdown && queue.remove(task))
+    {
+      // shut down meanwhile and the task will never be polled
+      throw new RejectedExecutionException("Engine thread is shut down");
+    }
+
+    if (idle)
+    {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  /**
+   * Async facade: enqueue the task to be executed on the engine thread
+   * @param callable task
+   * @return future of the result
+   */
+  public <T> Future<T> submit(final Callable<T> callable)
+  {
+    final FutureTask<T> future = new FutureTask<T>(callable);
+    execute(future);
+    return future;
+  }
+
+  /**
+   * Sync facade: execute the task on the engine thread and wait for the result.
+   * Executed directly if invoked on the engine thread
+   * @param callable task
+   * @return result
+   */
+  public <T> T call(final Callable<T> callable)
+  {
+    try
+    {
+      if (isEngineThread())
+      {
+        return callable.call();
+      }
+      return submit(callable).get();
+    }
+    catch (ExecutionException e)
+    {
+      throw unwrap(e.getCause());
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+    catch (Exception e)
+    {
+      throw unwrap(e);
+    }
+  }
+
+  /**
+   * Execute the task on the engine thread if it's used or on current thread otherwise
+   * @param engineThread engine thread or `null`
+   * @param callable task
+   * @return result
+   */
+  public static <T> T call(final EngineThread engineThread, final Callable<T> callable)
+  {
+    if (engineThread != null)
+    {
+      return engineThread.call(callable);
+    }
+
+    try
+    {
+      return callable.call();
+    }
+    catch (Exception e)
+    {
+      throw unwrap(e);
+    }
+  }
+
+  private static RuntimeException unwrap(final Throwable t)
+  {
+    if (t instanceof RuntimeException)
+    {
+      return (RuntimeException) t;
+    }
+    if (t instanceof Error)
+    {
+      throw (Error) t;
+    }
+    return new RuntimeException(t);
+  }
+
+  /**
+   * Execute already enqueued tasks and stop the thread
+   */
+  public void shutdown()
+  {
+    shutdown = true;
+    LockSupport.unpark(thread);
+
+    if (isEngineThread())
+    {
+      return;
+    }
+
+    try
+    {
+      thread.join(SHUTDOWN_TIMEOUT_MILLIS);
+      if (thread.isAlive())
+      {
+        Log.w(TAG, "Engine thread is not finished in " + SHUTDOWN_TIMEOUT_MILLIS + "ms");
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public boolean isShutdown()
+  {
+    return shutdown;
+  }
+}
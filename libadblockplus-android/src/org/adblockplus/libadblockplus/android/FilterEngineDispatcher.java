@@ -0,0 +1,252 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.android;
+
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.FilterEngine.ContentType;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Sync and async facades of {@link FilterEngine} hot path methods
+ * executed on the {@link EngineThread}
+ */
+public class FilterEngineDispatcher
+{
+  /**
+   * Invoked on the engine thread
+   */
+  public interface Callback<T>
+  {
+    void onResult(T result);
+
+    /**
+     * Invoked instead of `onResult` if the call failed
+     * @param t failure
+     */
+    void onError(Throwable t);
+  }
+
+  private final FilterEngine filterEngine;
+  private final EngineThread engineThread;
+
+  public FilterEngineDispatcher(final FilterEngine filterEngine, final EngineThread engineThread)
+  {
+    this.filterEngine = filterEngine;
+    this.engineThread = engineThread;
+  }
+
+  public FilterEngine getFilterEngine()
+  {
+    return filterEngine;
+  }
+
+  public EngineThread getEngineThread()
+  {
+    return engineThread;
+  }
+
+  private Callable<Integer> matchVerdictCallable(
+    final String url, final ContentType contentType, final String[] documentUrls)
+  {
+    return new Callable<Integer>()
+    {
+      @Override
+      public Integer call()
+      {
+        return filterEngine.matchVerdict(url, contentType, documentUrls);
+      }
+    };
+  }
+
+  private Callable<Boolean> isDocumentWhitelistedCallable(final String url, final String[] documentUrls)
+  {
+    return new Callable<Boolean>()
+    {
+      @Override
+      public Boolean call()
+      {
+        return filterEngine.isDocumentWhitelisted(url, documentUrls);
+      }
+    };
+  }
+
+  private Callable<Boolean> isElemhideWhitelistedCallable(final String url, final String[] documentUrls)
+  {
+    return new Callable<Boolean>()
+    {
+      @Override
+      public Boolean call()
+      {
+        return filterEngine.isElemhideWhitelisted(url, documentUrls);
+      }
+    };
+  }
+
+  private Callable<List<String>> getElementHidingSelectorsCallable(final String domain)
+  {
+    return new Callable<List<String>>()
+    {
+      @Override
+      public List<String> call()
+      {
+        return filterEngine.getElementHidingSelectors(domain);
+      }
+    };
+  }
+
+  private Callable<List<String>> getGenericElementHidingSelectorsCallable()
+  {
+    return new Callable<List<String>>()
+    {
+      @Override
+      public List<String> call()
+      {
+        return filterEngine.getGenericElementHidingSelectors();
+      }
+    };
+  }
+
+  private Callable<List<String>> getElementHidingSelectorsDeltaCallable(final String domain)
+  {
+    return new Callable<List<String>>()
+    {
+      @Override
+      public List<String> call()
+      {
+        return filterEngine.getElementHidingSelectorsDelta(domain);
+      }
+    };
+  }
+
+  private Callable<String> getHostFromURLCallable(final String url)
+  {
+    return new Callable<String>()
+    {
+      @Override
+      public String call()
+      {
+        return filterEngine.getHostFromURL(url);
+      }
+    };
+  }
+
+  private <T> void callAsync(final Callable<T> callable, final Callback<T> callback)
+  {
+    engineThread.execute(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        final T result;
+        try
+        {
+          result = callable.call();
+        }
+        catch (Throwable t)
+        {
+          callback.onError(t);
+          return;
+        }
+        callback.onResult(result);
+      }
+    });
+  }
+
+  /**
+   * Execute any other engine work on the engine thread
+   * @param callable task
+   * @return result
+   */
+  public <T> T call(final Callable<T> callable)
+  {
+    return engineThread.call(callable);
+  }
+
+  /**
+   * See {@link FilterEngine#matchVerdict(String, ContentType, String[])}
+   */
+  public int matchVerdict(final String url, final ContentType contentType, final String[] documentUrls)
+  {
+    return engineThread.call(matchVerdictCallable(url, contentType, documentUrls));
+  }
+
+  public Future<Integer> matchVerdictAsync(
+    final String url, final ContentType contentType, final String[] documentUrls)
+  {
+    return engineThread.submit(matchVerdictCallable(url, contentType, documentUrls));
+  }
+
+  public void matchVerdictAsync(final String url, final ContentType contentType,
+                                final String[] documentUrls, final Callback<Integer> callback)
+  {
+    callAsync(matchVerdictCallable(url, contentType, documentUrls), callback);
+  }
+
+  public boolean isDocumentWhitelisted(final String url, final String[] documentUrls)
+  {
+    return engineThread.call(isDocumentWhitelistedCallable(url, documentUrls));
+  }
+
+  public Future<Boolean> isDocumentWhitelistedAsync(final String url, final String[] documentUrls)
+  {
+    return engineThread.submit(isDocumentWhitelistedCallable(url, documentUrls));
+  }
+
+  public boolean isElemhideWhitelisted(final String url, final String[] documentUrls)
+  {
+    return engineThread.call(isElemhideWhitelistedCallable(url, documentUrls));
+  }
+
+  public Future<Boolean> isElemhideWhitelistedAsync(final String url, final String[] documentUrls)
+  {
+    return engineThread.submit(isElemhideWhitelistedCallable(url, documentUrls));
+  }
+
+  public List<String> getElementHidingSelectors(final String domain)
+  {
+    return engineThread.call(getElementHidingSelectorsCallable(domain));
+  }
+
+  public Future<List<String>> getElementHidingSelectorsAsync(final String domain)
+  {
+    return engineThread.submit(getElementHidingSelectorsCallable(domain));
+  }
+
+  public void getElementHidingSelectorsAsync(final String domain, final Callback<List<String>> callback)
+  {
+    callAsync(getElementHidingSelectorsCallable(domain), callback);
+  }
+
+  public List<String> getGenericElementHidingSelectors()
+  {
+    return engineThread.call(getGenericElementHidingSelectorsCallable());
+  }
+
+  public List<String> getElementHidingSelectorsDelta(final String domain)
+  {
+    return engineThread.call(getElementHidingSelectorsDeltaCallable(domain));
+  }
+
+  public String getHostFromURL(final String url)
+  {
+    return engineThread.call(getHostFromURLCallable(url));
+  }
+}
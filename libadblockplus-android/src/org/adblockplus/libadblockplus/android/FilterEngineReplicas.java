@@ -0,0 +1,356 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.android;
+
+import android.util.Log;
+
+import org.adblockplus.libadblockplus.AppInfo;
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.FilterEngine.ContentType;
+import org.adblockplus.libadblockplus.IsAllowedConnectionCallback;
+import org.adblockplus.libadblockplus.JsEngine;
+import org.adblockplus.libadblockplus.WebRequest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read-only FilterEngine replicas for parallel `matches` on several cores.
+ * Every replica is a separate JS engine (isolate) loaded from the copy of the primary engine
+ * filter data, downloads are not allowed for replicas.
+ * Replicas are rebuilt in background when the primary engine filters are changed,
+ * the primary engine is used meanwhile.
+ * Loaded replicas are published only if their filters fingerprint equals the primary engine one,
+ * otherwise (filters are not saved yet or partially saved) the rebuild is retried.
+ * Warning: every replica keeps its own copy of the filters in memory
+ */
+public class FilterEngineReplicas
+{
+  private static final String TAG = Utils.getTag(FilterEngineReplicas.class);
+
+  public static final String REPLICAS_DIRECTORY = "replicas";
+  // filters are changed in bursts and saved asynchronously, so the rebuild (and the retry) is delayed
+  public static final long REBUILD_DELAY_MILLIS = 3 * 1000;
+
+  private static final int COPY_BUFFER_SIZE = 16 * 1024;
+
+  public static final int MATCH_VERDICT_JNI_CALLS = 2;
+
+  private static final class NoConnectionCallback extends IsAllowedConnectionCallback
+  {
+    @Override
+    public boolean isConnectionAllowed(String connection)
+    {
+      return false;
+    }
+  }
+
+  private static final class Replica
+  {
+    private final WebRequest webRequest = new OfflineWebRequest();
+    private final IsAllowedConnectionCallback callback = new NoConnectionCallback();
+    private JsEngine jsEngine;
+    private FilterEngine filterEngine;
+
+    private void dispose()
+    {
+      if (filterEngine != null)
+      {
+        filterEngine.dispose();
+      }
+      if (jsEngine != null)
+      {
+        jsEngine.dispose();
+      }
+      callback.dispose();
+      webRequest.dispose();
+    }
+  }
+
+  // replicas of the same filters generation are published and disposed together
+  private final class ReplicasHolder extends FilterSnapshotHolder<Replica[]>
+  {
+    private ReplicasHolder()
+    {
+      super("FilterEngineReplicas", primary, REBUILD_DELAY_MILLIS);
+    }
+
+    @Override
+    protected Replica[] build(final long generation) throws IOException
+    {
+      return buildReplicas(generation);
+    }
+
+    @Override
+    protected void disposeSnapshot(final Replica[] replicas)
+    {
+      disposeReplicas(replicas);
+    }
+
+    @Override
+    protected void onPublished(final Replica[] replicas, final long generation)
+    {
+      deleteStaleDirectories(new File(basePath, REPLICAS_DIRECTORY), generation);
+      Log.d(TAG, "Replicas rebuilt for generation " + generation);
+    }
+  }
+
+  private final AppInfo appInfo;
+  private final File basePath;
+  private final FilterEngine primary;
+  private final EngineThread engineThread;
+  private final int count;
+  private final AtomicInteger nextReplica = new AtomicInteger();
+  private final ReplicasHolder holder;
+
+  /**
+   * Constructor. Replicas are built in background
+   * @param appInfo app info
+   * @param basePath primary engine base path
+   * @param primary primary engine
+   * @param count replicas count
+   */
+  public FilterEngineReplicas(final AppInfo appInfo, final String basePath,
+                              final FilterEngine primary, final int count)
+  {
+    this(appInfo, basePath, primary, null, count);
+  }
+
+  /**
+   * Constructor. Replicas are built in background
+   * @param appInfo app info
+   * @param basePath primary engine base path
+   * @param primary primary engine
+   * @param engineThread the primary engine is called on the engine thread if not `null`
+   * @param count replicas count
+   */
+  public FilterEngineReplicas(final AppInfo appInfo, final String basePath,
+                              final FilterEngine primary, final EngineThread engineThread,
+                              final int count)
+  {
+    this.appInfo = appInfo;
+    this.basePath = new File(basePath);
+    this.primary = primary;
+    this.engineThread = engineThread;
+    this.count = count;
+    this.holder = new ReplicasHolder();
+    this.holder.scheduleRebuild();
+  }
+
+  /**
+   * See {@link FilterEngine#matchVerdict(String, ContentType, String[])}.
+   * Executed on one of the replicas (round-robin) if they are up to date or on the primary engine.
+   * Makes {@link #MATCH_VERDICT_JNI_CALLS} JNI calls (filter change generation and the verdict)
+   */
+  public int matchVerdict(final String url, final ContentType contentType, final String[] documentUrls)
+  {
+    final FilterSnapshotHolder.Reference<Replica[]> reference = holder.acquire();
+    if (reference != null)
+    {
+      try
+      {
+        final Replica[] replicas = reference.get();
+        final int index = (nextReplica.getAndIncrement() & Integer.MAX_VALUE) % replicas.length;
+        return replicas[index].filterEngine.matchVerdict(url, contentType, documentUrls);
+      }
+      finally
+      {
+        reference.release();
+      }
+    }
+
+    // the rebuild is scheduled by `acquire()`
+    if (engineThread != null)
+    {
+      return engineThread.call(new Callable<Integer>()
+      {
+        @Override
+        public Integer call()
+        {
+          return primary.matchVerdict(url, contentType, documentUrls);
+        }
+      });
+    }
+    return primary.matchVerdict(url, contentType, documentUrls);
+  }
+
+  /**
+   * @return `true` if the replicas are built for the current filters
+   */
+  public boolean isUpToDate()
+  {
+    return holder.isUpToDate();
+  }
+
+  public int getCount()
+  {
+    return count;
+  }
+
+  // `null` if the loaded filters differ from the primary engine ones
+  private Replica[] buildReplicas(final long generation) throws IOException
+  {
+    final long fingerprint = EngineThread.call(engineThread, new Callable<Long>()
+    {
+      @Override
+      public Long call()
+      {
+        return primary.getFiltersFingerprint();
+      }
+    });
+    Log.d(TAG, "Rebuilding " + count + " replicas for generation " + generation);
+
+    final File replicasDirectory = new File(basePath, REPLICAS_DIRECTORY);
+    final Replica[] replicas = new Replica[count];
+    try
+    {
+      for (int i = 0; i < count; i++)
+      {
+        // the directory of the retired replica can't be reused while it can be in use
+        final File directory = new File(replicasDirectory, generation + "_" + i);
+        copyFiles(basePath, directory);
+
+        final Replica replica = new Replica();
+        replicas[i] = replica;
+        replica.jsEngine = new JsEngine(appInfo);
+        replica.jsEngine.setDefaultFileSystem(directory.getAbsolutePath());
+        replica.jsEngine.setWebRequest(replica.webRequest);
+        // filters are loaded when FilterEngine is created
+        replica.filterEngine = new FilterEngine(replica.jsEngine, replica.callback);
+        replica.filterEngine.setMatchesCacheCapacity(primary.getMatchesCacheCapacity());
+
+        // the copied files can be outdated or partially written by the primary engine
+        if (replica.filterEngine.getFiltersFingerprint() != fingerprint)
+        {
+          Log.d(TAG, "Replica filters differ from the primary engine ones, retrying later");
+          disposeReplicas(replicas);
+          return null;
+        }
+      }
+    }
+    catch (IOException e)
+    {
+      disposeReplicas(replicas);
+      throw e;
+    }
+    return replicas;
+  }
+
+  private static void disposeReplicas(final Replica[] replicas)
+  {
+    for (final Replica replica : replicas)
+    {
+      if (replica != null)
+      {
+        replica.dispose();
+      }
+    }
+  }
+
+  // copies regular files only: filters, prefs (subdirectories are caches)
+  private static void copyFiles(final File from, final File to) throws IOException
+  {
+    if (!to.isDirectory() && !to.mkdirs())
+    {
+      throw new IOException("Failed to create " + to.getAbsolutePath());
+    }
+
+    final File[] files = from.listFiles();
+    if (files == null)
+    {
+      return;
+    }
+
+    final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+    for (final File file : files)
+    {
+      if (!file.isFile())
+      {
+        continue;
+      }
+
+      final InputStream inputStream = new FileInputStream(file);
+      try
+      {
+        final OutputStream outputStream = new FileOutputStream(new File(to, file.getName()));
+        try
+        {
+          int read;
+          while ((read = inputStream.read(buffer)) != -1)
+          {
+            outputStream.write(buffer, 0, read);
+          }
+        }
+        finally
+        {
+          outputStream.close();
+        }
+      }
+      finally
+      {
+        inputStream.close();
+      }
+    }
+  }
+
+  private static void deleteStaleDirectories(final File replicasDirectory, final long generation)
+  {
+    final File[] directories = replicasDirectory.listFiles();
+    if (directories == null)
+    {
+      return;
+    }
+
+    // files of the retired replicas are loaded in memory already
+    final String prefix = generation + "_";
+    for (final File directory : directories)
+    {
+      if (!directory.getName().startsWith(prefix))
+      {
+        deleteRecursively(directory);
+      }
+    }
+  }
+
+  private static void deleteRecursively(final File file)
+  {
+    final File[] children = file.listFiles();
+    if (children != null)
+    {
+      for (final File child : children)
+      {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+
+  /**
+   * Stop rebuilding and dispose the replicas (when not used anymore)
+   */
+  public void dispose()
+  {
+    holder.dispose();
+  }
+}
@@ -0,0 +1,286 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.adblockplus.libadblockplus.android;
+
+import android.util.Log;
+
+import org.adblockplus.libadblockplus.FilterEngine;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a snapshot derived from the filters of FilterEngine (eg. a matcher)
+ * along with the filters generation it's built for.
+ * The snapshot is rebuilt in background when the filters are changed,
+ * the retired snapshot is disposed when it's not used anymore.
+ * @param <T> snapshot type
+ */
+public abstract class FilterSnapshotHolder<T>
+{
+  private static final String TAG = Utils.getTag(FilterSnapshotHolder.class);
+
+  public static final long SHUTDOWN_TIMEOUT_MILLIS = 10 * 1000;
+
+  /**
+   * Snapshot acquired for use, see {@link FilterSnapshotHolder#acquire()}
+   */
+  public static final class Reference<T>
+  {
+    private final FilterSnapshotHolder<T> holder;
+    private final T snapshot;
+    private final long generation;
+    // the holder itself holds one reference until the snapshot is retired
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private Reference(final FilterSnapshotHolder<T> holder, final T snapshot, final long generation)
+    {
+      this.holder = holder;
+      this.snapshot = snapshot;
+      this.generation = generation;
+    }
+
+    private boolean acquire()
+    {
+      while (true)
+      {
+        final int current = references.get();
+        if (current == 0)
+        {
+          return false;
+        }
+        if (references.compareAndSet(current, current + 1))
+        {
+          return true;
+        }
+      }
+    }
+
+    public T get()
+    {
+      return snapshot;
+    }
+
+    public long getGeneration()
+    {
+      return generation;
+    }
+
+    /**
+     * Must be called once for every reference returned by {@link FilterSnapshotHolder#acquire()}
+     */
+    public void release()
+    {
+      if (references.decrementAndGet() == 0)
+      {
+        holder.disposeSnapshot(snapshot);
+      }
+    }
+  }
+
+  private final FilterEngine filterEngine;
+  private final long rebuildDelayMillis;
+  private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+  private final ScheduledExecutorService rebuildExecutor;
+  private volatile boolean rebuildAttempted;
+  private volatile Reference<T> current;
+  private volatile boolean disposed;
+
+  /**
+   * Constructor. Call {@link #scheduleRebuild()} to build the first snapshot
+   * @param threadName name of the background thread
+   * @param filterEngine FilterEngine the snapshot is derived from
+   * @param rebuildDelayMillis delay of the rebuilds after the first one (and of the retries)
+   */
+  protected FilterSnapshotHolder(final String threadName, final FilterEngine filterEngine,
+                                 final long rebuildDelayMillis)
+  {
+    this.filterEngine = filterEngine;
+    this.rebuildDelayMillis = rebuildDelayMillis;
+    this.rebuildExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+    {
+      @Override
+      public Thread newThread(Runnable runnable)
+      {
+        Thread thread = new Thread(runnable, threadName);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Build the snapshot of the current filters. Invoked in background
+   * @param generation filters generation read before the build
+   * @return snapshot or `null` to retry later
+   */
+  protected abstract T build(long generation) throws Exception;
+
+  /**
+   * Dispose the snapshot retired and not used anymore
+   * @param snapshot snapshot
+   */
+  protected abstract void disposeSnapshot(T snapshot);
+
+  /**
+   * Invoked in background after the snapshot is built and published
+   * @param snapshot snapshot
+   * @param generation filters generation of the snapshot
+   */
+  protected void onPublished(final T snapshot, final long generation)
+  {
+    //
+  }
+
+  /**
+   * Get the snapshot if it's built for the current filters, otherwise schedule the rebuild.
+   * Makes exactly one JNI call (filter change generation)
+   * @return snapshot reference to release after use or `null` if the snapshot is not up to date
+   */
+  public Reference<T> acquire()
+  {
+    final long generation = filterEngine.getFilterChangeGeneration();
+    final Reference<T> reference = this.current;
+    if (reference != null
+        && reference.generation == generation
+        && reference.acquire())
+    {
+      return reference;
+    }
+
+    scheduleRebuild();
+    return null;
+  }
+
+  /**
+   * @return `true` if the snapshot is built for the current filters
+   */
+  public boolean isUpToDate()
+  {
+    final Reference<T> reference = this.current;
+    return reference != null && reference.generation == filterEngine.getFilterChangeGeneration();
+  }
+
+  protected void scheduleRebuild()
+  {
+    if (disposed || !rebuildScheduled.compareAndSet(false, true))
+    {
+      return;
+    }
+
+    rebuildExecutor.schedule(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        rebuildScheduled.set(false);
+        if (disposed || isUpToDate())
+        {
+          return;
+        }
+
+        boolean rebuilt = false;
+        try
+        {
+          rebuilt = rebuild();
+        }
+        catch (Throwable t)
+        {
+          Log.e(TAG, "Failed to rebuild the snapshot", t);
+        }
+
+        if (!rebuilt)
+        {
+          scheduleRebuild();
+        }
+      }
+    }, (rebuildAttempted ? rebuildDelayMillis : 0), TimeUnit.MILLISECONDS);
+  }
+
+  private boolean rebuild() throws Exception
+  {
+    rebuildAttempted = true;
+    // taken before the filters are read, so the snapshot is never newer than its generation
+    final long generation = filterEngine.getFilterChangeGeneration();
+    final T snapshot = build(generation);
+    if (snapshot == null)
+    {
+      return false;
+    }
+
+    final Reference<T> retired;
+    synchronized (this)
+    {
+      if (disposed)
+      {
+        retired = new Reference<T>(this, snapshot, generation);
+      }
+      else
+      {
+        retired = this.current;
+        this.current = new Reference<T>(this, snapshot, generation);
+      }
+    }
+    if (retired != null)
+    {
+      retired.release();
+    }
+
+    if (!disposed)
+    {
+      onPublished(snapshot, generation);
+    }
+    return true;
+  }
+
+  /**
+   * Stop rebuilding and dispose the snapshot (when not used anymore)
+   */
+  public void dispose()
+  {
+    final Reference<T> retired;
+    synchronized (this)
+    {
+      disposed = true;
+      retired = this.current;
+      this.current = null;
+    }
+
+    rebuildExecutor.shutdownNow();
+    try
+    {
+      // running rebuild is using FilterEngine, wait until it's finished
+      if (!rebuildExecutor.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+      {
+        Log.w(TAG, "Rebuild is not finished in " + SHUTDOWN_TIMEOUT_MILLIS + "ms");
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+
+    if (retired != null)
+    {
+      retired.release();
+    }
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.android;
+
+import org.adblockplus.libadblockplus.FilterEngine;
+
+/**
+ * Extracts host from URL in Java for plain ASCII URLs.
+ * URLs with user info, IPv6 address, escaped or non-ASCII (IDN) characters are passed
+ * to {@link FilterEngine#getHostFromURL(String)} which is the reference implementation.
+ * Results are cached in direct-mapped cache keyed by URL prefix (scheme and authority),
+ * so cache hit does not allocate.
+ */
+public class HostExtractor
+{
+  public static final int DEFAULT_CAPACITY = 256;
+
+  private static final class Entry
+  {
+    private final String prefix;
+    private final String host;
+
+    private Entry(final String prefix, final String host)
+    {
+      this.prefix = prefix;
+      this.host = host;
+    }
+  }
+
+  private final FilterEngine filterEngine;
+  private final FilterEngineDispatcher dispatcher;
+  // racy but safe: entries are immutable and replaced entirely
+  private final Entry[] entries;
+  private final int mask;
+
+  // statistics only, increments are not atomic
+  private volatile long hits;
+  private volatile long misses;
+  private volatile long fallbacks;
+
+  /**
+   * Constructor
+   * @param filterEngine reference implementation
+   * @param capacity cache capacity (rounded up to power of 2)
+   */
+  public HostExtractor(final FilterEngine filterEngine, final int capacity)
+  {
+    this(filterEngine, null, capacity);
+  }
+
+  /**
+   * Constructor
+   * @param dispatcher reference implementation is called on the engine thread of the dispatcher
+   * @param capacity cache capacity (rounded up to power of 2)
+   */
+  public HostExtractor(final FilterEngineDispatcher dispatcher, final int capacity)
+  {
+    this(dispatcher.getFilterEngine(), dispatcher, capacity);
+  }
+
+  private HostExtractor(final FilterEngine filterEngine, final FilterEngineDispatcher dispatcher,
+                        final int capacity)
+  {
+    this.filterEngine = filterEngine;
+    this.dispatcher = dispatcher;
+    int size = 1;
+    while (size < capacity)
+    {
+      size <<= 1;
+    }
+    this.entries = new Entry[size];
+    this.mask = size - 1;
+  }
+
+  /**
+   * Get host from URL
+   * @param url URL
+   * @return host (the same as {@link FilterEngine#getHostFromURL(String)} returns)
+   */
+  public String getHost(final String url)
+  {
+    if (url == null)
+    {
+      return fallback(url);
+    }
+
+    final int length = url.length();
+    final int schemeEnd = url.indexOf(':');
+    if (schemeEnd <= 0
+        || schemeEnd + 2 >= length
+        || url.charAt(schemeEnd + 1) != '/'
+        || url.charAt(schemeEnd + 2) != '/')
+    {
+      return fallback(url);
+    }
+
+    // single pass over the authority: find its end, port and check if it's plain
+    final int hostStart = schemeEnd + 3;
+    int hash = 0;
+    for (int i = 0; i < hostStart; i++)
+    {
+      hash = 31 * hash + url.charAt(i);
+    }
+
+    boolean plain = true;
+    int portStart = -1;
+    int authorityEnd = length;
+    for (int i = hostStart; i < length; i++)
+    {
+      final char c = url.charAt(i);
+      if (c == '/')
+      {
+        authorityEnd = i;
+        break;
+      }
+      if (c == '?' || c == '#')
+      {
+        // authority end is ambiguous, not cached
+        return fallback(url);
+      }
+      hash = 31 * hash + c;
+
+      if (c == ':')
+      {
+        plain &= (portStart < 0);
+        portStart = i;
+      }
+      else if (portStart >= 0)
+      {
+        plain &= (c >= '0' && c <= '9');
+      }
+      else
+      {
+        plain &= (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '.';
+      }
+    }
+
+    final int hostEnd = (portStart >= 0 ? portStart : authorityEnd);
+    plain &= (hostEnd > hostStart && url.charAt(hostEnd - 1) != '.');
+
+    final int index = (hash ^ (hash >>> 16)) & mask;
+    final Entry entry = entries[index];
+    if (entry != null
+        && entry.prefix.length() == authorityEnd
+        && url.regionMatches(0, entry.prefix, 0, authorityEnd))
+    {
+      hits++;
+      return entry.host;
+    }
+    misses++;
+
+    final String host = (plain ? url.substring(hostStart, hostEnd) : fallback(url));
+    entries[index] = new Entry(url.substring(0, authorityEnd), host);
+    return host;
+  }
+
+  private String fallback(final String url)
+  {
+    fallbacks++;
+    return (dispatcher != null
+      ? dispatcher.getHostFromURL(url)
+      : filterEngine.getHostFromURL(url));
+  }
+
+  public void clear()
+  {
+    for (int i = 0; i < entries.length; i++)
+    {
+      entries[i] = null;
+    }
+  }
+
+  public long getHits()
+  {
+    return hits;
+  }
+
+  public long getMisses()
+  {
+    return misses;
+  }
+
+  /**
+   * @return number of calls to the reference implementation
+   */
+  public long getFallbacks()
+  {
+    return fallbacks;
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.android;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe latency histogram with log-linear buckets (HDR-style):
+ * every power of 2 range is split into {@link #SUB_BUCKETS} linear buckets,
+ * so relative error of the reported values is below 1 / {@link #SUB_BUCKETS}
+ */
+public class LatencyHistogram
+{
+  public static final int SUB_BUCKET_BITS = 4;
+  public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  // values below SUB_BUCKETS are stored exactly, then SUB_BUCKETS per each power of 2
+  private static final int BUCKETS = SUB_BUCKETS * (Long.SIZE - SUB_BUCKET_BITS);
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Immutable copy of the histogram
+   */
+  public static final class Snapshot
+  {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    private Snapshot(final long[] counts, final long count, final long sum, final long max)
+    {
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+    }
+
+    public long getCount()
+    {
+      return count;
+    }
+
+    public long getMax()
+    {
+      return max;
+    }
+
+    public double getMean()
+    {
+      return (count > 0 ? (double) sum / count : 0);
+    }
+
+    /**
+     * Get the value at percentile
+     * @param percentile percentile [0..100]
+     * @return the highest value equivalent to the value at percentile (0 if empty)
+     */
+    public long getValueAtPercentile(final double percentile)
+    {
+      if (count == 0)
+      {
+        return 0;
+      }
+
+      final long target = Math.max(1, (long) Math.ceil(count * Math.min(percentile, 100.0) / 100.0));
+      long accumulated = 0;
+      for (int i = 0; i < counts.length; i++)
+      {
+        accumulated += counts[i];
+        if (accumulated >= target)
+        {
+          return Math.min(getHighestValue(i), max);
+        }
+      }
+      return max;
+    }
+  }
+
+  /**
+   * Record the value
+   * @param value value (negative values are recorded as 0)
+   */
+  public void record(long value)
+  {
+    if (value < 0)
+    {
+      value = 0;
+    }
+
+    counts.incrementAndGet(getIndex(value));
+    sum.addAndGet(value);
+
+    long currentMax = max.get();
+    while (value > currentMax && !max.compareAndSet(currentMax, value))
+    {
+      currentMax = max.get();
+    }
+  }
+
+  public Snapshot snapshot()
+  {
+    final long[] countsCopy = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++)
+    {
+      countsCopy[i] = counts.get(i);
+      total += countsCopy[i];
+    }
+    // concurrent `record` can be partially visible, bucket counts are used as the source of truth
+    return new Snapshot(countsCopy, total, sum.get(), max.get());
+  }
+
+  public void reset()
+  {
+    for (int i = 0; i < BUCKETS; i++)
+    {
+      counts.set(i, 0);
+    }
+    sum.set(0);
+    max.set(0);
+  }
+
+  static int getIndex(final long value)
+  {
+    if (value < SUB_BUCKETS)
+    {
+      return (int) value;
+    }
+    final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+    return SUB_BUCKETS * (exponent - SUB_BUCKET_BITS + 1) + subBucket;
+  }
+
+  static long getHighestValue(final int index)
+  {
+    if (index < SUB_BUCKETS)
+    {
+      return index;
+    }
+    final int shift = index / SUB_BUCKETS - 1;
+    final long subBucket = SUB_BUCKETS + index % SUB_BUCKETS;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.adblockplus.libadblockplus.android;
+
+import android.util.Log;
+
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.JsEngine;
+import org.adblockplus.libadblockplus.NativeMatcher;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Keeps {@link NativeMatcher} built from the current filters of FilterEngine.
+ * The matcher is rebuilt in background when the filters are changed,
+ * FilterEngine (JS matcher) should be used meanwhile.
+ */
+public class NativeMatcherProvider extends FilterSnapshotHolder<NativeMatcher>
+{
+  private static final String TAG = Utils.getTag(NativeMatcherProvider.class);
+
+  // filters are changed in bursts (eg. subscription update), so the rebuild is delayed
+  public static final long REBUILD_DELAY_MILLIS = 1000;
+
+  private final JsEngine jsEngine;
+  private final EngineThread engineThread;
+
+  /**
+   * Constructor. The matcher is built in background
+   * @param jsEngine JS engine of FilterEngine
+   * @param filterEngine FilterEngine to take the filters from
+   */
+  public NativeMatcherProvider(final JsEngine jsEngine, final FilterEngine filterEngine)
+  {
+    this(jsEngine, filterEngine, null);
+  }
+
+  /**
+   * Constructor. The matcher is built in background
+   * @param jsEngine JS engine of FilterEngine
+   * @param filterEngine FilterEngine to take the filters from
+   * @param engineThread the filters are read on the engine thread if not `null`
+   */
+  public NativeMatcherProvider(final JsEngine jsEngine, final FilterEngine filterEngine,
+                               final EngineThread engineThread)
+  {
+    super("NativeMatcherProvider", filterEngine, REBUILD_DELAY_MILLIS);
+    this.jsEngine = jsEngine;
+    this.engineThread = engineThread;
+    scheduleRebuild();
+  }
+
+  @Override
+  protected NativeMatcher build(final long generation)
+  {
+    final long started = System.currentTimeMillis();
+    final NativeMatcher matcher = EngineThread.call(engineThread, new Callable<NativeMatcher>()
+    {
+      @Override
+      public NativeMatcher call()
+      {
+        return NativeMatcher.fromJsEngine(jsEngine);
+      }
+    });
+    Log.d(TAG, "Native matcher with " + matcher.getFilterCount() + " filters built for generation "
+      + generation + " in " + (System.currentTimeMillis() - started) + " ms");
+    return matcher;
+  }
+
+  @Override
+  protected void disposeSnapshot(final NativeMatcher matcher)
+  {
+    matcher.dispose();
+  }
+}
@@ -0,0 +1,39 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.android;
+
+import org.adblockplus.libadblockplus.HeaderEntry;
+import org.adblockplus.libadblockplus.ServerResponse;
+import org.adblockplus.libadblockplus.WebRequest;
+
+import java.util.List;
+
+/**
+ * WebRequest without network access: every request fails.
+ * Wrap it with {@link AndroidWebRequestResourceWrapper} to serve subscriptions from resources only
+ */
+public class OfflineWebRequest extends WebRequest
+{
+  @Override
+  public ServerResponse httpGET(String url, List<HeaderEntry> headers)
+  {
+    ServerResponse response = new ServerResponse();
+    response.setStatus(ServerResponse.NsStatus.ERROR_FAILURE);
+    return response;
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.android;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded url -> referrer map to reconstruct document urls chains (frame ancestry).
+ * Reads are lock-free, the oldest urls are evicted when the capacity is reached
+ */
+public class ReferrerChainTracker
+{
+  public static final int DEFAULT_CAPACITY = 1024;
+  public static final int MAX_CHAIN_LENGTH = 16;
+
+  private static final String[] EMPTY_CHAIN = {};
+
+  private final Map<String, String> url2Referrer;
+  // insertion order ring for eviction, guarded by `this`
+  private final String[] urls;
+  private int position;
+
+  public ReferrerChainTracker(final int capacity)
+  {
+    this.url2Referrer = new ConcurrentHashMap<String, String>(capacity);
+    this.urls = new String[capacity];
+  }
+
+  /**
+   * Remember the referrer of the url
+   * @param url resource url
+   * @param referrer document url requesting the resource
+   */
+  public void put(final String url, final String referrer)
+  {
+    if (url == null || referrer == null || url.equals(referrer))
+    {
+      return;
+    }
+
+    synchronized (this)
+    {
+      if (url2Referrer.put(url, referrer) != null)
+      {
+        // already tracked, referrer is updated
+        return;
+      }
+
+      final String evictedUrl = urls[position];
+      if (evictedUrl != null)
+      {
+        url2Referrer.remove(evictedUrl);
+      }
+      urls[position] = url;
+      position = (position + 1) % urls.length;
+    }
+  }
+
+  /**
+   * Get referrer of the url
+   * @param url url
+   * @return referrer or `null` if unknown
+   */
+  public String get(final String url)
+  {
+    return (url != null ? url2Referrer.get(url) : null);
+  }
+
+  /**
+   * Build document urls chain starting with the referrer
+   * (the resource frame) and ending with the top level document
+   * @param referrer document url requesting the resource
+   * @return chain of document urls
+   */
+  public String[] getChain(final String referrer)
+  {
+    if (referrer == null)
+    {
+      return EMPTY_CHAIN;
+    }
+
+    String[] chain = new String[4];
+    int length = 0;
+    String url = referrer;
+    while (url != null && length < MAX_CHAIN_LENGTH && !contains(chain, length, url))
+    {
+      if (length == chain.length)
+      {
+        final String[] newChain = new String[chain.length * 2];
+        System.arraycopy(chain, 0, newChain, 0, length);
+        chain = newChain;
+      }
+      chain[length++] = url;
+      url = url2Referrer.get(url);
+    }
+
+    if (length == chain.length)
+    {
+      return chain;
+    }
+    final String[] result = new String[length];
+    System.arraycopy(chain, 0, result, 0, length);
+    return result;
+  }
+
+  // chains are short, so linear search is used to detect the loops
+  private static boolean contains(final String[] chain, final int length, final String url)
+  {
+    for (int i = 0; i < length; i++)
+    {
+      if (chain[i].equals(url))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public int size()
+  {
+    return url2Referrer.size();
+  }
+
+  public synchronized void clear()
+  {
+    url2Referrer.clear();
+    for (int i = 0; i < urls.length; i++)
+    {
+      urls[i] = null;
+    }
+    position = 0;
+  }
+}
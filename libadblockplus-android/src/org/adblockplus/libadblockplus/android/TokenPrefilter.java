@@ -0,0 +1,254 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.adblockplus.libadblockplus.android;
+
+import org.adblockplus.libadblockplus.FilterEngine;
+
+import java.util.List;
+
+/**
+ * Bloom filter of the tokens a request must have at least one of to match any blocking filter
+ * (see {@link FilterEngine#getPrefilterTokens()}).
+ * If {@link #mayMatch} returns `false` no blocking filter matches the request, so it's allowed
+ * without calling FilterEngine. False positives are possible, false negatives are not.
+ * Immutable, built for the filters generation.
+ */
+public class TokenPrefilter
+{
+  public static final char KIND_KEYWORD = 'k';
+  public static final char KIND_SUBSTRING = 's';
+  public static final char KIND_DOMAIN = 'd';
+
+  public static final int SUBSTRING_LENGTH = 4;
+  public static final int MIN_KEYWORD_LENGTH = 3;
+
+  // ~0.1% false positive rate per check
+  public static final int BITS_PER_TOKEN = 16;
+  public static final int HASH_FUNCTIONS = 6;
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final long generation;
+  // null if the filters can't be prefiltered, every request may match then
+  private final long[] bits;
+  private final int mask;
+  private final int tokenCount;
+  private final boolean hasKeywords;
+  private final boolean hasSubstrings;
+  private final boolean hasDomains;
+
+  private TokenPrefilter(final long generation, final List<String> tokens)
+  {
+    this.generation = generation;
+    if (tokens == null)
+    {
+      this.bits = null;
+      this.mask = 0;
+      this.tokenCount = 0;
+      this.hasKeywords = this.hasSubstrings = this.hasDomains = false;
+      return;
+    }
+
+    int size = Long.SIZE;
+    while (size < tokens.size() * BITS_PER_TOKEN)
+    {
+      size <<= 1;
+    }
+    this.bits = new long[size / Long.SIZE];
+    this.mask = size - 1;
+    this.tokenCount = tokens.size();
+
+    boolean keywords = false;
+    boolean substrings = false;
+    boolean domains = false;
+    for (final String token : tokens)
+    {
+      final char kind = token.charAt(0);
+      keywords |= (kind == KIND_KEYWORD);
+      substrings |= (kind == KIND_SUBSTRING);
+      domains |= (kind == KIND_DOMAIN);
+      add(hash(kind, token, 1, token.length()));
+    }
+    this.hasKeywords = keywords;
+    this.hasSubstrings = substrings;
+    this.hasDomains = domains;
+  }
+
+  /**
+   * Build the prefilter for the current filters
+   * @param filterEngine filter engine
+   * @return prefilter
+   */
+  public static TokenPrefilter build(final FilterEngine filterEngine)
+  {
+    // taken before the tokens are read, so the prefilter is never newer than its generation
+    final long generation = filterEngine.getFilterChangeGeneration();
+    return new TokenPrefilter(generation, filterEngine.getPrefilterTokens());
+  }
+
+  public long getGeneration()
+  {
+    return generation;
+  }
+
+  /**
+   * @return `false` if every request may match (some filter can't be prefiltered)
+   */
+  public boolean isEnabled()
+  {
+    return bits != null;
+  }
+
+  public int getTokenCount()
+  {
+    return tokenCount;
+  }
+
+  /**
+   * Check if the request may match any blocking filter
+   * @param url request URL
+   * @param documentUrls referrers chain
+   * @param hostExtractor used to get the document domains if there are domain tokens
+   * @return `false` if no blocking filter matches the request for sure
+   */
+  public boolean mayMatch(final String url, final String[] documentUrls, final HostExtractor hostExtractor)
+  {
+    if (bits == null || url == null)
+    {
+      return true;
+    }
+
+    final int length = url.length();
+    if (hasKeywords)
+    {
+      int runStart = -1;
+      for (int i = 0; i <= length; i++)
+      {
+        if (i < length && isKeywordChar(toLowerCase(url.charAt(i))))
+        {
+          if (runStart < 0)
+          {
+            runStart = i;
+          }
+        }
+        else if (runStart >= 0)
+        {
+          if (i - runStart >= MIN_KEYWORD_LENGTH && contains(hash(KIND_KEYWORD, url, runStart, i)))
+          {
+            return true;
+          }
+          runStart = -1;
+        }
+      }
+    }
+
+    if (hasSubstrings)
+    {
+      for (int i = 0; i + SUBSTRING_LENGTH <= length; i++)
+      {
+        if (contains(hash(KIND_SUBSTRING, url, i, i + SUBSTRING_LENGTH)))
+        {
+          return true;
+        }
+      }
+    }
+
+    if (hasDomains && documentUrls != null)
+    {
+      for (final String documentUrl : documentUrls)
+      {
+        final String host = hostExtractor.getHost(documentUrl);
+        if (host == null)
+        {
+          continue;
+        }
+        int end = host.length();
+        while (end > 0 && host.charAt(end - 1) == '.')
+        {
+          end--;
+        }
+        // the domain and its parent domains
+        int start = 0;
+        while (start < end)
+        {
+          if (contains(hash(KIND_DOMAIN, host, start, end)))
+          {
+            return true;
+          }
+          final int dot = host.indexOf('.', start);
+          if (dot < 0 || dot >= end)
+          {
+            break;
+          }
+          start = dot + 1;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  private static char toLowerCase(final char c)
+  {
+    return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+  }
+
+  private static boolean isKeywordChar(final char c)
+  {
+    return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '%';
+  }
+
+  // FNV-1a of the kind and lower case chars
+  private static long hash(final char kind, final String value, final int start, final int end)
+  {
+    long hash = FNV_OFFSET_BASIS;
+    hash = (hash ^ kind) * FNV_PRIME;
+    for (int i = start; i < end; i++)
+    {
+      hash = (hash ^ toLowerCase(value.charAt(i))) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+  // double hashing: h1 + i * h2
+  private void add(final long hash)
+  {
+    final int h1 = (int) hash;
+    final int h2 = (int) (hash >>> 32) | 1;
+    for (int i = 0; i < HASH_FUNCTIONS; i++)
+    {
+      final int bit = (h1 + i * h2) & mask;
+      bits[bit >>> 6] |= 1L << bit;
+    }
+  }
+
+  private boolean contains(final long hash)
+  {
+    final int h1 = (int) hash;
+    final int h2 = (int) (hash >>> 32) | 1;
+    for (int i = 0; i < HASH_FUNCTIONS; i++)
+    {
+      final int bit = (h1 + i * h2) & mask;
+      if ((bits[bit >>> 6] & (1L << bit)) == 0)
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,298 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2017 eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.android;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * Persistent HTTP validators (ETag and Last-Modified) and response bodies
+ * to make conditional requests and reuse the body if it's not modified
+ */
+public class ValidatorCache
+{
+  private static final String TAG = Utils.getTag(ValidatorCache.class);
+
+  private static final String META_EXTENSION = ".meta";
+  private static final String BODY_EXTENSION = ".body";
+  private static final String TMP_EXTENSION = ".tmp";
+
+  private static final String KEY = "key";
+  private static final String ETAG = "etag";
+  private static final String LAST_MODIFIED = "lastModified";
+  private static final String LENGTH = "length";
+
+  public static class Validators
+  {
+    private final String eTag;
+    private final String lastModified;
+
+    public Validators(final String eTag, final String lastModified)
+    {
+      this.eTag = eTag;
+      this.lastModified = lastModified;
+    }
+
+    public String getETag()
+    {
+      return eTag;
+    }
+
+    public String getLastModified()
+    {
+      return lastModified;
+    }
+
+    public boolean isEmpty()
+    {
+      return eTag == null && lastModified == null;
+    }
+  }
+
+  private final File directory;
+
+  /**
+   * Ctor
+   * @param directory directory to store the files in (created if missing)
+   */
+  public ValidatorCache(final File directory)
+  {
+    this.directory = directory;
+  }
+
+  /**
+   * Get stored validators
+   * @param key cache key (eg. URL without params)
+   * @return validators or `null` if nothing is stored or the body is missing
+   */
+  public synchronized Validators get(final String key)
+  {
+    final Properties meta = readMeta(key);
+    if (meta == null)
+    {
+      return null;
+    }
+
+    final long length;
+    try
+    {
+      length = Long.parseLong(meta.getProperty(LENGTH, "-1"));
+    }
+    catch (NumberFormatException e)
+    {
+      Log.w(TAG, "Corrupted validators for " + key, e);
+      remove(key);
+      return null;
+    }
+
+    final File bodyFile = getFile(key, BODY_EXTENSION);
+    if (!bodyFile.exists() || bodyFile.length() != length)
+    {
+      return null;
+    }
+
+    return new Validators(meta.getProperty(ETAG), meta.getProperty(LAST_MODIFIED));
+  }
+
+  /**
+   * Read stored response body
+   * @param key cache key
+   * @return flipped direct buffer or `null` if failed to read
+   */
+  public synchronized ByteBuffer getBody(final String key)
+  {
+    final File bodyFile = getFile(key, BODY_EXTENSION);
+    try
+    {
+      final FileInputStream stream = new FileInputStream(bodyFile);
+      try
+      {
+        final FileChannel channel = stream.getChannel();
+        final ByteBuffer body = ByteBuffer.allocateDirect((int) channel.size());
+        while (body.hasRemaining() && channel.read(body) != -1)
+        {
+          // read to the end
+        }
+        body.flip();
+        return body;
+      }
+      finally
+      {
+        stream.close();
+      }
+    }
+    catch (IOException e)
+    {
+      Log.w(TAG, "Failed to read cached body for " + key, e);
+      return null;
+    }
+  }
+
+  /**
+   * Store validators and response body
+   * @param key cache key
+   * @param validators response validators, the entry is removed if they're empty
+   * @param body response body, position and limit are not changed
+   */
+  public synchronized void put(final String key, final Validators validators, final ByteBuffer body)
+  {
+    if (validators.isEmpty())
+    {
+      remove(key);
+      return;
+    }
+
+    if (!directory.exists() && !directory.mkdirs())
+    {
+      Log.w(TAG, "Failed to create " + directory);
+      return;
+    }
+
+    try
+    {
+      // body is written first as the entry is valid only if meta matches the body
+      final File bodyTmpFile = getFile(key, BODY_EXTENSION + TMP_EXTENSION);
+      final FileOutputStream bodyStream = new FileOutputStream(bodyTmpFile);
+      try
+      {
+        final ByteBuffer bodyToWrite = body.duplicate();
+        final FileChannel channel = bodyStream.getChannel();
+        while (bodyToWrite.hasRemaining())
+        {
+          channel.write(bodyToWrite);
+        }
+      }
+      finally
+      {
+        bodyStream.close();
+      }
+      rename(bodyTmpFile, getFile(key, BODY_EXTENSION));
+
+      final Properties meta = new Properties();
+      meta.setProperty(KEY, key);
+      meta.setProperty(LENGTH, String.valueOf(body.remaining()));
+      if (validators.getETag() != null)
+      {
+        meta.setProperty(ETAG, validators.getETag());
+      }
+      if (validators.getLastModified() != null)
+      {
+        meta.setProperty(LAST_MODIFIED, validators.getLastModified());
+      }
+
+      final File metaTmpFile = getFile(key, META_EXTENSION + TMP_EXTENSION);
+      final FileOutputStream metaStream = new FileOutputStream(metaTmpFile);
+      try
+      {
+        meta.store(metaStream, null);
+      }
+      finally
+      {
+        metaStream.close();
+      }
+      rename(metaTmpFile, getFile(key, META_EXTENSION));
+    }
+    catch (IOException e)
+    {
+      Log.w(TAG, "Failed to store validators for " + key, e);
+      remove(key);
+    }
+  }
+
+  public synchronized void remove(final String key)
+  {
+    getFile(key, META_EXTENSION).delete();
+    getFile(key, BODY_EXTENSION).delete();
+  }
+
+  private Properties readMeta(final String key)
+  {
+    final File metaFile = getFile(key, META_EXTENSION);
+    if (!metaFile.exists())
+    {
+      return null;
+    }
+
+    final Properties meta = new Properties();
+    try
+    {
+      final FileInputStream stream = new FileInputStream(metaFile);
+      try
+      {
+        meta.load(stream);
+      }
+      finally
+      {
+        stream.close();
+      }
+    }
+    catch (IOException e)
+    {
+      Log.w(TAG, "Failed to read validators for " + key, e);
+      return null;
+    }
+
+    // file names are hashes, so check for collision
+    return key.equals(meta.getProperty(KEY)) ? meta : null;
+  }
+
+  private static void rename(final File from, final File to) throws IOException
+  {
+    if (!from.renameTo(to))
+    {
+      throw new IOException("Failed to rename " + from + " to " + to);
+    }
+  }
+
+  private File getFile(final String key, final String extension)
+  {
+    return new File(directory, hash(key) + extension);
+  }
+
+  private static String hash(final String key)
+  {
+    try
+    {
+      final byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+      final StringBuilder sb = new StringBuilder(digest.length * 2);
+      for (byte b : digest)
+      {
+        sb.append(String.format("%02x", b & 0xFF));
+      }
+      return sb.toString();
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      throw new RuntimeException(e);
+    }
+    catch (UnsupportedEncodingException e)
+    {
+      throw new RuntimeException(e);
+    }
+  }
+}